@@ -13,7 +13,12 @@ public enum DExCode implements InfoCode{
 	/**
 	 * 0: Balance
 	 */
-	INVALID_BALANCE("Account balance {0} is invalid");
+	INVALID_BALANCE("Account balance {0} is invalid"),
+	
+	/**
+	 * 0: line number, 1: reason
+	 */
+	INVALID_STATEMENT_ROW("Statement row {0} is invalid: {1}");
 	
 	/**
 	 * THE FOLLOWING CODE (EXCEPT FOR THE CONSTRUCTOR NAME) MUST BE KEPT AS IS
@@ -1,10 +1,19 @@
 package vn.com.personalfinance.services.account;
 
-import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
+import domainapp.basics.core.dodm.qrm.QRM;
 import domainapp.basics.exceptions.ConstraintViolationException;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.model.Oid;
 import domainapp.basics.model.meta.AttrRef;
 import domainapp.basics.model.meta.DAssoc;
 import domainapp.basics.model.meta.DAttr;
@@ -19,18 +28,26 @@ import domainapp.basics.model.meta.DAttr.Type;
 import domainapp.basics.util.Tuple;
 import vn.com.personalfinance.services.savingstransaction.SavingsTransaction;
 import vn.com.personalfinance.exceptions.DExCode;
+import vn.com.personalfinance.services.borrowandlend.ledger.DebtLedger;
 import vn.com.personalfinance.services.borrowandlend.model.BorrowAndLend;
 import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
 import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
+import vn.com.personalfinance.services.datasource.IdSequence;
+import vn.com.personalfinance.services.model.LinkCollection;
+import vn.com.personalfinance.services.model.LinkOwner;
 
 /**
  * Represents an account. The account ID is auto-incremented from the current year.
  * 
+ * The daily expenses, daily incomes, savings transactions and borrows and lends of 
+ * the account are loaded on first access; until then, links to them only update 
+ * the counts and the balance.
+ * 
  * @author Group 2
  * @version 1.0
  */
 @DClass(schema="personalfinancemanager")
-public class Account {
+public class Account implements LinkOwner {
 	public static final String A_id = "id";
 	public static final String A_name = "name";
 	public static final String A_type = "type";
@@ -40,7 +57,7 @@ public class Account {
 	@DAttr(name = A_id, id = true, type = Type.String, auto = true, length = 6, mutable = false, optional = false)
 	private String id;
 	// static variable to keep track of account id
-	private static int idCounter = 0;
+	private static final IdSequence ids = IdSequence.of(Account.class);
 	
 	@DAttr(name = A_name, type = Type.String, length = 20, optional = false, cid=true)
 	private String name;
@@ -85,7 +102,8 @@ public class Account {
 	private Collection<BorrowAndLend> borrowAndLend;
 	private int borrowAndLendCount;
 	
-	private Collection<String> allClassID;
+	// applies balance changes incrementally, once per transaction
+	private BalanceEngine balanceEngine;
 	
 	@DAttr(name = "totalBalance", type = Type.Domain, length = 15, optional = false)
 	@DAssoc(ascName = "totalBalance-has-account", role = "account",
@@ -120,55 +138,47 @@ public class Account {
 	    // assign other values
 	    this.name = name;
 	    this.type = type;
-	    this.balance = balance;
+	    this.balance = Money.round(balance);
 	    this.totalBalance = totalBalance;
 
-	    dailyExpense = new ArrayList<>();
+	    // the linked objects are loaded on first access (see getDailyExpense() etc.)
 	    dailyExpenseCount = 0;
-	    
-	    dailyIncome = new ArrayList<>();
 	    dailyIncomeCount = 0;
-	    
-	    savingsTransaction = new ArrayList<>();
 	    savingsTransactionCount = 0;
-	    
-	    borrowAndLend = new ArrayList<>();
 	    borrowAndLendCount = 0;
 	    
-	    allClassID = new ArrayList<>();
+	    balanceEngine = new BalanceEngine(this, this.balance);
 	}
 	
 	// DailyExpense Assoc
 	@DOpt(type = DOpt.Type.LinkAdder)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean addDailyExpense(DailyExpense s) {
-		if (!this.dailyExpense.contains(s)) {
+		if (dailyExpense != null && !dailyExpense.contains(s)) {
 			dailyExpense.add(s);
 		}
-		if (!this.allClassID.contains(s.getId())) {
-			allClassID.add(s.getId());
-		}
+		balanceEngine.register(s.getId());
 		// no other attributes changed
 		return false;
 	}
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewDailyExpense(DailyExpense s) {
-		dailyExpense.add(s);
+		if (dailyExpense != null)
+			dailyExpense.add(s);
 		dailyExpenseCount++;
-		// no other attributes changed
-		updateExpenseAccountBalance();
+		
+		balance = balanceEngine.apply(s.getId(), s.getDate(), -s.getAmount());
 		return true;
 	}
 	
 	@DOpt(type = DOpt.Type.LinkAdder)
 	public boolean addDailyExpense(Collection<DailyExpense> dailyExpense) {
 		for (DailyExpense s : dailyExpense) {
-			if (!this.dailyExpense.contains(s)) {
+			if (this.dailyExpense != null && !this.dailyExpense.contains(s)) {
 				this.dailyExpense.add(s);
 			}
-			if(!this.allClassID.contains(s.getId()))
-				allClassID.add(s.getId());
+			balanceEngine.register(s.getId());
 		}
 		// no other attributes changed
 		return false;
@@ -176,68 +186,66 @@ public class Account {
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewDailyExpense(Collection<DailyExpense> dailyExpense) {
-		this.dailyExpense.addAll(dailyExpense);
-		dailyExpenseCount += dailyExpense.size();
-		// no other attributes changed
-		return false;
+		List<DailyExpense> added = unapplied(dailyExpense, DailyExpense::getId);
+		if (this.dailyExpense != null)
+			this.dailyExpense.addAll(added);
+		dailyExpenseCount += added.size();
+		
+		// the balance changes once for the whole collection
+		String[] txIds = new String[added.size()];
+		Date[] dates = new Date[txIds.length];
+		double[] deltas = new double[txIds.length];
+		int i = 0;
+		for (DailyExpense s : added) {
+			txIds[i] = s.getId();
+			dates[i] = s.getDate();
+			deltas[i++] = -s.getAmount();
+		}
+		balance = balanceEngine.applyAll(txIds, dates, deltas);
+		return !added.isEmpty();
 	}
 	
 	@DOpt(type = DOpt.Type.LinkRemover)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean removeDailyExpense(DailyExpense s) {
-		boolean removed = dailyExpense.remove(s);
+		boolean removed = (dailyExpense != null) ? dailyExpense.remove(s) : balanceEngine.isApplied(s.getId());
 
 		if (removed) {
-			allClassID.remove(s.getId());
 			dailyExpenseCount--;
-			balance+=s.getAmount();		
+			balance = balanceEngine.revert(s.getId(), s.getDate(), -s.getAmount());
 		}
-		// no other attributes changed
-		return false;
-	}
-	
-	private void updateExpenseAccountBalance() {
-		if (dailyExpenseCount > 0) {
-			for (DailyExpense e : dailyExpense) {
-				if (!allClassID.contains(e.getId())) {
-					this.balance -= e.getAmount();
-					allClassID.add(e.getId());
-				}
-			}
-		} 
+		return removed;
 	}
 	
 	// DailyIncome Assoc
 	@DOpt(type = DOpt.Type.LinkAdder)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean addDailyIncome(DailyIncome i) {
-		if (!this.dailyIncome.contains(i)) {
+		if (dailyIncome != null && !dailyIncome.contains(i)) {
 			dailyIncome.add(i);
 		}
-		if (!this.allClassID.contains(i.getId())) {
-			allClassID.add(i.getId());
-		}
+		balanceEngine.register(i.getId());
 		// no other attributes changed
 		return false;
 	}
 
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewDailyIncome(DailyIncome i) {
-		dailyIncome.add(i);
+		if (dailyIncome != null)
+			dailyIncome.add(i);
 		dailyIncomeCount++;
-		// no other attributes changed
-		updateIncomeAccountBalance();
+		
+		balance = balanceEngine.apply(i.getId(), i.getDate(), i.getAmount());
 		return true;
 	}
 
 	@DOpt(type = DOpt.Type.LinkAdder)
 	public boolean addDailyIncome(Collection<DailyIncome> dailyIncome) {
 		for (DailyIncome s : dailyIncome) {
-			if (!this.dailyIncome.contains(s)) {
+			if (this.dailyIncome != null && !this.dailyIncome.contains(s)) {
 				this.dailyIncome.add(s);
 			}
-			if(!this.allClassID.contains(s.getId()))
-				allClassID.add(s.getId());
+			balanceEngine.register(s.getId());
 		}
 		// no other attributes changed
 		return false;
@@ -245,43 +253,45 @@ public class Account {
 
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewDailyIncome(Collection<DailyIncome> dailyIncome) {
-		this.dailyIncome.addAll(dailyIncome);
-		dailyIncomeCount += dailyIncome.size();
-		// no other attributes changed
-		return false;
+		List<DailyIncome> added = unapplied(dailyIncome, DailyIncome::getId);
+		if (this.dailyIncome != null)
+			this.dailyIncome.addAll(added);
+		dailyIncomeCount += added.size();
+		
+		// the balance changes once for the whole collection
+		String[] txIds = new String[added.size()];
+		Date[] dates = new Date[txIds.length];
+		double[] deltas = new double[txIds.length];
+		int n = 0;
+		for (DailyIncome i : added) {
+			txIds[n] = i.getId();
+			dates[n] = i.getDate();
+			deltas[n++] = i.getAmount();
+		}
+		balance = balanceEngine.applyAll(txIds, dates, deltas);
+		return !added.isEmpty();
 	}
 
 	@DOpt(type = DOpt.Type.LinkRemover)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean removeDailyIncome(DailyIncome i) {
-		boolean removed = dailyIncome.remove(i);
+		boolean removed = (dailyIncome != null) ? dailyIncome.remove(i) : balanceEngine.isApplied(i.getId());
 
 		if (removed) {
-			allClassID.remove(i.getId());
 			dailyIncomeCount--;
-			balance -= i.getAmount();
+			balance = balanceEngine.revert(i.getId(), i.getDate(), i.getAmount());
 		}
-		// no other attributes changed
-		return false;
-	}
-	
-	private void updateIncomeAccountBalance() {
-		if (dailyIncomeCount > 0) {
-			for (DailyIncome i : dailyIncome) {
-				if (!allClassID.contains(i.getId())) {
-					this.balance += i.getAmount();
-					allClassID.add(i.getId());
-				}
-			}
-		} 
+		return removed;
 	}
 	
 	// BorrowAndLend Assoc
 	@DOpt(type = DOpt.Type.LinkAdder)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean addBorrowAndLend(BorrowAndLend bL) {
-		if (!this.borrowAndLend.contains(bL))
+		if (borrowAndLend != null && !borrowAndLend.contains(bL))
 			borrowAndLend.add(bL);
+		balanceEngine.register(txId(bL));
+		DebtLedger.getInstance().linkAccount(this, bL);
 
 		// no other attributes changed
 		return false;
@@ -289,19 +299,23 @@ public class Account {
 
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewborrowAndLend(BorrowAndLend bL) {
-		borrowAndLend.add(bL);
+		if (borrowAndLend != null)
+			borrowAndLend.add(bL);
 		borrowAndLendCount++;
-		// no other attributes changed
-		updateBnLAccountBalance();
+		
+		balance = balanceEngine.apply(txId(bL), bL.getStartDate(), signedMoney(bL));
+		DebtLedger.getInstance().linkAccount(this, bL);
 		return true;
 	}
 	
 	@DOpt(type = DOpt.Type.LinkAdder)
 	public boolean addBorrowAndLend(Collection<BorrowAndLend> bL) {
 		for (BorrowAndLend b : bL) {
-			if (!this.borrowAndLend.contains(b)) {
+			if (this.borrowAndLend != null && !this.borrowAndLend.contains(b)) {
 				this.borrowAndLend.add(b);
 			}
+			balanceEngine.register(txId(b));
+			DebtLedger.getInstance().linkAccount(this, b);
 		}
 		// no other attributes changed
 		return false;
@@ -309,51 +323,70 @@ public class Account {
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewBorrowAndLend(Collection<BorrowAndLend> bL) {
-		this.borrowAndLend.addAll(bL);
-		borrowAndLendCount += bL.size();
-		// no other attributes changed (average mark is not serialisable!!!)
-		return false;
+		List<BorrowAndLend> added = unapplied(bL, Account::txId);
+		if (this.borrowAndLend != null)
+			this.borrowAndLend.addAll(added);
+		borrowAndLendCount += added.size();
+		
+		// the balance changes once for the whole collection
+		String[] txIds = new String[added.size()];
+		Date[] dates = new Date[txIds.length];
+		double[] deltas = new double[txIds.length];
+		int i = 0;
+		for (BorrowAndLend b : added) {
+			txIds[i] = txId(b);
+			dates[i] = b.getStartDate();
+			deltas[i++] = signedMoney(b);
+			DebtLedger.getInstance().linkAccount(this, b);
+		}
+		balance = balanceEngine.applyAll(txIds, dates, deltas);
+		return !added.isEmpty();
 	}
 	
 	@DOpt(type = DOpt.Type.LinkRemover)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean removeBorrowAndLend(BorrowAndLend bL) {
-		boolean removed = borrowAndLend.remove(bL);
+		boolean removed = (borrowAndLend != null) ? borrowAndLend.remove(bL) : balanceEngine.isApplied(txId(bL));
 
 		if (removed) {
 			borrowAndLendCount--;
-			if(bL.getActionType().getId() == 1 & bL.getActionType().getId() == 2) {
-				balance += bL.getMoney();
-			} else if (bL.getActionType().getId() == 3 & bL.getActionType().getId() == 4) {
-				balance -= bL.getMoney();
-			}
+			balance = balanceEngine.revert(txId(bL), bL.getStartDate(), signedMoney(bL));
+			DebtLedger.getInstance().unlinkAccount(bL);
 		}
-		// no other attributes changed
-		return false;
+		return removed;
 	}
 	
-	private void updateBnLAccountBalance() {
-		for (BorrowAndLend bL : borrowAndLend) {
-			String temp = ""+bL.getId();
-			if (!allClassID.contains(temp)) {
-				if (bL.getActionType().getId() == 1 || bL.getActionType().getId() == 2)
-					this.balance += bL.getMoney();		
-				if (bL.getActionType().getId() == 3 || bL.getActionType().getId() == 4)
-					this.balance -= bL.getMoney();
-				allClassID.add(temp);
-			}
-		}
+	/**
+	 * @effects 
+	 *  return the balance id of <tt>bL</tt>
+	 */
+	private static String txId(BorrowAndLend bL) {
+		return String.valueOf(bL.getId());
+	}
+	
+	/**
+	 * @effects 
+	 *  return <tt>bL.money</tt> if <tt>bL</tt> brings money into the account 
+	 *  (collect debts, borrow money), <tt>-bL.money</tt> if it takes money out 
+	 *  (repay money, lend money), or 0 otherwise
+	 */
+	private static double signedMoney(BorrowAndLend bL) {
+		int actionType = bL.getActionType().getId();
+		if (actionType == 1 || actionType == 2)
+			return bL.getMoney();
+		else if (actionType == 3 || actionType == 4)
+			return -bL.getMoney();
+		else
+			return 0;
 	}
 	
 	// Log Assoc
 	@DOpt(type = DOpt.Type.LinkAdder)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean addSavingsTransaction(SavingsTransaction s) {
-		if (!this.savingsTransaction.contains(s))
+		if (savingsTransaction != null && !savingsTransaction.contains(s))
 			savingsTransaction.add(s);
-		if (!this.allClassID.contains(s.getId())) {
-			allClassID.add(s.getId());
-		}
+		balanceEngine.register(s.getId());
 
 		// no other attributes changed
 		return false;
@@ -361,21 +394,21 @@ public class Account {
 
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewSavingsTransaction(SavingsTransaction s) {
-		savingsTransaction.add(s);
+		if (savingsTransaction != null)
+			savingsTransaction.add(s);
 		savingsTransactionCount++;
-		// no other attributes changed
-		updateSavingsTransactionAccountBalance();
+		
+		balance = balanceEngine.apply(s.getId(), null, -s.getAmount());
 		return true;
 	}
 	
 	@DOpt(type = DOpt.Type.LinkAdder)
 	public boolean addSavingsTransaction(Collection<SavingsTransaction> savingsTransaction) {
 		for (SavingsTransaction s : savingsTransaction) {
-			if (!this.savingsTransaction.contains(s)) {
+			if (this.savingsTransaction != null && !this.savingsTransaction.contains(s)) {
 				this.savingsTransaction.add(s);
 			}
-			if(!this.allClassID.contains(s.getId()))
-				allClassID.add(s.getId());
+			balanceEngine.register(s.getId());
 		}
 		// no other attributes changed
 		return false;
@@ -383,35 +416,89 @@ public class Account {
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewSavingsTransaction(Collection<SavingsTransaction> savingsTransaction) {
-		this.savingsTransaction.addAll(savingsTransaction);
-		savingsTransactionCount += savingsTransaction.size();
-		// no other attributes changed (average mark is not serialisable!!!)
-		return false;
+		List<SavingsTransaction> added = unapplied(savingsTransaction, SavingsTransaction::getId);
+		if (this.savingsTransaction != null)
+			this.savingsTransaction.addAll(added);
+		savingsTransactionCount += added.size();
+		
+		// the balance changes once for the whole collection
+		String[] txIds = new String[added.size()];
+		Date[] dates = new Date[txIds.length];
+		double[] deltas = new double[txIds.length];
+		int i = 0;
+		for (SavingsTransaction s : added) {
+			txIds[i] = s.getId();
+			deltas[i++] = -s.getAmount();
+		}
+		balance = balanceEngine.applyAll(txIds, dates, deltas);
+		return !added.isEmpty();
 	}
 	
 	@DOpt(type = DOpt.Type.LinkRemover)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean removeSavingsTransaction(SavingsTransaction s) {
-		boolean removed = savingsTransaction.remove(s);
+		boolean removed = (savingsTransaction != null) ? savingsTransaction.remove(s)
+				: balanceEngine.isApplied(s.getId());
 
 		if (removed) {
-			allClassID.remove(s.getId());
 			savingsTransactionCount--;
-			balance += s.getAmount();
+			balance = balanceEngine.revert(s.getId(), null, -s.getAmount());
 		}
-		// no other attributes changed
-		return false;
+		return removed;
 	}
 	
-	private void updateSavingsTransactionAccountBalance() {
-		if (savingsTransactionCount > 0) {
-			for (SavingsTransaction t : savingsTransaction) {
-				if (!allClassID.contains(t.getId())) {
-					this.balance -= t.getAmount();
-					allClassID.add(t.getId());
-				}
-			}
-		} 
+	/**
+	 * @effects 
+	 *  return the elements of <tt>txs</tt> whose transaction ids (by <tt>txId</tt>) 
+	 *  are not yet reflected in the balance, in order and without duplicates
+	 */
+	private <T> List<T> unapplied(Collection<T> txs, Function<T, String> txId) {
+		Set<String> ids = new HashSet<>();
+		List<T> result = new ArrayList<>();
+		for (T t : txs) {
+			String id = txId.apply(t);
+			if (!balanceEngine.isApplied(id) && ids.add(id))
+				result.add(t);
+		}
+		return result;
+	}
+	
+	/**
+	 * @effects 
+	 *  return a new collection of the objects of <tt>assocClass</tt> that are linked to 
+	 *  this by the association <tt>ascName</tt>, read from the object pool or the 
+	 *  data source.
+	 *  
+	 *  <p>throws DataSourceException if fails to read from the data source
+	 */
+	private <T> Collection<T> loadLinks(Class<T> assocClass, String ascName) throws DataSourceException {
+		Map<Oid, T> linked = QRM.getInstance().getDom().retrieveAssociatedObjects(this, Account.class,
+				assocClass, ascName);
+		
+		Collection<T> links = new LinkCollection<>();
+		if (linked != null)
+			links.addAll(linked.values());
+		return links;
+	}
+	
+	@Override
+	public void unloadLinks() {
+		dailyExpense = null;
+		dailyIncome = null;
+		savingsTransaction = null;
+		borrowAndLend = null;
+	}
+	
+	/**
+	 * @effects 
+	 *  register <tt>l</tt> to be notified of every change of this.balance
+	 */
+	public void addBalanceListener(BalanceListener l) {
+		balanceEngine.addListener(l);
+	}
+	
+	public void removeBalanceListener(BalanceListener l) {
+		balanceEngine.removeListener(l);
 	}
 	
 	// getter methods
@@ -435,7 +522,15 @@ public class Account {
 		return totalBalance;
 	}
 	
-	public Collection<DailyExpense> getDailyExpense() {
+	/**
+	 * @effects
+	 * 	return the DailyExpense objects linked to this, loading them on first access
+	 *
+	 * 	<p>throws DataSourceException if fails to read from the data source
+	 */
+	public Collection<DailyExpense> getDailyExpense() throws DataSourceException {
+		if (dailyExpense == null)
+			dailyExpense = loadLinks(DailyExpense.class, "account-has-dailyExpense");
 		return dailyExpense;
 	}
 	
@@ -444,7 +539,15 @@ public class Account {
 		return dailyExpenseCount;
 	}
 
-	public Collection<SavingsTransaction> getSavingsTransaction() {
+	/**
+	 * @effects
+	 * 	return the SavingsTransaction objects linked to this, loading them on first access
+	 *
+	 * 	<p>throws DataSourceException if fails to read from the data source
+	 */
+	public Collection<SavingsTransaction> getSavingsTransaction() throws DataSourceException {
+		if (savingsTransaction == null)
+			savingsTransaction = loadLinks(SavingsTransaction.class, "account-has-savingsTransaction");
 		return savingsTransaction;
 	}
 	
@@ -453,7 +556,15 @@ public class Account {
 		return savingsTransactionCount;
 	}
 	
-	public Collection<BorrowAndLend> getBorrowAndLend() {
+	/**
+	 * @effects
+	 * 	return the BorrowAndLend objects linked to this, loading them on first access
+	 *
+	 * 	<p>throws DataSourceException if fails to read from the data source
+	 */
+	public Collection<BorrowAndLend> getBorrowAndLend() throws DataSourceException {
+		if (borrowAndLend == null)
+			borrowAndLend = loadLinks(BorrowAndLend.class, "account-has-borrowAndLend");
 		return borrowAndLend;
 	}
 	
@@ -462,7 +573,15 @@ public class Account {
 		return borrowAndLendCount;
 	}
 	
-	public Collection<DailyIncome> getDailyIncome() {
+	/**
+	 * @effects
+	 * 	return the DailyIncome objects linked to this, loading them on first access
+	 *
+	 * 	<p>throws DataSourceException if fails to read from the data source
+	 */
+	public Collection<DailyIncome> getDailyIncome() throws DataSourceException {
+		if (dailyIncome == null)
+			dailyIncome = loadLinks(DailyIncome.class, "account-has-dailyIncome");
 		return dailyIncome;
 	}
 	
@@ -488,7 +607,8 @@ public class Account {
 		if (balance < 0) {
 			throw new ConstraintViolationException(DExCode.INVALID_BALANCE, balance);
 		}
-		this.balance = balance;
+		this.balance = Money.round(balance);
+		balanceEngine.setBalance(balance);
 	}
 	
 	public void setTotalBalance(TotalBalance totalBalance) {
@@ -496,7 +616,7 @@ public class Account {
 	}
 	
 	public void setDailyExpense(Collection<DailyExpense> dailyExpense) {
-		this.dailyExpense = dailyExpense;
+		this.dailyExpense = LinkCollection.of(dailyExpense);
 		dailyExpenseCount = dailyExpense.size();
 	}
 	
@@ -506,7 +626,7 @@ public class Account {
 	}
 	
 	public void setSavingsTransaction(Collection<SavingsTransaction> savingsTransaction) {
-		this.savingsTransaction = savingsTransaction;
+		this.savingsTransaction = LinkCollection.of(savingsTransaction);
 		savingsTransactionCount = savingsTransaction.size();
 	}
 	
@@ -516,7 +636,7 @@ public class Account {
 	}
 	
 	public void setBorrowAndLend(Collection<BorrowAndLend> borrowAndLend) {
-		this.borrowAndLend = borrowAndLend;
+		this.borrowAndLend = LinkCollection.of(borrowAndLend);
 		borrowAndLendCount = borrowAndLend.size();
 	}
 	
@@ -526,7 +646,7 @@ public class Account {
 	}
 	
 	public void setDailyIncome(Collection<DailyIncome> dailyIncome) {
-		this.dailyIncome = dailyIncome;
+		this.dailyIncome = LinkCollection.of(dailyIncome);
 		dailyIncomeCount = dailyIncome.size();
 	}
 	
@@ -586,12 +706,10 @@ public class Account {
 	// automatically generate the next account id
 	private String nextID(String id) throws ConstraintViolationException {
 		if (id == null) { // generate a new id
-			if (idCounter == 0) {
-				idCounter = Calendar.getInstance().get(Calendar.YEAR);
-			} else {
-				idCounter++;
+			if (ids.current() == 0) {
+				ids.advanceTo(Calendar.getInstance().get(Calendar.YEAR) - 1);
 			}
-			return "A" + idCounter;
+			return "A" + ids.next();
 		} else {
 			// update id
 			int num;
@@ -602,9 +720,7 @@ public class Account {
 						new Object[] { id });
 			}
 
-			if (num > idCounter) {
-				idCounter = num;
-			}
+			ids.advanceTo(num);
 
 			return id;
 		}
@@ -632,8 +748,7 @@ public class Account {
 	  		  try {
 	  		    int maxIdNum = Integer.parseInt(maxId.substring(1));
 	  		    
-	  		    if (maxIdNum > idCounter) // extra check
-	  		      idCounter = maxIdNum;
+	  		    ids.advanceTo(maxIdNum);
 	  		    
 	  		  } catch (RuntimeException e) {
 	  		    throw new ConstraintViolationException(
@@ -1,6 +1,5 @@
 package vn.com.personalfinance.services.account;
 
-import java.util.ArrayList;
 import java.util.Collection;
 
 import domainapp.basics.exceptions.ConstraintViolationException;
@@ -17,6 +16,9 @@ import domainapp.basics.model.meta.DAssoc.Associate;
 import domainapp.basics.model.meta.DAttr.Type;
 import domainapp.basics.util.Tuple;
 
+import vn.com.personalfinance.services.datasource.IdSequence;
+import vn.com.personalfinance.services.model.LinkCollection;
+
 /**
  * A domain class whose objects are account types. This class is used as 
  * the <code>allowedValues</code> of the domain attributes of 
@@ -35,7 +37,7 @@ public class AccountType {
 	@DAttr(name="id",id=true,auto=true,length=6,mutable=false,type=Type.Integer)
 	private int id;
 	
-	private static int idCounter;
+	private static final IdSequence ids = IdSequence.of(AccountType.class);
 	
 	@DAttr(name = "name", type = Type.String, length = 20, optional = false, cid=true)
 	private String name;
@@ -63,7 +65,7 @@ public class AccountType {
 		this.id = nextId(id);
 		this.name = typeName;
 		
-		accounts = new ArrayList<>();
+		accounts = new LinkCollection<>();
 		accountsCount = 0;
 	}
 	
@@ -126,7 +128,7 @@ public class AccountType {
 	
 	@DOpt(type=DOpt.Type.Setter)
 	public void setAccounts(Collection<Account> accounts) {
-		this.accounts = accounts;
+		this.accounts = LinkCollection.of(accounts);
 		accountsCount = accounts.size();
 	}
 	
@@ -187,12 +189,10 @@ public class AccountType {
 
 	private static int nextId(Integer currID) {
 		if (currID == null) {
-			idCounter++;
-			return idCounter;
+			return ids.next();
 		} else {
 			int num = currID.intValue();
-			if (num > idCounter)
-				idCounter = num;
+			ids.advanceTo(num);
 			return currID;
 		}
 	}
@@ -211,8 +211,7 @@ public class AccountType {
 			// TODO: update this for the correct attribute if there are more than one auto
 			// attributes of this class
 			int maxIdVal = (Integer) maxVal;
-			if (maxIdVal > idCounter)
-				idCounter = maxIdVal;
+			ids.advanceTo(maxIdVal);
 		}
 	}	
 }
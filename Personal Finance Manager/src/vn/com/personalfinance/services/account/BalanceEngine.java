@@ -0,0 +1,160 @@
+package vn.com.personalfinance.services.account;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @overview
+ * 	Maintains the balance of an {@link Account} incrementally. Each balance-affecting
+ * 	transaction (daily expense, daily income, savings transaction, borrow and lend)
+ * 	is applied exactly once, identified by its transaction id. The balance is kept
+ * 	in minor units (see {@link Money}), so that it does not drift.
+ * 	Every change is reported to the {@link BalanceListener}s of the engine and to
+ * 	the global listeners shared by all engines.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class BalanceEngine {
+	// listeners notified of the balance changes of every account
+	private static final List<BalanceListener> globalListeners = new CopyOnWriteArrayList<>();
+
+	private Account account;
+	private long balance;
+
+	// ids of the transactions already reflected in balance
+	private Set<String> applied;
+
+	private List<BalanceListener> listeners;
+
+	public BalanceEngine(Account account, double balance) {
+		this.account = account;
+		this.balance = Money.toMinor(balance);
+		applied = new HashSet<>();
+		listeners = new CopyOnWriteArrayList<>();
+	}
+
+	public static void addGlobalListener(BalanceListener l) {
+		globalListeners.add(l);
+	}
+
+	public static void removeGlobalListener(BalanceListener l) {
+		globalListeners.remove(l);
+	}
+
+	public void addListener(BalanceListener l) {
+		if (!listeners.contains(l))
+			listeners.add(l);
+	}
+
+	public void removeListener(BalanceListener l) {
+		listeners.remove(l);
+	}
+
+	/**
+	 * @effects
+	 * 	if <tt>txId</tt> has not been applied
+	 * 		add <tt>delta</tt> to balance and record <tt>txId</tt> as applied
+	 * 	return the current balance.
+	 *
+	 * 	<p><tt>date</tt> is the date of the transaction (<tt>null</tt> if it has none)
+	 */
+	public double apply(String txId, Date date, double delta) {
+		if (applied.add(txId)) {
+			long d = Money.toMinor(delta);
+			balance += d;
+			fireBalanceChanged(txId, date, d);
+		}
+		return Money.toMajor(balance);
+	}
+
+	/**
+	 * @requires txIds.length = dates.length = deltas.length
+	 * @effects
+	 * 	apply each <tt>txIds[i]</tt> that has not been applied with <tt>deltas[i]</tt>,
+	 * 	reporting their totals as one balance change (of no transaction id) per date
+	 * 	return the current balance
+	 */
+	public double applyAll(String[] txIds, Date[] dates, double[] deltas) {
+		// the totals by date, in the order that the dates first occur
+		Map<Date, Long> totals = new LinkedHashMap<>();
+		for (int i = 0; i < txIds.length; i++) {
+			if (applied.add(txIds[i]))
+				totals.merge(dates[i], Money.toMinor(deltas[i]), Long::sum);
+		}
+
+		for (Map.Entry<Date, Long> e : totals.entrySet()) {
+			long total = e.getValue();
+			if (total != 0) {
+				balance += total;
+				fireBalanceChanged(null, e.getKey(), total);
+			}
+		}
+		return Money.toMajor(balance);
+	}
+
+	/**
+	 * @effects
+	 * 	if <tt>txId</tt> has been applied
+	 * 		subtract <tt>delta</tt> from balance and forget <tt>txId</tt>
+	 * 	return the current balance.
+	 *
+	 * 	<p><tt>date</tt> is the date of the transaction (<tt>null</tt> if it has none)
+	 */
+	public double revert(String txId, Date date, double delta) {
+		if (applied.remove(txId)) {
+			long d = Money.toMinor(delta);
+			balance -= d;
+			fireBalanceChanged(txId, date, -d);
+		}
+		return Money.toMajor(balance);
+	}
+
+	/**
+	 * @effects
+	 * 	record <tt>txId</tt> as already reflected in balance (e.g. when loaded from
+	 * 	the data source) without changing balance
+	 */
+	public void register(String txId) {
+		applied.add(txId);
+	}
+
+	public boolean isApplied(String txId) {
+		return applied.contains(txId);
+	}
+
+	public double getBalance() {
+		return Money.toMajor(balance);
+	}
+
+	/**
+	 * @effects
+	 * 	return the balance in minor units
+	 */
+	public long getBalanceMinor() {
+		return balance;
+	}
+
+	public void setBalance(double balance) {
+		long minor = Money.toMinor(balance);
+		long delta = minor - this.balance;
+		this.balance = minor;
+		if (delta != 0)
+			fireBalanceChanged(null, null, delta);
+	}
+
+	private void fireBalanceChanged(String txId, Date date, long delta) {
+		for (BalanceListener l : listeners) {
+			l.balanceChanged(account, txId, date, delta, balance);
+		}
+		for (BalanceListener l : globalListeners) {
+			l.balanceChanged(account, txId, date, delta, balance);
+		}
+	}
+}
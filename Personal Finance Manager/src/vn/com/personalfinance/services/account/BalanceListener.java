@@ -0,0 +1,24 @@
+package vn.com.personalfinance.services.account;
+
+import java.util.Date;
+
+/**
+ * @overview
+ * 	Receives the balance changes applied to an {@link Account}.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public interface BalanceListener {
+	/**
+	 * @effects
+	 * 	handle the change of <tt>account</tt>'s balance by <tt>delta</tt>, caused by
+	 * 	the transaction <tt>txId</tt> (<tt>null</tt> if the balance was set directly or
+	 * 	changed by a batch of transactions) of <tt>date</tt> (<tt>null</tt> if the change
+	 * 	has no transaction date, i.e. it takes effect when it is made).
+	 * 	<tt>balance</tt> is the balance after the change. Both amounts are in minor
+	 * 	units (see {@link Money}).
+	 */
+	void balanceChanged(Account account, String txId, Date date, long delta, long balance);
+}
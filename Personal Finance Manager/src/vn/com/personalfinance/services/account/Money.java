@@ -0,0 +1,63 @@
+package vn.com.personalfinance.services.account;
+
+/**
+ * @overview
+ * 	Fixed-point arithmetic of money amounts, as <tt>long</tt> numbers of minor units
+ * 	(1/{@link #MINOR_UNITS} of the currency unit).
+ *
+ * 	<p>Sums and balances are accumulated in minor units, so that they do not drift
+ * 	under repeated additions and subtractions, and without allocating any object.
+ * 	Amounts are converted from and to <tt>double</tt> only at the boundaries with
+ * 	the domain attributes and the data source.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public final class Money {
+	public static final int MINOR_UNITS = 100;
+
+	private Money() {
+		// static methods only
+	}
+
+	/**
+	 * @effects
+	 * 	return <tt>amount</tt> in minor units, rounded to the nearest minor unit
+	 */
+	public static long toMinor(double amount) {
+		return Math.round(amount * MINOR_UNITS);
+	}
+
+	/**
+	 * @effects
+	 * 	return the amount of <tt>minor</tt> minor units
+	 */
+	public static double toMajor(long minor) {
+		return minor / (double) MINOR_UNITS;
+	}
+
+	/**
+	 * @effects
+	 * 	return <tt>amount</tt> rounded to the nearest minor unit
+	 */
+	public static double round(double amount) {
+		return toMajor(toMinor(amount));
+	}
+
+	/**
+	 * @effects
+	 * 	return <tt>a + b</tt>, computed in minor units
+	 */
+	public static double add(double a, double b) {
+		return toMajor(toMinor(a) + toMinor(b));
+	}
+
+	/**
+	 * @effects
+	 * 	return <tt>a - b</tt>, computed in minor units
+	 */
+	public static double subtract(double a, double b) {
+		return toMajor(toMinor(a) - toMinor(b));
+	}
+}
@@ -1,8 +1,9 @@
 package vn.com.personalfinance.services.account;
 
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
 
 import domainapp.basics.exceptions.ConstraintViolationException;
 import domainapp.basics.model.meta.DAssoc;
@@ -17,17 +18,34 @@ import domainapp.basics.model.meta.DAssoc.Associate;
 import domainapp.basics.model.meta.DAttr.Type;
 import domainapp.basics.util.Tuple;
 
+import vn.com.personalfinance.services.datasource.IdSequence;
+import vn.com.personalfinance.services.model.LinkCollection;
+
+/**
+ * Represents the total balance of all accounts. The total is maintained 
+ * incrementally: it subscribes to the balance changes of its linked accounts 
+ * and accumulates their differences in cents.
+ * 
+ * @author Group 2
+ * @version 1.0
+ */
 @DClass(schema="personalfinancemanager")
-public class TotalBalance {
+public class TotalBalance implements BalanceListener {
 	public static final String A_totalBalance = "totalBalance";
 	public static final String A_accounts = "accounts";
 	
 	@DAttr(name = "id", id = true, type = Type.String, auto = true, length = 6, mutable = false, optional = false)
 	private String id;
-	private static int idCounter = 0;
+	private static final IdSequence ids = IdSequence.of(TotalBalance.class);
 	
+	// the value of totalCents (in major units), kept in sync by syncTotalBalance() so that it is stored correctly
 	@DAttr(name = A_totalBalance, type = Type.Double, auto = true, length = 15, mutable = false, optional = true)
-	private double totalBalance;
+	private volatile double totalBalance;
+	
+	// the total balance in cents, updated concurrently by the accounts' balance changes
+	private LongAdder totalCents;
+	// whether totalCents is derived from the linked accounts (rather than the stored total)
+	private volatile boolean accountsLinked;
 	
 	@DAttr(name = A_accounts, type = Type.Collection, optional = false,
 	serialisable = false, filter = @Select(clazz = Account.class))
@@ -46,10 +64,15 @@ public class TotalBalance {
 	public TotalBalance(String id, Double totalBalance) {    
 	    // assign other values
 		this.id = nextID(id);
-//	    this.totalBalance = totalBalance;
-	    computeTotalBalance(totalBalance);
+		
+		// the stored total is used until the accounts are linked
+	    totalCents = new LongAdder();
+	    if (totalBalance != null)
+	    	totalCents.add(Money.toMinor(totalBalance));
+	    syncTotalBalance();
+	    accountsLinked = false;
 	    
-	    accounts = new ArrayList<>();
+	    accounts = new LinkCollection<>();
 	    accountsCount = 0;
 	}
 	
@@ -58,13 +81,14 @@ public class TotalBalance {
 	}
 
 	public double getTotalBalance() {
-		return totalBalance;
+		return Money.toMajor(totalCents.sum());
 	}
 
 	@DOpt(type = DOpt.Type.LinkAdder)
 	public boolean addAccount(Account a) {
 		if (!this.accounts.contains(a)) {
 			accounts.add(a);
+			link(a);
 		}
 		// no other attributes changed
 		return false;
@@ -72,11 +96,13 @@ public class TotalBalance {
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewAccount(Account a) {
+		if (accounts.contains(a))
+			return false;
+		
 		accounts.add(a);
 		accountsCount++;
-
-		// no other attributes changed
-		computeTotalBalance(0.0);
+		link(a);
+		
 		return true;
 	}
 	
@@ -85,6 +111,7 @@ public class TotalBalance {
 		for (Account a : account) {
 			if (!this.accounts.contains(a)) {
 				this.accounts.add(a);
+				link(a);
 			}
 		}
 		// no other attributes changed
@@ -93,31 +120,76 @@ public class TotalBalance {
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewAccount(Collection<Account> accounts) {
-		this.accounts.addAll(accounts);
-		accountsCount += accounts.size();
+		boolean added = false;
+		for (Account a : accounts) {
+			if (!this.accounts.contains(a)) {
+				this.accounts.add(a);
+				accountsCount++;
+				link(a);
+				added = true;
+			}
+		}
 		
-		// no other attributes changed
-		computeTotalBalance(0.0);
-		return true;
+		return added;
 	}
 	
 	@DOpt(type = DOpt.Type.LinkUpdater)
 	public boolean updateAccount(Account a) {
-		computeTotalBalance(0.0);
+		// balance changes of a have already been applied through balanceChanged
 		return true;
 	}
 	
 	@DOpt(type = DOpt.Type.LinkRemover)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
-	public boolean removeDailyExpense(Account a) {
+	public boolean removeAccount(Account a) {
 		boolean removed = accounts.remove(a);
 
 		if (removed) {
 			accountsCount--;	
-			computeTotalBalance(0.0);
+			unlink(a);
 		}
-		// no other attributes changed
-		return false;
+		return removed;
+	}
+	
+	/**
+	 * @effects 
+	 *  add the balance of <tt>a</tt> to the total and subscribe to its changes
+	 */
+	private void link(Account a) {
+		if (!accountsLinked) {
+			// replace the stored total by the sum of the linked accounts
+			totalCents.reset();
+			accountsLinked = true;
+		}
+		totalCents.add(Money.toMinor(a.getBalance()));
+		syncTotalBalance();
+		a.addBalanceListener(this);
+	}
+	
+	/**
+	 * @effects 
+	 *  subtract the balance of <tt>a</tt> from the total and unsubscribe from its changes
+	 */
+	private void unlink(Account a) {
+		a.removeBalanceListener(this);
+		totalCents.add(-Money.toMinor(a.getBalance()));
+		syncTotalBalance();
+	}
+	
+	/**
+	 * @modifies this
+	 * @effects 
+	 *  set this.totalBalance to the value of totalCents
+	 */
+	private void syncTotalBalance() {
+		totalBalance = Money.toMajor(totalCents.sum());
+	}
+	
+	@Override
+	public void balanceChanged(Account account, String txId, Date date, long delta, long balance) {
+		// delta is in minor units (cents), as the total
+		totalCents.add(delta);
+		syncTotalBalance();
 	}
 	
 	//GETTER SETTER
@@ -131,9 +203,17 @@ public class TotalBalance {
 	}
 	
 	public void setAccounts(Collection<Account> account) {
-		this.accounts = account;
+		for (Account a : this.accounts) {
+			a.removeBalanceListener(this);
+		}
+		totalCents.reset();
+		syncTotalBalance();
+		
+		this.accounts = LinkCollection.of(account);
 		accountsCount = account.size();
-		computeTotalBalance(0.0);
+		for (Account a : account) {
+			link(a);
+		}
 	}
 	
 	@DOpt(type=DOpt.Type.LinkCountSetter)
@@ -141,26 +221,12 @@ public class TotalBalance {
 		this.accountsCount = accountsCount;
 	}
 	
-	private void computeTotalBalance(double totalBalance) {
-		if(accountsCount > 0) {
-			double tempBalance = 0.0;
-			for(Account a : accounts) {
-				tempBalance += a.getBalance();
-			}
-			this.totalBalance = tempBalance;
-		} else {
-			this.totalBalance = totalBalance;
-		}
-	}
-	
 	private String nextID(String id) throws ConstraintViolationException {
 		if (id == null) { // generate a new id
-			if (idCounter == 0) {
-				idCounter = Calendar.getInstance().get(Calendar.YEAR);
-			} else {
-				idCounter++;
+			if (ids.current() == 0) {
+				ids.advanceTo(Calendar.getInstance().get(Calendar.YEAR) - 1);
 			}
-			return "T" + idCounter;
+			return "T" + ids.next();
 		} else {
 			// update id
 			int num;
@@ -171,9 +237,7 @@ public class TotalBalance {
 						new Object[] { id });
 			}
 
-			if (num > idCounter) {
-				idCounter = num;
-			}
+			ids.advanceTo(num);
 			return id;
 		}
 	}
@@ -191,8 +255,7 @@ public class TotalBalance {
 				try {
 					int maxIdNum = Integer.parseInt(maxId.substring(1));
 
-					if (maxIdNum > idCounter) // extra check
-						idCounter = maxIdNum;
+					ids.advanceTo(maxIdNum);
 
 				} catch (RuntimeException e) {
 					throw new ConstraintViolationException(ConstraintViolationException.Code.INVALID_VALUE, e,
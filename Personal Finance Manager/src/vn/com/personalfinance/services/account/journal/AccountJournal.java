@@ -0,0 +1,476 @@
+package vn.com.personalfinance.services.account.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.function.Predicate;
+
+import domainapp.basics.exceptions.NotPossibleException;
+import vn.com.personalfinance.services.account.Money;
+
+/**
+ * @overview
+ * 	The append-only journal of the balance changes of one account, stored in
+ * 	<tt>accountId.journal</tt>. Every <tt>snapshotInterval</tt> events a snapshot of
+ * 	the state of the journal (with the journal offset at which it was taken) is
+ * 	appended to <tt>accountId.snapshot</tt>, as a record of a fixed size.
+ *
+ * 	<p>The journal file is kept open and the events are written to it through a buffer,
+ * 	which is written out by {@link #flush()} (see {@link BalanceJournal}), when a snapshot
+ * 	is taken and by {@link #close()}; the events of an interrupted session that were not
+ * 	written out are lost (the next adjustment event of {@link BalanceJournal} restores the
+ * 	balance).
+ *
+ * 	<p>Opening a journal replays the events after the last snapshot only. The balance
+ * 	as of a date is read from the last snapshot taken by the end of that day, followed
+ * 	by the events recorded after the snapshot and by the end of the day.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class AccountJournal {
+	public static final int VERSION = 3;
+
+	// "PFMJ"
+	private static final int MAGIC = 0x50464D4A;
+	// the length of the header of the files
+	private static final int HEADER = 8;
+	// the length of a snapshot record
+	private static final int SNAPSHOT = 32;
+
+	private String accountId;
+	private File journalFile;
+	private File snapshotFile;
+	private int snapshotInterval;
+
+	// number of events recorded so far
+	private long seq;
+	private long lastTime;
+	// the balance in minor units
+	private long balance;
+	// length of the journal (written or buffered), i.e. the offset of the next event
+	private long length;
+
+	// the open journal file, or null if it is not open
+	private DataOutputStream out;
+
+	private AccountJournal(File dir, String accountId, int snapshotInterval) {
+		this.accountId = accountId;
+		this.snapshotInterval = snapshotInterval;
+		journalFile = new File(dir, accountId + ".journal");
+		snapshotFile = new File(dir, accountId + ".snapshot");
+	}
+
+	/**
+	 * @effects
+	 * 	open the journal of <tt>accountId</tt> in <tt>dir</tt>, creating it if it does
+	 * 	not exist, and restore its state from the last snapshot and the events after it.
+	 * 	The files of a journal of an older format are renamed to <tt>*.old</tt> and a new
+	 * 	journal is started.
+	 *
+	 * 	<p>throws NotPossibleException if failed to read the journal
+	 */
+	public static AccountJournal open(File dir, String accountId, int snapshotInterval)
+			throws NotPossibleException {
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_CREATE_FOLDER, new Object[] { dir });
+		}
+
+		AccountJournal journal = new AccountJournal(dir, accountId, snapshotInterval);
+		try {
+			journal.restore();
+		} catch (IOException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "AccountJournal.open", accountId });
+		}
+		return journal;
+	}
+
+	private void restore() throws IOException {
+		if ((journalFile.exists() && !hasHeader(journalFile))
+				|| (snapshotFile.exists() && !hasHeader(snapshotFile))) {
+			// an older format
+			retire(journalFile);
+			retire(snapshotFile);
+		}
+
+		long offset = HEADER;
+		if (journalFile.exists()) {
+			Snapshot last = Snapshot.readLast(snapshotFile);
+			if (last != null && last.offset <= journalFile.length()) {
+				seq = last.seq;
+				lastTime = last.time;
+				balance = last.balance;
+				offset = last.offset;
+			}
+		} else if (snapshotFile.exists()) {
+			// the snapshots of a journal that is gone
+			retire(snapshotFile);
+		}
+
+		length = offset;
+		if (journalFile.exists()) {
+			// replay the tail since the last snapshot
+			length = replay(offset, e -> {
+				seq = e.getSeq();
+				lastTime = e.getTime();
+				balance = Money.toMinor(e.getBalance());
+				return true;
+			});
+
+			if (length < journalFile.length()) {
+				// drop the partly written event of an interrupted append
+				try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+					raf.setLength(length);
+				}
+			}
+		} else {
+			length = HEADER;
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	append to this the change of balance by <tt>delta</tt> caused by <tt>txId</tt> of
+	 * 	<tt>date</tt> (<tt>null</tt> if it has no transaction date), taking a snapshot if
+	 * 	<tt>snapshotInterval</tt> events have been recorded since the last one. Return the
+	 * 	appended event.
+	 *
+	 * 	<p>throws NotPossibleException if failed to write to the journal
+	 */
+	public synchronized BalanceEvent append(String txId, Date date, double delta) throws NotPossibleException {
+		// keep the recorded times ascending
+		long time = Math.max(System.currentTimeMillis(), lastTime);
+		long d = Money.toMinor(delta);
+		BalanceEvent e = new BalanceEvent(seq + 1, time, (date != null) ? date.getTime() : time, txId,
+				Money.toMajor(d), Money.toMajor(balance + d));
+
+		try {
+			DataOutputStream o = open();
+			int before = o.size();
+			write(o, e);
+			length += o.size() - before;
+		} catch (IOException ex) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_WRITE_TO_FILE, ex,
+					new Object[] { journalFile });
+		}
+
+		seq = e.getSeq();
+		lastTime = time;
+		balance += d;
+
+		if (seq % snapshotInterval == 0) {
+			takeSnapshot();
+		}
+
+		return e;
+	}
+
+	/**
+	 * @effects
+	 * 	write out the buffered events of this.
+	 *
+	 * 	<p>throws NotPossibleException if failed to write to the journal
+	 */
+	public synchronized void flush() throws NotPossibleException {
+		if (out == null)
+			return;
+
+		try {
+			out.flush();
+		} catch (IOException ex) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_WRITE_TO_FILE, ex,
+					new Object[] { journalFile });
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	write out the buffered events of this and close its file (it is opened again by
+	 * 	the next append).
+	 *
+	 * 	<p>throws NotPossibleException if failed to write to the journal
+	 */
+	public synchronized void close() throws NotPossibleException {
+		if (out == null)
+			return;
+
+		try {
+			out.close();
+		} catch (IOException ex) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_WRITE_TO_FILE, ex,
+					new Object[] { journalFile });
+		} finally {
+			out = null;
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the open journal file, opening it (and writing its header if it is new)
+	 * 	if needed
+	 */
+	private DataOutputStream open() throws IOException {
+		if (out == null) {
+			boolean isNew = !journalFile.exists() || journalFile.length() == 0;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+			if (isNew) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				length = HEADER;
+			}
+		}
+		return out;
+	}
+
+	private void takeSnapshot() throws NotPossibleException {
+		// the snapshot must not refer to events that are not written
+		flush();
+
+		Snapshot s = new Snapshot(seq, lastTime, balance, length);
+		try {
+			s.append(snapshotFile);
+		} catch (IOException ex) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_WRITE_TO_FILE, ex,
+					new Object[] { snapshotFile });
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the balance recorded by this by the end of the day of <tt>date</tt>, i.e.
+	 * 	after all the changes that were recorded on that day or before.
+	 *
+	 * 	<p>throws NotPossibleException if failed to read the journal
+	 */
+	public synchronized double balanceAsOf(Date date) throws NotPossibleException {
+		long end = endOfDay(date.getTime());
+		if (end >= lastTime)
+			return Money.toMajor(balance);
+
+		// the events to replay must be written
+		flush();
+
+		try {
+			Snapshot s = Snapshot.readLast(snapshotFile, end);
+			long[] asOf = { (s != null) ? s.balance : 0 };
+			replay((s != null) ? s.offset : HEADER, e -> {
+				if (e.getTime() > end)
+					return false;
+				asOf[0] = Money.toMinor(e.getBalance());
+				return true;
+			});
+			return Money.toMajor(asOf[0]);
+		} catch (IOException ex) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, ex,
+					new Object[] { "AccountJournal.balanceAsOf", accountId });
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	pass the events of the journal file starting at <tt>offset</tt> to
+	 * 	<tt>visitor</tt>, in order, until it returns <tt>false</tt>; return the offset
+	 * 	after the last complete event that was accepted
+	 */
+	private long replay(long offset, Predicate<BalanceEvent> visitor) throws IOException {
+		if (!journalFile.exists())
+			return offset;
+
+		try (RandomAccessFile raf = new RandomAccessFile(journalFile, "r")) {
+			raf.seek(offset);
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(new FileInputStream(raf.getFD())));
+			long pos = offset;
+			long end = raf.length();
+			while (pos < end) {
+				BalanceEvent e;
+				int size;
+				try {
+					long seq = in.readLong();
+					long time = in.readLong();
+					long date = in.readLong();
+					String txId = in.readUTF();
+					double delta = in.readDouble();
+					double balance = in.readDouble();
+					e = new BalanceEvent(seq, time, date, txId.isEmpty() ? null : txId, delta, balance);
+					size = 8 + 8 + 8 + 2 + utfLength(txId) + 8 + 8;
+				} catch (EOFException ex) {
+					// incomplete last event
+					break;
+				}
+
+				if (!visitor.test(e))
+					break;
+				pos += size;
+			}
+			return pos;
+		}
+	}
+
+	private static void write(DataOutputStream out, BalanceEvent e) throws IOException {
+		out.writeLong(e.getSeq());
+		out.writeLong(e.getTime());
+		out.writeLong(e.getDate().getTime());
+		out.writeUTF(e.getTxId() != null ? e.getTxId() : "");
+		out.writeDouble(e.getDelta());
+		out.writeDouble(e.getBalance());
+	}
+
+	/**
+	 * @effects
+	 * 	return the last millisecond of the day of <tt>time</tt> in the default time zone
+	 */
+	private static long endOfDay(long time) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(time);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		return cal.getTimeInMillis() - 1;
+	}
+
+	private static boolean hasHeader(File f) throws IOException {
+		if (f.length() == 0)
+			return true;
+		if (f.length() < HEADER)
+			return false;
+
+		try (DataInputStream in = new DataInputStream(new FileInputStream(f))) {
+			return in.readInt() == MAGIC && in.readInt() == VERSION;
+		}
+	}
+
+	private static void retire(File f) throws IOException {
+		if (f.exists())
+			Files.move(f.toPath(), new File(f.getPath() + ".old").toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static int utfLength(String s) {
+		int len = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F)
+				len++;
+			else if (c > 0x07FF)
+				len += 3;
+			else
+				len += 2;
+		}
+		return len;
+	}
+
+	public String getAccountId() {
+		return accountId;
+	}
+
+	public synchronized double getBalance() {
+		return Money.toMajor(balance);
+	}
+
+	/**
+	 * @effects
+	 * 	return the balance in minor units
+	 */
+	public synchronized long getBalanceMinor() {
+		return balance;
+	}
+
+	public synchronized long getEventCount() {
+		return seq;
+	}
+
+	/**
+	 * @overview
+	 * 	The state of a journal after the <tt>seq</tt>-th event, and the offset of the
+	 * 	next event. The snapshots of a journal are appended to its snapshot file in the
+	 * 	order that they are taken, so they are ordered by <tt>time</tt>.
+	 */
+	private static class Snapshot {
+		private long seq;
+		private long time;
+		private long balance;
+		private long offset;
+
+		Snapshot(long seq, long time, long balance, long offset) {
+			this.seq = seq;
+			this.time = time;
+			this.balance = balance;
+			this.offset = offset;
+		}
+
+		/**
+		 * @effects
+		 * 	append this to <tt>file</tt>, creating it if it does not exist
+		 */
+		void append(File file) throws IOException {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				long len = raf.length();
+				if (len < HEADER) {
+					raf.setLength(0);
+					raf.writeInt(MAGIC);
+					raf.writeInt(VERSION);
+					len = HEADER;
+				}
+				// overwrite the partly written record of an interrupted append
+				raf.seek(len - (len - HEADER) % SNAPSHOT);
+				raf.writeLong(seq);
+				raf.writeLong(time);
+				raf.writeLong(balance);
+				raf.writeLong(offset);
+			}
+		}
+
+		/**
+		 * @effects
+		 * 	return the last snapshot in <tt>file</tt>, or <tt>null</tt> if there is none
+		 */
+		static Snapshot readLast(File file) throws IOException {
+			return readLast(file, Long.MAX_VALUE);
+		}
+
+		/**
+		 * @effects
+		 * 	return the last snapshot in <tt>file</tt> that was taken by <tt>time</tt>, or
+		 * 	<tt>null</tt> if there is none
+		 */
+		static Snapshot readLast(File file, long time) throws IOException {
+			if (!file.exists())
+				return null;
+
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				long count = Math.max(0, (raf.length() - HEADER) / SNAPSHOT);
+
+				// binary search for the number of snapshots taken by time
+				long lo = 0, hi = count;
+				while (lo < hi) {
+					long mid = (lo + hi) >>> 1;
+					raf.seek(HEADER + mid * SNAPSHOT + 8);
+					if (raf.readLong() <= time)
+						lo = mid + 1;
+					else
+						hi = mid;
+				}
+				if (lo == 0)
+					return null;
+
+				raf.seek(HEADER + (lo - 1) * SNAPSHOT);
+				return new Snapshot(raf.readLong(), raf.readLong(), raf.readLong(), raf.readLong());
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package vn.com.personalfinance.services.account.journal;
+
+import java.util.Date;
+
+/**
+ * @overview
+ * 	An immutable entry of an {@link AccountJournal}: the change of an account's
+ * 	balance by <tt>delta</tt>, caused by transaction <tt>txId</tt> of <tt>date</tt>
+ * 	and recorded at <tt>time</tt>.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class BalanceEvent {
+	private long seq;
+	private long time;
+	// the date of the transaction, or time if it has none
+	private long date;
+	// null if the balance was set directly
+	private String txId;
+	private double delta;
+	private double balance;
+
+	public BalanceEvent(long seq, long time, long date, String txId, double delta, double balance) {
+		this.seq = seq;
+		this.time = time;
+		this.date = date;
+		this.txId = txId;
+		this.delta = delta;
+		this.balance = balance;
+	}
+
+	public long getSeq() {
+		return seq;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @effects return the date of the transaction of this, or the time that it was
+	 * recorded if it has none
+	 */
+	public Date getDate() {
+		return new Date(date);
+	}
+
+	public String getTxId() {
+		return txId;
+	}
+
+	public double getDelta() {
+		return delta;
+	}
+
+	/**
+	 * @effects return the balance after this event has been applied
+	 */
+	public double getBalance() {
+		return balance;
+	}
+
+	@Override
+	public String toString() {
+		return "BalanceEvent(" + seq + "," + new Date(time) + "," + getDate() + "," + txId + "," + delta + "," + balance + ")";
+	}
+}
@@ -0,0 +1,154 @@
+package vn.com.personalfinance.services.account.journal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import domainapp.basics.exceptions.NotPossibleException;
+import vn.com.personalfinance.services.account.Account;
+import vn.com.personalfinance.services.account.BalanceEngine;
+import vn.com.personalfinance.services.account.BalanceListener;
+import vn.com.personalfinance.services.account.Money;
+
+/**
+ * @overview
+ * 	Records the balance changes of all accounts in per-account {@link AccountJournal}s.
+ * 	Register it with {@link BalanceEngine#addGlobalListener(BalanceListener)} (see
+ * 	{@link #install(File, int)}) to journal every change without touching the domain
+ * 	classes.
+ *
+ * 	<p>When an account's journal does not match the balance that the account had
+ * 	before a change (e.g. the first time the account is journalled), an adjustment
+ * 	event with a <tt>null</tt> transaction id is recorded first.
+ *
+ * 	<p>The changes are written to the journals through buffers, so that recording a
+ * 	change does not wait for the file system; the buffers are written out every
+ * 	{@link #DEFAULT_FLUSH_INTERVAL} milliseconds by a daemon thread and when the
+ * 	software shuts down (see {@link #install(File, int)}).
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class BalanceJournal implements BalanceListener {
+	public static final int DEFAULT_SNAPSHOT_INTERVAL = 100;
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	private static final Logger logger = Logger.getLogger(BalanceJournal.class.getName());
+
+	private File dir;
+	private int snapshotInterval;
+	private Map<String, AccountJournal> journals;
+
+	public BalanceJournal(File dir, int snapshotInterval) {
+		if (snapshotInterval <= 0) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "snapshotInterval", snapshotInterval });
+		}
+		this.dir = dir;
+		this.snapshotInterval = snapshotInterval;
+		journals = new HashMap<>();
+	}
+
+	/**
+	 * @effects
+	 * 	create a <tt>BalanceJournal</tt> that stores its journals in <tt>dir</tt>,
+	 * 	register it to receive the balance changes of all accounts, to write them out
+	 * 	every {@link #DEFAULT_FLUSH_INTERVAL} milliseconds and to close the journals when
+	 * 	the software shuts down; return it
+	 */
+	public static BalanceJournal install(File dir, int snapshotInterval) {
+		BalanceJournal journal = new BalanceJournal(dir, snapshotInterval);
+		BalanceEngine.addGlobalListener(journal);
+
+		ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "balance-journal-flusher");
+			t.setDaemon(true);
+			return t;
+		});
+		flusher.scheduleWithFixedDelay(() -> {
+			try {
+				journal.flush();
+			} catch (RuntimeException e) {
+				// try again in the next interval
+				logger.log(Level.WARNING, "Failed to write out the balance journals", e);
+			}
+		}, DEFAULT_FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			flusher.shutdownNow();
+			journal.close();
+		}, "BalanceJournal"));
+		return journal;
+	}
+
+	/**
+	 * @effects
+	 * 	return the journal of <tt>accountId</tt>, opening it if needed
+	 */
+	public synchronized AccountJournal getJournal(String accountId) throws NotPossibleException {
+		AccountJournal journal = journals.get(accountId);
+		if (journal == null) {
+			journal = AccountJournal.open(dir, accountId, snapshotInterval);
+			journals.put(accountId, journal);
+		}
+		return journal;
+	}
+
+	/**
+	 * @effects
+	 * 	write out the buffered changes of the journals.
+	 *
+	 * 	<p>throws NotPossibleException if failed to write to a journal
+	 */
+	public void flush() throws NotPossibleException {
+		for (AccountJournal journal : getJournals())
+			journal.flush();
+	}
+
+	/**
+	 * @effects
+	 * 	write out the buffered changes of the journals and close their files
+	 *
+	 * 	<p>throws NotPossibleException if failed to write to a journal
+	 */
+	public void close() throws NotPossibleException {
+		for (AccountJournal journal : getJournals())
+			journal.close();
+	}
+
+	private synchronized List<AccountJournal> getJournals() {
+		return new ArrayList<>(journals.values());
+	}
+
+	@Override
+	public void balanceChanged(Account account, String txId, Date date, long delta, long balance) {
+		AccountJournal journal = getJournal(account.getId());
+		synchronized (journal) {
+			long before = balance - delta;
+			if (journal.getBalanceMinor() != before) {
+				journal.append(null, null, Money.toMajor(before - journal.getBalanceMinor()));
+			}
+			journal.append(txId, date, Money.toMajor(delta));
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the balance of <tt>account</tt> as recorded by the end of the day of
+	 * 	<tt>date</tt> (see {@link AccountJournal#balanceAsOf(Date)})
+	 *
+	 * 	<p>throws NotPossibleException if failed to read the journal
+	 */
+	public double balanceAsOf(Account account, Date date) throws NotPossibleException {
+		return getJournal(account.getId()).balanceAsOf(date);
+	}
+}
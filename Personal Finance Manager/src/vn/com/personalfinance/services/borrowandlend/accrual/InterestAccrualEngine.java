@@ -0,0 +1,412 @@
+package vn.com.personalfinance.services.borrowandlend.accrual;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.core.dodm.osm.OSM;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotFoundException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.Oid;
+import domainapp.basics.model.meta.DAttr;
+import domainapp.basics.model.query.Expression.Op;
+import vn.com.personalfinance.services.borrowandlend.ledger.DebtLedger;
+import vn.com.personalfinance.services.borrowandlend.model.BorrowAndLend;
+import vn.com.personalfinance.services.datasource.DataSources;
+
+/**
+ * @overview
+ * 	Re-accrues the final money of the open {@link BorrowAndLend} at once, when their
+ * 	interest rates are changed by a new {@link RatePolicy}.
+ *
+ * 	<p>The open borrowings and lendings as of a date (those started by that date whose
+ * 	period has not ended) are selected from the data source by a parameterised query of
+ * 	their ids, money, interest rates, start dates and periods only. Their new rates are
+ * 	then computed in parallel (fork/join over ranges of them) by the rate policy.
+ *
+ * 	<p>Only the borrowings and lendings whose rate has changed are written back. If the
+ * 	data source is relational, their new rates are written by JDBC batches of
+ * 	{@link #getBatchSize()} rows, all in one transaction. Then those that are in the
+ * 	object pool are updated there (without writing them again), which recomputes their
+ * 	final money, updates the {@link DebtLedger} and notifies the change listeners of
+ * 	{@link BorrowAndLend}; the others are read into the object pool at once, with their
+ * 	new rates. Otherwise, each is read into the object pool (if it is not there) and
+ * 	updated and stored by the object manager.
+ *
+ * @example
+ * <pre>
+ * 	// half a point more on the open loans
+ * 	int changed = new InterestAccrualEngine().accrueAll(
+ * 		(money, rate, startDate, period, asOf) -&gt; rate + 0.5, new Date());
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class InterestAccrualEngine {
+	// the number of borrowings and lendings below which a range is computed in one task
+	public static final int LEAF_SIZE = 1024;
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	private ForkJoinPool pool;
+	private int batchSize;
+
+	private int batchesWritten;
+
+	public InterestAccrualEngine(ForkJoinPool pool, int batchSize) throws NotPossibleException {
+		if (batchSize < 1) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "batchSize", batchSize });
+		}
+		this.pool = pool;
+		this.batchSize = batchSize;
+	}
+
+	public InterestAccrualEngine() throws NotPossibleException {
+		this(ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of JDBC batches written back
+	 */
+	public int getBatchesWritten() {
+		return batchesWritten;
+	}
+
+	/**
+	 * @modifies the open borrowings and lendings
+	 * @effects
+	 * 	set the interest rates of the borrowings and lendings that are open as of
+	 * 	<tt>asOf</tt> to those of <tt>policy</tt>, store them and re-accrue their final
+	 * 	money; return the number of them whose rate has changed.
+	 *
+	 * 	<p>throws DataSourceException if fails to read the borrowings and lendings or to
+	 * 	write their new rates (none is written); NotPossibleException if fails to update
+	 * 	one of them in the object pool
+	 */
+	public int accrueAll(RatePolicy policy, Date asOf) throws DataSourceException, NotPossibleException {
+		Snapshot s = select(asOf);
+		if (s.size == 0)
+			return 0;
+
+		pool.invoke(new AccrueTask(s, policy, asOf, 0, s.size));
+
+		List<Integer> changed = new ArrayList<>();
+		for (int i = 0; i < s.size; i++) {
+			if (s.changed[i])
+				changed.add(i);
+		}
+		if (changed.isEmpty())
+			return 0;
+
+		DOMBasic dom = QRM.getInstance().getDom();
+		DAttr rateAttrib = QRM.getInstance().getDsm().getDomainConstraint(BorrowAndLend.class,
+				BorrowAndLend.T_interestedRate);
+		if (dom.getOsm() instanceof RelationalOSMBasic) {
+			store(dom, s, changed);
+			refresh(dom, rateAttrib, s, changed);
+		} else {
+			for (int i : changed)
+				update(dom, rateAttrib, s, i, lookUp(dom, s.ids[i]), true);
+		}
+
+		return changed.size();
+	}
+
+	/**
+	 * @effects
+	 * 	return the snapshot of the borrowings and lendings in the data source that are open
+	 * 	as of <tt>asOf</tt>
+	 */
+	private static Snapshot select(Date asOf) throws DataSourceException {
+		DOMBasic dom = QRM.getInstance().getDom();
+		OSM osm = dom.getOsm();
+		List<Object[]> rows = new ArrayList<>();
+		if (osm instanceof RelationalOSMBasic) {
+			RelationalOSMBasic rosm = (RelationalOSMBasic) osm;
+			DSMBasic dsm = dom.getDsm();
+			Class<?> c = BorrowAndLend.class;
+			String start = rosm.toDBColumnName(c, BorrowAndLend.T_start_date, false);
+			String period = rosm.toDBColumnName(c, BorrowAndLend.T_period, false);
+			// those that end before asOf are filtered out below
+			String sql = "select " + rosm.toDBColumnName(c, BorrowAndLend.T_id, false) + " as id, "
+					+ rosm.toDBColumnName(c, BorrowAndLend.T_money, false) + " as money, "
+					+ rosm.toDBColumnName(c, BorrowAndLend.T_interestedRate, false) + " as rate, "
+					+ start + " as st, " + period + " as prd from " + dsm.getDomainClassName(c)
+					+ " where " + period + " > 0 and " + start + " <= ?";
+
+			for (Map<String, Object> r : DataSources.query(dom, sql, new java.sql.Date(asOf.getTime()))) {
+				Object[] row = { column(r, "id"), column(r, "money"), column(r, "rate"), column(r, "st"),
+						column(r, "prd") };
+				if (row[0] != null && row[1] != null && row[2] != null && row[4] != null)
+					rows.add(row);
+			}
+		} else {
+			// no projection query: read the objects
+			Map<?, ?> objects = dom.retrieveObjects(BorrowAndLend.class);
+			if (objects != null) {
+				for (Object o : objects.values()) {
+					BorrowAndLend b = (BorrowAndLend) o;
+					rows.add(new Object[] { b.getId(), b.getMoney(), b.getInterestedRate(), b.getStartDate(),
+							b.getPeriod() });
+				}
+			}
+		}
+
+		List<Object[]> open = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			if (isOpen((Date) row[3], ((Number) row[4]).intValue(), asOf))
+				open.add(row);
+		}
+		return new Snapshot(open);
+	}
+
+	private static Object column(Map<String, Object> row, String label) {
+		Object val = row.get(label.toUpperCase());
+		return (val != null) ? val : row.get(label);
+	}
+
+	/**
+	 * @effects
+	 * 	if a borrowing or lending started on <tt>start</tt> for <tt>period</tt> months is
+	 * 	open as of <tt>asOf</tt> (it has started and its period has not ended)
+	 * 		return true
+	 * 	else
+	 * 		return false
+	 */
+	private static boolean isOpen(Date start, int period, Date asOf) {
+		if (start == null || period <= 0 || start.after(asOf))
+			return false;
+
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(start);
+		cal.add(Calendar.MONTH, period);
+		return cal.getTime().after(asOf);
+	}
+
+	/**
+	 * @modifies the data source
+	 * @effects
+	 * 	write the new rates of the borrowings and lendings <tt>changed</tt> (indexes of
+	 * 	<tt>s</tt>) to the data source of <tt>dom</tt>, by batches of {@link #batchSize}
+	 * 	rows in one transaction.
+	 *
+	 * 	<p>throws DataSourceException if fails to write them (none is written)
+	 */
+	private void store(DOMBasic dom, Snapshot s, List<Integer> changed) throws DataSourceException {
+		RelationalOSMBasic rosm = (RelationalOSMBasic) dom.getOsm();
+		Class<?> c = BorrowAndLend.class;
+		String sql = "update " + dom.getDsm().getDomainClassName(c) + " set "
+				+ rosm.toDBColumnName(c, BorrowAndLend.T_interestedRate, false) + " = ? where "
+				+ rosm.toDBColumnName(c, BorrowAndLend.T_id, false) + " = ?";
+
+		try (Connection conn = DataSources.open(dom)) {
+			conn.setAutoCommit(false);
+			int batches = 0;
+			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+				int rows = 0;
+				for (int i : changed) {
+					stmt.setDouble(1, s.newRate[i]);
+					stmt.setInt(2, s.ids[i]);
+					stmt.addBatch();
+					if (++rows % batchSize == 0 || rows == changed.size()) {
+						stmt.executeBatch();
+						batches++;
+					}
+				}
+				conn.commit();
+			} catch (SQLException | RuntimeException e) {
+				conn.rollback();
+				throw e;
+			}
+			batchesWritten += batches;
+		} catch (SQLException | RuntimeException e) {
+			throw new DataSourceException(DataSourceException.Code.FAIL_TO_UPDATE_OBJECT_ATTRIB, e,
+					new Object[] { "batch", sql });
+		}
+	}
+
+	/**
+	 * @modifies the object pool
+	 * @effects
+	 * 	set the new rates of the borrowings and lendings <tt>changed</tt> (indexes of
+	 * 	<tt>s</tt>) that are in the object pool, without storing them, and read the others
+	 * 	into the object pool.
+	 *
+	 * 	<p>throws NotPossibleException if fails to update or read them
+	 */
+	private static void refresh(DOMBasic dom, DAttr rateAttrib, Snapshot s, List<Integer> changed)
+			throws NotPossibleException {
+		DAttr idAttrib = dom.getDsm().getDomainConstraint(BorrowAndLend.class, BorrowAndLend.T_id);
+		List<Oid> missing = new ArrayList<>();
+		for (int i : changed) {
+			Object o = dom.lookUpObjectByID(BorrowAndLend.class, s.ids[i]);
+			if (o != null)
+				update(dom, rateAttrib, s, i, (BorrowAndLend) o, false);
+			else
+				missing.add(dom.genObjectId(BorrowAndLend.class, idAttrib, s.ids[i]));
+		}
+
+		if (!missing.isEmpty()) {
+			try {
+				// stored with their new rates
+				dom.retrieveObjects(BorrowAndLend.class, missing, null);
+			} catch (DataSourceException | NotFoundException e) {
+				throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+						new Object[] { "InterestAccrualEngine.refresh", missing.size() });
+			}
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the borrowing or lending whose id is <tt>id</tt>, from the object pool or
+	 * 	else (and then pooled) from the data source.
+	 *
+	 * 	<p>throws NotPossibleException if fails to read it
+	 */
+	private static BorrowAndLend lookUp(DOMBasic dom, int id) throws NotPossibleException {
+		Object o = dom.lookUpObjectByID(BorrowAndLend.class, id);
+		if (o != null)
+			return (BorrowAndLend) o;
+
+		try {
+			return dom.retrieveObject(BorrowAndLend.class, BorrowAndLend.T_id, Op.EQ, id);
+		} catch (DataSourceException | NotFoundException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "InterestAccrualEngine.lookUp", id });
+		}
+	}
+
+	/**
+	 * @modifies <tt>b</tt>
+	 * @effects
+	 * 	set the interest rate of <tt>b</tt> to the new rate of the <tt>i</tt>-th borrowing
+	 * 	or lending of <tt>s</tt> through <tt>dom</tt>, storing it if <tt>store</tt>; the
+	 * 	object manager recomputes its final money (which updates the {@link DebtLedger}) and
+	 * 	notifies its change listeners.
+	 *
+	 * 	<p>throws NotPossibleException if fails to update it
+	 */
+	private static void update(DOMBasic dom, DAttr rateAttrib, Snapshot s, int i, BorrowAndLend b,
+			boolean store) throws NotPossibleException {
+		Map<DAttr, Object> newVals = new HashMap<>();
+		newVals.put(rateAttrib, s.newRate[i]);
+		Map<DAttr, Object> oldVals = new HashMap<>();
+		oldVals.put(rateAttrib, b.getInterestedRate());
+		try {
+			dom.updateObject(b, oldVals, newVals, store);
+		} catch (DataSourceException | NotFoundException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "InterestAccrualEngine.update", s.ids[i] });
+		}
+	}
+
+	/**
+	 * @overview
+	 * 	The inputs of an accrual, one array element per borrowing or lending, and its
+	 * 	results.
+	 */
+	private static class Snapshot {
+		final int size;
+
+		final int[] ids;
+		final double[] money;
+		final double[] rate;
+		final Date[] startDate;
+		final int[] period;
+
+		// the new rates
+		final double[] newRate;
+		final boolean[] changed;
+
+		/**
+		 * @requires
+		 * 	each of <tt>rows</tt> is <tt>{id, money, rate, startDate, period}</tt>
+		 */
+		Snapshot(List<Object[]> rows) {
+			size = rows.size();
+			ids = new int[size];
+			money = new double[size];
+			rate = new double[size];
+			startDate = new Date[size];
+			period = new int[size];
+			newRate = new double[size];
+			changed = new boolean[size];
+
+			for (int i = 0; i < size; i++) {
+				Object[] row = rows.get(i);
+				ids[i] = ((Number) row[0]).intValue();
+				money[i] = ((Number) row[1]).doubleValue();
+				rate[i] = ((Number) row[2]).doubleValue();
+				startDate[i] = (Date) row[3];
+				period[i] = ((Number) row[4]).intValue();
+			}
+		}
+
+		/**
+		 * @modifies this
+		 * @effects
+		 * 	compute the new rate of the <tt>i</tt>-th borrowing or lending
+		 * 	by <tt>policy</tt> as of <tt>asOf</tt>, and whether its rate has changed
+		 */
+		void accrue(int i, RatePolicy policy, Date asOf) {
+			double r = policy.rateOf(money[i], rate[i], startDate[i], period[i], asOf);
+			newRate[i] = r;
+			changed[i] = Double.compare(r, rate[i]) != 0;
+		}
+	}
+
+	/**
+	 * @overview
+	 * 	Accrues the borrowings and lendings <tt>[lo, hi)</tt> of a snapshot.
+	 */
+	private static class AccrueTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private Snapshot s;
+		private RatePolicy policy;
+		private Date asOf;
+		private int lo;
+		private int hi;
+
+		AccrueTask(Snapshot s, RatePolicy policy, Date asOf, int lo, int hi) {
+			this.s = s;
+			this.policy = policy;
+			this.asOf = asOf;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= LEAF_SIZE) {
+				for (int i = lo; i < hi; i++)
+					s.accrue(i, policy, asOf);
+				return;
+			}
+
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new AccrueTask(s, policy, asOf, lo, mid), new AccrueTask(s, policy, asOf, mid, hi));
+		}
+	}
+}
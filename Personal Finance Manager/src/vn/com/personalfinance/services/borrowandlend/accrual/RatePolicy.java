@@ -0,0 +1,26 @@
+package vn.com.personalfinance.services.borrowandlend.accrual;
+
+import java.util.Date;
+
+/**
+ * @overview
+ * 	The interest rates of the borrowings and lendings as of a date, e.g. those of a new
+ * 	rate table or of rates that follow a reference rate.
+ *
+ * 	<p>A policy is applied to many borrowings and lendings in parallel (see
+ * 	{@link InterestAccrualEngine}), so it must be thread-safe.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public interface RatePolicy {
+
+	/**
+	 * @effects
+	 * 	return the interest rate, as of <tt>asOf</tt>, of a borrowing or lending of
+	 * 	<tt>money</tt> started on <tt>startDate</tt> for <tt>period</tt> months, whose
+	 * 	current interest rate is <tt>rate</tt>
+	 */
+	double rateOf(double money, double rate, Date startDate, int period, Date asOf);
+}
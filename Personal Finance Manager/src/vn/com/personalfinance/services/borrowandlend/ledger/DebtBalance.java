@@ -0,0 +1,114 @@
+package vn.com.personalfinance.services.borrowandlend.ledger;
+
+import vn.com.personalfinance.services.account.Money;
+
+/**
+ * @overview
+ * 	The net outstanding debt between the user and the owner of a ledger balance (a
+ * 	{@link vn.com.personalfinance.services.borrowandlend.model.Subjects} or an
+ * 	{@link vn.com.personalfinance.services.account.Account}): the principal and the final
+ * 	money (the principal plus the interest) of its borrowings and lendings.
+ *
+ * 	<p>A positive balance is owed to the user (lent money not yet collected), a negative
+ * 	one is owed by the user (borrowed money not yet repaid). The sums are kept in minor
+ * 	units (see {@link Money}).
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class DebtBalance {
+	private Object ownerId;
+	private Object owner;
+	private int count;
+	private long principal;
+	private long accrued;
+
+	// the order of creation, to rank equal balances
+	private long seq;
+
+	DebtBalance(Object ownerId, long seq) {
+		this.ownerId = ownerId;
+		this.seq = seq;
+	}
+
+	/**
+	 * @effects
+	 * 	add to this <tt>count</tt> borrowings or lendings of the net <tt>principal</tt>
+	 * 	and <tt>accrued</tt> final money (in minor units)
+	 */
+	void add(int count, long principal, long accrued) {
+		this.count += count;
+		this.principal += principal;
+		this.accrued += accrued;
+	}
+
+	/**
+	 * @effects
+	 * 	if this contains no borrowings or lendings
+	 * 		return true
+	 * 	else
+	 * 		return false
+	 */
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+	long getSeq() {
+		return seq;
+	}
+
+	long getPrincipalMinor() {
+		return principal;
+	}
+
+	/**
+	 * @effects
+	 * 	return the id of the subject or account of this
+	 */
+	public Object getOwnerId() {
+		return ownerId;
+	}
+
+	/**
+	 * @effects
+	 * 	return the subject or account of this, or <tt>null</tt> if it is not known (its
+	 * 	borrowings and lendings are only counted in the seeded sums)
+	 */
+	public Object getOwner() {
+		return owner;
+	}
+
+	void setOwner(Object owner) {
+		this.owner = owner;
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of borrowings and lendings of this
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @effects
+	 * 	return the net outstanding principal (positive if owed to the user)
+	 */
+	public double getPrincipal() {
+		return Money.toMajor(principal);
+	}
+
+	/**
+	 * @effects
+	 * 	return the net outstanding final money (positive if owed to the user)
+	 */
+	public double getAccrued() {
+		return Money.toMajor(accrued);
+	}
+
+	@Override
+	public String toString() {
+		return "DebtBalance(" + ((owner != null) ? owner : ownerId) + "," + getPrincipal() + "," + getAccrued() + ")";
+	}
+}
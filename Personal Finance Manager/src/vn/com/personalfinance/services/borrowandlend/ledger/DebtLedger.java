@@ -0,0 +1,428 @@
+package vn.com.personalfinance.services.borrowandlend.ledger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotFoundException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.query.Expression.Op;
+import vn.com.personalfinance.services.account.Account;
+import vn.com.personalfinance.services.account.Money;
+import vn.com.personalfinance.services.borrowandlend.model.BorrowAndLend;
+import vn.com.personalfinance.services.borrowandlend.model.Subjects;
+import vn.com.personalfinance.services.report.AggregateQuery;
+
+/**
+ * @overview
+ * 	The net outstanding debts of the borrowings and lendings ({@link BorrowAndLend}), by
+ * 	subject (the counterparty) and by account.
+ *
+ * 	<p>The ledger is kept up to date by the link adders and removers of {@link Subjects}
+ * 	and {@link Account}, as the borrowings and lendings are linked to them (when they are
+ * 	created or loaded into the object pool) and unlinked, and by {@link BorrowAndLend}
+ * 	when their money, period, interest rate or action type change. Linking the same
+ * 	borrowing or lending again replaces its previous entry.
+ *
+ * 	<p>At startup ({@link #install()}), the ledger is seeded with the sums of the stored
+ * 	borrowings and lendings of each subject and account, by grouped queries, so that the
+ * 	balances include those that are not loaded. When a seeded borrowing or lending is
+ * 	first linked, its entry replaces its share of the seeded sums.
+ *
+ * 	<p>The action types are those of {@link BorrowAndLend#getActionType()}: lending money
+ * 	(4) and repaying money (3) add to the debt owed to the user, collecting debts (1) and
+ * 	borrowing money (2) subtract from it. The subjects are also ranked by principal, so
+ * 	that the <tt>k</tt> largest debtors or creditors are read in O(k + log n).
+ *
+ * @example
+ * <pre>
+ * 	DebtLedger ledger = DebtLedger.getInstance();
+ * 	double owed = ledger.getBalance(subject).getPrincipal();
+ * 	List&lt;DebtBalance&gt; debtors = ledger.getTopDebtors(10);
+ * 	Subjects top = (Subjects) debtors.get(0).getOwner();
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class DebtLedger {
+	private static DebtLedger instance;
+
+	private Book subjects;
+	private Book accounts;
+
+	// the largest id of the seeded borrowings and lendings (0 if not seeded)
+	private int seededId;
+
+	private DebtLedger() {
+		subjects = new Book(Subjects.class);
+		accounts = new Book(Account.class);
+	}
+
+	/**
+	 * @effects
+	 * 	return the ledger
+	 */
+	public static synchronized DebtLedger getInstance() {
+		if (instance == null)
+			instance = new DebtLedger();
+		return instance;
+	}
+
+	/**
+	 * @modifies the ledger
+	 * @effects
+	 * 	if the data source supports aggregate queries and the ledger is not seeded
+	 * 		seed the ledger with the sums of the stored borrowings and lendings of each
+	 * 		subject and account (see {@link #seed()})
+	 *
+	 * 	<p>throws NotPossibleException if fails to generate the queries;
+	 * 	DataSourceException if fails to read from the data source
+	 */
+	public static void install() throws NotPossibleException, DataSourceException {
+		if (AggregateQuery.isSupported())
+			getInstance().seed();
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	if this is not seeded
+	 * 		add to the balances the sums (by action type) of the stored borrowings and
+	 * 		lendings of each subject and account, less those that are already linked.
+	 *
+	 * 	<p>throws NotPossibleException if fails to generate the queries;
+	 * 	DataSourceException if fails to read from the data source
+	 */
+	private synchronized void seed() throws NotPossibleException, DataSourceException {
+		if (seededId > 0)
+			return;
+
+		AggregateQuery q = new AggregateQuery(BorrowAndLend.class);
+		q.max("mx", q.column(BorrowAndLend.T_id));
+		int maxId = q.executeOne().getInt("mx");
+		if (maxId == 0)
+			// nothing stored
+			return;
+
+		for (AggregateQuery.Row r : group(BorrowAndLend.T_subject).execute()) {
+			if (r.get("owner") != null)
+				subjects.seed(r.getInt("owner"), sign(r.getInt("type")), r);
+		}
+		for (AggregateQuery.Row r : group(BorrowAndLend.T_account).execute()) {
+			if (r.get("owner") != null)
+				accounts.seed(String.valueOf(r.get("owner")), sign(r.getInt("type")), r);
+		}
+
+		// those already linked are both in the sums and in the entries
+		subjects.claim(maxId);
+		accounts.claim(maxId);
+		seededId = maxId;
+	}
+
+	/**
+	 * @effects
+	 * 	return the query of the numbers, money and final money of the borrowings and
+	 * 	lendings grouped by the owner <tt>ownerAttrib</tt> and by action type
+	 */
+	private static AggregateQuery group(String ownerAttrib) throws NotPossibleException {
+		AggregateQuery q = new AggregateQuery(BorrowAndLend.class)
+				.groupBy("owner", ownerAttrib)
+				.groupBy("type", BorrowAndLend.T_actionType)
+				.count("cnt");
+		q.sum("money", q.column(BorrowAndLend.T_money));
+		// finalMoney is not stored: see BorrowAndLend.computeFinalMoney()
+		q.sum("total", BorrowAndLend.computeFinalMoneySql(q.column(BorrowAndLend.T_money),
+				q.column(BorrowAndLend.T_interestedRate), q.column(BorrowAndLend.T_period)));
+		return q;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	add <tt>b</tt> to the balance of <tt>s</tt>, replacing its previous entry (if any)
+	 */
+	public synchronized void linkSubject(Subjects s, BorrowAndLend b) {
+		subjects.post(s.getId(), s, b, seededId);
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	remove <tt>b</tt> from the balances of the subjects (if it is in one)
+	 */
+	public synchronized void unlinkSubject(BorrowAndLend b) {
+		subjects.unpost(b.getId());
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	add <tt>b</tt> to the balance of <tt>a</tt>, replacing its previous entry (if any)
+	 */
+	public synchronized void linkAccount(Account a, BorrowAndLend b) {
+		accounts.post(a.getId(), a, b, seededId);
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	remove <tt>b</tt> from the balances of the accounts (if it is in one)
+	 */
+	public synchronized void unlinkAccount(BorrowAndLend b) {
+		accounts.unpost(b.getId());
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	update the entries of <tt>b</tt> (if any) with its current money, final money and
+	 * 	action type
+	 */
+	public synchronized void update(BorrowAndLend b) {
+		subjects.repost(b);
+		accounts.repost(b);
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	update the entries of each of <tt>bs</tt> (as by {@link #update(BorrowAndLend)})
+	 */
+	public synchronized void update(Collection<BorrowAndLend> bs) {
+		for (BorrowAndLend b : bs)
+			update(b);
+	}
+
+	/**
+	 * @effects
+	 * 	return the balance of <tt>s</tt>, or <tt>null</tt> if it has no borrowings or
+	 * 	lendings
+	 */
+	public synchronized DebtBalance getBalance(Subjects s) {
+		return subjects.balances.get(s.getId());
+	}
+
+	/**
+	 * @effects
+	 * 	return the balance of <tt>a</tt>, or <tt>null</tt> if it has no borrowings or
+	 * 	lendings
+	 */
+	public synchronized DebtBalance getBalance(Account a) {
+		return accounts.balances.get(a.getId());
+	}
+
+	/**
+	 * @effects
+	 * 	return at most <tt>k</tt> balances of the subjects that owe the user, the largest
+	 * 	principal first
+	 */
+	public synchronized List<DebtBalance> getTopDebtors(int k) {
+		return subjects.resolve(top(subjects.ranking.descendingIterator(), k, 1));
+	}
+
+	/**
+	 * @effects
+	 * 	return at most <tt>k</tt> balances of the subjects that the user owes, the largest
+	 * 	principal first
+	 */
+	public synchronized List<DebtBalance> getTopCreditors(int k) {
+		return subjects.resolve(top(subjects.ranking.iterator(), k, -1));
+	}
+
+	/**
+	 * @effects
+	 * 	return the first <tt>k</tt> balances of <tt>it</tt> whose principals have the sign
+	 * 	<tt>sign</tt>
+	 */
+	private static List<DebtBalance> top(Iterator<DebtBalance> it, int k, int sign) {
+		List<DebtBalance> result = new ArrayList<>();
+		while (it.hasNext() && result.size() < k) {
+			DebtBalance b = it.next();
+			if (Long.signum(b.getPrincipalMinor()) != sign)
+				break;
+			result.add(b);
+		}
+		return result;
+	}
+
+	/**
+	 * @effects
+	 * 	return the sign of the debt owed to the user by <tt>b</tt>: 1 if it lends or repays
+	 * 	money, -1 if it collects debts or borrows money, 0 otherwise
+	 */
+	private static int sign(BorrowAndLend b) {
+		return (b.getActionType() != null) ? sign(b.getActionType().getId()) : 0;
+	}
+
+	/**
+	 * @effects
+	 * 	return the sign of the debt owed to the user by the borrowings and lendings of the
+	 * 	action type <tt>actionType</tt> (as by {@link #sign(BorrowAndLend)})
+	 */
+	private static int sign(int actionType) {
+		if (actionType == 3 || actionType == 4)
+			return 1;
+		else if (actionType == 1 || actionType == 2)
+			return -1;
+		else
+			return 0;
+	}
+
+	/**
+	 * @overview
+	 * 	The entries and balances of one kind of owner (subjects or accounts).
+	 */
+	private static class Book {
+		// the class of the owners
+		private Class<?> ownerClass;
+		// the entries and balances by the ids of the borrowings and lendings and of the owners
+		private Map<Integer, Entry> entries = new HashMap<>();
+		private Map<Object, DebtBalance> balances = new HashMap<>();
+		private NavigableSet<DebtBalance> ranking = new TreeSet<>(
+				Comparator.comparingLong(DebtBalance::getPrincipalMinor).thenComparingLong(DebtBalance::getSeq));
+		private long seq;
+
+		// the ids of the seeded borrowings and lendings whose entries replace their share of the seeded sums
+		private Set<Integer> claimed = new HashSet<>();
+
+		Book(Class<?> ownerClass) {
+			this.ownerClass = ownerClass;
+		}
+
+		/**
+		 * @effects
+		 * 	add the entry of <tt>b</tt> to the balance of the owner <tt>owner</tt> whose id is
+		 * 	<tt>ownerId</tt>, replacing its previous entry (if any) or, the first time that
+		 * 	<tt>b</tt> is posted, its share of the seeded sums (if <tt>b.id &lt;= seededId</tt>)
+		 */
+		void post(Object ownerId, Object owner, BorrowAndLend b, int seededId) {
+			unpost(b.getId());
+
+			int sign = sign(b);
+			Entry e = new Entry(ownerId, sign * Money.toMinor(b.getMoney()), sign * Money.toMinor(b.getFinalMoney()));
+			if (b.getId() <= seededId && claimed.add(b.getId()))
+				add(ownerId, null, -1, -e.principal, -e.accrued);
+			entries.put(b.getId(), e);
+			add(ownerId, owner, 1, e.principal, e.accrued);
+		}
+
+		void unpost(int id) {
+			Entry e = entries.remove(id);
+			if (e != null)
+				add(e.ownerId, null, -1, -e.principal, -e.accrued);
+		}
+
+		void repost(BorrowAndLend b) {
+			Entry e = entries.get(b.getId());
+			if (e != null) {
+				DebtBalance balance = balances.get(e.ownerId);
+				post(e.ownerId, (balance != null) ? balance.getOwner() : null, b, 0);
+			}
+		}
+
+		/**
+		 * @effects
+		 * 	add to the balance of the owner whose id is <tt>ownerId</tt> the sums of the row
+		 * 	<tt>r</tt> (of the query {@link DebtLedger#group(String)}), signed by <tt>sign</tt>
+		 */
+		void seed(Object ownerId, int sign, AggregateQuery.Row r) {
+			if (sign == 0) {
+				// counted but not owed
+				add(ownerId, null, r.getInt("cnt"), 0, 0);
+			} else {
+				add(ownerId, null, r.getInt("cnt"), sign * Money.toMinor(r.getDouble("money")),
+						sign * Money.toMinor(r.getDouble("total")));
+			}
+		}
+
+		/**
+		 * @effects
+		 * 	replace the shares of the seeded sums of the posted borrowings and lendings whose
+		 * 	ids are <tt>&lt;= seededId</tt> by their entries
+		 */
+		void claim(int seededId) {
+			for (Map.Entry<Integer, Entry> en : entries.entrySet()) {
+				Entry e = en.getValue();
+				if (en.getKey() <= seededId && claimed.add(en.getKey()))
+					add(e.ownerId, null, -1, -e.principal, -e.accrued);
+			}
+		}
+
+		/**
+		 * @effects
+		 * 	set the owners of the balances of <tt>result</tt> that are not loaded, by looking
+		 * 	them up in the object pool or else reading them from the data source, and return
+		 * 	<tt>result</tt>
+		 */
+		List<DebtBalance> resolve(List<DebtBalance> result) {
+			DOMBasic dom = null;
+			for (DebtBalance b : result) {
+				if (b.getOwner() != null)
+					continue;
+
+				if (dom == null)
+					dom = QRM.getInstance().getDom();
+				Object owner = dom.lookUpObjectByID(ownerClass, b.getOwnerId());
+				if (owner == null) {
+					try {
+						owner = dom.retrieveObject(ownerClass, "id", Op.EQ, b.getOwnerId());
+					} catch (DataSourceException | NotFoundException e) {
+						// the balance is listed without its owner
+					}
+				}
+				b.setOwner(owner);
+			}
+			return result;
+		}
+
+		private void add(Object ownerId, Object owner, int count, long principal, long accrued) {
+			DebtBalance balance = balances.get(ownerId);
+			if (balance == null) {
+				balance = new DebtBalance(ownerId, seq++);
+				balances.put(ownerId, balance);
+			} else {
+				ranking.remove(balance);
+			}
+
+			if (owner != null)
+				balance.setOwner(owner);
+
+			balance.add(count, principal, accrued);
+
+			if (balance.isEmpty())
+				balances.remove(ownerId);
+			else
+				ranking.add(balance);
+		}
+	}
+
+	/**
+	 * @overview
+	 * 	The signed amounts (in minor units) that a borrowing or lending adds to the balance
+	 * 	of its owner.
+	 */
+	private static class Entry {
+		private Object ownerId;
+		private long principal;
+		private long accrued;
+
+		Entry(Object ownerId, long principal, long accrued) {
+			this.ownerId = ownerId;
+			this.principal = principal;
+			this.accrued = accrued;
+		}
+	}
+}
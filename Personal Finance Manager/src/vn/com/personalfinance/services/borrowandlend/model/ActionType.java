@@ -1,6 +1,5 @@
 package vn.com.personalfinance.services.borrowandlend.model;
 
-import java.util.ArrayList;  
 import java.util.Collection;
 
 import domainapp.basics.exceptions.ConstraintViolationException;
@@ -17,6 +16,9 @@ import domainapp.basics.model.meta.DOpt;
 import domainapp.basics.model.meta.MetaConstants;
 import domainapp.basics.model.meta.Select;
 
+import vn.com.personalfinance.services.datasource.IdSequence;
+import vn.com.personalfinance.services.model.LinkCollection;
+
 @DClass (schema = "personalfinancemanager")
 public class ActionType {
 	public static final String A_name = "name";
@@ -24,7 +26,7 @@ public class ActionType {
 	@DAttr (name = "id", type = Type.Integer, length = 8, id = true, auto = true, mutable = false, optional = false)
 	private int id;
 	
-	private static int idCounter;
+	private static final IdSequence ids = IdSequence.of(ActionType.class);
 	
 	@DAttr (name = A_name, type = Type.String, length = 30, optional = false, cid = true)
 	private String name;
@@ -47,7 +49,7 @@ public class ActionType {
 	public ActionType (@AttrRef("id") Integer id, @AttrRef("name") String name) {
 		this.id = nextId(id);
 		this.name = name;
-		borrowAndLend = new ArrayList<>();
+		borrowAndLend = new LinkCollection<>();
 		borrowAndLendCount = 0;
 	}
 	
@@ -81,7 +83,7 @@ public class ActionType {
 
 	@DOpt(type=DOpt.Type.Setter)
 	public void setBorrowAndLend(Collection<BorrowAndLend> borrowAndLend) {
-		this.borrowAndLend = borrowAndLend;
+		this.borrowAndLend = LinkCollection.of(borrowAndLend);
 		borrowAndLendCount = borrowAndLend.size();
 	}
 
@@ -136,13 +138,10 @@ public class ActionType {
 	
 	private static int nextId(Integer currId) {
 		if (currId == null) {
-			idCounter++;
-			return idCounter;
+			return ids.next();
 		} else {
 			int num = currId.intValue();
-			if (num > idCounter) {
-				idCounter = num;
-			}
+			ids.advanceTo(num);
 			return currId;
 		}
 	}
@@ -188,8 +187,7 @@ public class ActionType {
 			// attributes of this class
 			if (attrib.name().equals("id")) {
 				int maxIdVal = (Integer) maxVal;
-				if (maxIdVal > idCounter)
-					idCounter = maxIdVal;
+				ids.advanceTo(maxIdVal);
 			}
 		}
 	}	
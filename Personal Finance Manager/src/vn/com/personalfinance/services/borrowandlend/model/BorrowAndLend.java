@@ -16,7 +16,10 @@ import domainapp.basics.model.meta.DAttr.Type;
 import domainapp.basics.util.Tuple;
 import domainapp.basics.util.cache.StateHistory;
 import vn.com.personalfinance.services.account.Account;
+import vn.com.personalfinance.services.account.Money;
+import vn.com.personalfinance.services.borrowandlend.ledger.DebtLedger;
 import vn.com.personalfinance.services.borrowandlend.report.BorrowAndLendByActionTypeReport;
+import vn.com.personalfinance.services.datasource.IdSequence;
 
 @DClass(schema="personalfinancemanager")
 public class BorrowAndLend {
@@ -38,7 +41,7 @@ public class BorrowAndLend {
 		private int id;
 		
 //		static variable to keep track of account id
-		private static int idCounter = 0;
+		private static final IdSequence ids = IdSequence.of(BorrowAndLend.class);
 		
 		@DAttr (name = T_account, type = Type.Domain, length = 20, optional = false, cid = true)
 		@DAssoc (ascName = "account-has-borrowAndLend", role = "borrowAndLend", ascType = AssocType.One2Many, endType = AssocEndType.Many,
@@ -98,7 +101,7 @@ public class BorrowAndLend {
 			this.name = name;
 			this.subject = subject;
 			this.actionType = actionType;
-			this.money = money;
+			this.money = Money.round(money);
 			this.startDate = startDate;
 			this.period = period;
 			this.interestedRate = interestedRate;
@@ -183,6 +186,7 @@ public class BorrowAndLend {
 		
 		public void setActionType(ActionType actionType) {
 			this.actionType = actionType;
+			DebtLedger.getInstance().update(this);
 		}
 		
 		public void setMoney(double money) {
@@ -190,7 +194,7 @@ public class BorrowAndLend {
 		}
 		
 		public void setMoney(double money, boolean computeFinalMoney) {
-			this.money = money;
+			this.money = Money.round(money);
 			if (computeFinalMoney)
 				computeFinalMoney();
 		}
@@ -250,15 +254,12 @@ public class BorrowAndLend {
 
 		private static int nextId (Integer currId) {
 			if (currId == null) {
-				idCounter++;
-				return idCounter;
+				return ids.next();
 			} else {
 				int num;
 				num = currId.intValue();
 				
-				if (num > idCounter) {
-					idCounter = num;
-				}
+				ids.advanceTo(num);
 				return currId;
 			}
 		}
@@ -267,9 +268,49 @@ public class BorrowAndLend {
 		@DOpt(type=DOpt.Type.DerivedAttributeUpdater)
 		@AttrRef(value=T_finalMoney)
 		public void computeFinalMoney() {
-			stateHist.put(T_finalMoney, finalMoney);
+			accrue(computeFinalMoney(money, interestedRate, period));
+			DebtLedger.getInstance().update(this);
+		}
+		
+		/**
+		 * @effects 
+		 *  return the final money of <tt>money</tt> borrowed or lent at <tt>interestedRate</tt>
+		 *  over <tt>period</tt> (<tt>money</tt> if <tt>period = 0</tt>), rounded to the nearest 
+		 *  minor unit
+		 */
+		public static double computeFinalMoney(double money, double interestedRate, int period) {
+			if (period == 0)
+				// no period: no interest
+				return Money.round(money);
+			
+			return Money.round(money + (money * (interestedRate / 100 / (double)period)));
+		}
+		
+		/**
+		 * @effects 
+		 *  return the SQL expression of {@link #computeFinalMoney(double, double, int)} over the 
+		 *  columns <tt>money, interestedRate, period</tt>, so that the data source computes the 
+		 *  same final money as this class
+		 */
+		public static String computeFinalMoneySql(String money, String interestedRate, String period) {
+			String finalMoney = "case when " + period + " = 0 then " + money + " else " + money + " + " + money
+					+ " * " + interestedRate + " / 100 / " + period + " end";
+			// Money.round: floor(x * MINOR_UNITS + 0.5) / MINOR_UNITS, as Math.round
+			return "floor((" + finalMoney + ") * " + Money.MINOR_UNITS + " + 0.5) / " + Money.MINOR_UNITS;
+		}
+		
+		/**
+		 * @requires 
+		 *  finalMoney = computeFinalMoney(money, interestedRate, period)
+		 * @modifies this
+		 * @effects 
+		 *  set this.finalMoney = finalMoney, keeping the previous value in the state history 
+		 *  (as by {@link #computeFinalMoney()})
+		 */
+		public void accrue(double finalMoney) {
+			stateHist.put(T_finalMoney, this.finalMoney);
 			
-			finalMoney = money + (money * (interestedRate / 100 / (double)period));
+			this.finalMoney = finalMoney;
 		}
 
 		@DOpt(type = DOpt.Type.AutoAttributeValueSynchroniser)
@@ -279,8 +320,7 @@ public class BorrowAndLend {
 				// check the right attribute
 				if (attrib.name().equals("id")) {
 					int maxIdVal = (Integer) maxVal;
-					if (maxIdVal > idCounter)
-						idCounter = maxIdVal;
+					ids.advanceTo(maxIdVal);
 				}
 			}
 		}
@@ -1,6 +1,5 @@
 package vn.com.personalfinance.services.borrowandlend.model;
 
-import java.util.ArrayList;
 import java.util.Collection;
 
 import domainapp.basics.exceptions.ConstraintViolationException;
@@ -17,6 +16,12 @@ import domainapp.basics.model.meta.DAssoc.Associate;
 import domainapp.basics.model.meta.DAttr.Type;
 import domainapp.basics.util.Tuple;
 
+import vn.com.personalfinance.services.borrowandlend.ledger.DebtLedger;
+import vn.com.personalfinance.services.borrowandlend.report.SubjectsByDebtReport;
+import vn.com.personalfinance.services.datasource.Indexed;
+import vn.com.personalfinance.services.datasource.IdSequence;
+import vn.com.personalfinance.services.model.LinkCollection;
+
 @DClass(schema="personalfinancemanager")
 public class Subjects {
 //	attributes
@@ -24,9 +29,10 @@ public class Subjects {
 	private int id; 
 	
 //	static variable to keep track of account id
-	private static int idCounter;
+	private static final IdSequence ids = IdSequence.of(Subjects.class);
 	
 	@DAttr(name = "name", type = Type.String, length = 20, optional = false, cid = true) 
+	@Indexed
 	private String name;
 	
 	@DAttr(name = "borrowAndLend", type = Type.Collection, optional = false, serialisable = false, filter = @Select(clazz = BorrowAndLend.class))
@@ -34,6 +40,9 @@ public class Subjects {
 			associate = @Associate(type = BorrowAndLend.class, cardMin = 0, cardMax = MetaConstants.CARD_MORE ))
 	private Collection<BorrowAndLend> borrowAndLend;
 	private int borrowAndLendCount;
+	
+	@DAttr(name = "rptSubjectsByDebt", type = Type.Domain, serialisable = false, virtual = true)
+	private SubjectsByDebtReport rptSubjectsByDebt;
 	 
 	 
 	// from object form: Account is not included 
@@ -49,7 +58,7 @@ public class Subjects {
 		this.id = nextId(id);
 		this.name = name;
 		
-		borrowAndLend = new ArrayList<>();
+		borrowAndLend = new LinkCollection<>();
 		borrowAndLendCount = 0;
 	}
 	
@@ -70,12 +79,17 @@ public class Subjects {
 		return name;
 	}
 	
+	public SubjectsByDebtReport getRptSubjectsByDebt() {
+		return rptSubjectsByDebt;
+	}
+	
 //	add existed object into collection
 	@DOpt (type = DOpt.Type.LinkAdder)
 	public boolean addBorrowAndLend(BorrowAndLend a) {
 		if (!this.borrowAndLend.contains(a)) {
 			borrowAndLend.add(a);
 		}
+		DebtLedger.getInstance().linkSubject(this, a);
 		// no other attributes changed
 		return false;
 	}
@@ -83,8 +97,11 @@ public class Subjects {
 //	add new object into collection
 	@DOpt (type = DOpt.Type.LinkAdderNew)
 	public boolean addNewborrowAndLend(BorrowAndLend a) {
-		borrowAndLend.add(a);
-		borrowAndLendCount++;
+		// a borrowing or lending that is already linked is not counted again
+		if (borrowAndLend.add(a)) {
+			borrowAndLendCount++;
+			DebtLedger.getInstance().linkSubject(this, a);
+		}
 		return false;
 	}
 	
@@ -94,14 +111,20 @@ public class Subjects {
 			if (!this.borrowAndLend.contains(a)) {
 				this.borrowAndLend.add(a);
 			}
+			DebtLedger.getInstance().linkSubject(this, a);
 		}
 		return false;
 	}
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewBorrowAndLend(Collection<BorrowAndLend> actions) {
-		this.borrowAndLend.addAll(actions);
-		borrowAndLendCount += actions.size();
+		// those that are already linked (by id) are not counted again
+		for (BorrowAndLend a : actions) {
+			if (this.borrowAndLend.add(a)) {
+				borrowAndLendCount++;
+				DebtLedger.getInstance().linkSubject(this, a);
+			}
+		}
 		// no other attributes changed
 		return false;
 	}
@@ -113,6 +136,7 @@ public class Subjects {
 
 		if (removed) {
 			borrowAndLendCount--;
+			DebtLedger.getInstance().unlinkSubject(a);
 		}
 		// no other attributes changed
 		return false;
@@ -120,7 +144,7 @@ public class Subjects {
 	
 	@DOpt(type=DOpt.Type.Setter)
 	public void setBorrowAndLend(Collection<BorrowAndLend> actions) {
-		this.borrowAndLend = actions;
+		this.borrowAndLend = LinkCollection.of(actions);
 		borrowAndLendCount = actions.size();
 	}
 	
@@ -144,12 +168,10 @@ public class Subjects {
 
 	private static int nextId(Integer currID) {
 		if (currID == null) {
-			idCounter++;
-			return idCounter;
+			return ids.next();
 		} else {
 			int num = currID.intValue();
-			if (num > idCounter)
-				idCounter = num;
+			ids.advanceTo(num);
 			return currID;
 		}
 	}
@@ -193,8 +215,7 @@ public class Subjects {
 
 		if (minVal != null && maxVal != null) {
 			int maxIdVal = (Integer) maxVal;
-			if (maxIdVal > idCounter)
-				idCounter = maxIdVal;
+			ids.advanceTo(maxIdVal);
 		}
 	}	
 }
@@ -3,7 +3,6 @@ package vn.com.personalfinance.services.borrowandlend.report;
 import java.util.Collection; 
 import java.util.Map;
 
-import domainapp.basics.core.dodm.dsm.DSMBasic;
 import domainapp.basics.core.dodm.qrm.QRM;
 import domainapp.basics.exceptions.DataSourceException;
 import domainapp.basics.exceptions.NotPossibleException;
@@ -23,8 +22,13 @@ import domainapp.basics.model.query.Query;
 import domainapp.basics.model.query.QueryToolKit;
 import domainapp.basics.model.query.Expression.Op;
 import domainapp.basics.modules.report.model.meta.Output;
+import vn.com.personalfinance.services.account.Money;
 import vn.com.personalfinance.services.borrowandlend.model.ActionType;
 import vn.com.personalfinance.services.borrowandlend.model.BorrowAndLend;
+import vn.com.personalfinance.services.report.AggregateQuery;
+import vn.com.personalfinance.services.report.NameMatchScope;
+import vn.com.personalfinance.services.report.ReportCache;
+import vn.com.personalfinance.services.report.ReportCursor;
 
 @DClass(schema="personalfinancemanager",serialisable=false)
 public class BorrowAndLendByActionTypeReport {
@@ -61,6 +65,7 @@ public class BorrowAndLendByActionTypeReport {
 	cardMax = MetaConstants.CARD_MORE))
 	@Output
 	private Collection<BorrowAndLend> borrowAndLend;
+	private boolean borrowAndLendLoaded;
 
 //	private double totalAddedMoney;
 	
@@ -143,60 +148,71 @@ public class BorrowAndLendByActionTypeReport {
 	@DOpt(type = DOpt.Type.DerivedAttributeUpdater)
 	@AttrRef(value = "borrowAndLend")
 	public void doReportQuery() throws NotPossibleException, DataSourceException {
-		// the query manager instance
+		// the totals are summed in minor units, so that they do not drift
+		long tempTotalCollectedDebts = 0;
+		long tempTotalBorrowedMoney = 0;
+		long tempTotalRepayedMoney = 0;
+		long tempTotalLendedMoney = 0;
+		int tempNumBorrowAndLend = 0;
 
-		QRM qrm = QRM.getInstance();
+		if (AggregateQuery.isSupported()) {
+			// the numbers and totals of each action type are computed by the data source
+			AggregateQuery q = new AggregateQuery(BorrowAndLend.class)
+					.match(BorrowAndLend.T_actionType, ActionType.class, ActionType.A_name, actionType)
+					.groupBy("type", BorrowAndLend.T_actionType)
+					.count("cnt");
+			// finalMoney is not stored: see BorrowAndLend.computeFinalMoney()
+			q.sum("total", BorrowAndLend.computeFinalMoneySql(q.column(BorrowAndLend.T_money),
+					q.column(BorrowAndLend.T_interestedRate), q.column(BorrowAndLend.T_period)));
 
-		DSMBasic dsm = qrm.getDsm();
-
-		// TODO: to conserve memory cache the query and only change the query parameter
-		// value(s)
-		Query q = QueryToolKit.createSimpleJoinQuery(dsm, BorrowAndLend.class, ActionType.class,
-				BorrowAndLend.T_actionType, 
-				ActionType.A_name, 
-		        Op.MATCH, 
-		        "%"+actionType+"%");
-
-		Map<Oid, BorrowAndLend> result = qrm.getDom().retrieveObjects(BorrowAndLend.class, q);
-		
-		if (result != null) {
-			borrowAndLend = result.values();
-			numBorrowAndLend = borrowAndLend.size();
-			
-			double tempTotalCollectedDebts = 0.0;
-			double tempTotalBorrowedMoney = 0.0;
-			double tempTotalRepayedMoney = 0.0;
-			double tempTotalLendedMoney = 0.0;
-			for (BorrowAndLend a : borrowAndLend) {
-				if (a.getActionType().getId() == 1) {
-					tempTotalCollectedDebts += a.getFinalMoney();
-				}
-				else if (a.getActionType().getId() == 2) {
-					tempTotalBorrowedMoney += a.getFinalMoney();
-				}
-				else if (a.getActionType().getId() == 3) {
-					tempTotalRepayedMoney += a.getFinalMoney();
-				}
-				else if (a.getActionType().getId() == 4) {
-					tempTotalLendedMoney += a.getFinalMoney();
+			for (AggregateQuery.Row r : q.execute()) {
+				tempNumBorrowAndLend += r.getInt("cnt");
+				switch (r.getInt("type")) {
+				case 1:
+					tempTotalCollectedDebts += r.getMinor("total");
+					break;
+				case 2:
+					tempTotalBorrowedMoney += r.getMinor("total");
+					break;
+				case 3:
+					tempTotalRepayedMoney += r.getMinor("total");
+					break;
+				case 4:
+					tempTotalLendedMoney += r.getMinor("total");
+					break;
 				}
 			}
-			totalCollectedDebts = tempTotalCollectedDebts;
-			totalBorrowedMoney = tempTotalBorrowedMoney;
-			totalRepayedMoney = tempTotalRepayedMoney;
-			totalLendedMoney = tempTotalLendedMoney;
+
+			// the borrow and lend are only retrieved when they are viewed
+			borrowAndLend = null;
+			borrowAndLendLoaded = (tempNumBorrowAndLend == 0);
 		} else {
-			// no data found: reset output
-			resetOutput();
+			borrowAndLendLoaded = false;
+			Collection<BorrowAndLend> result = getBorrowAndLend();
+			if (result != null) {
+				tempNumBorrowAndLend = result.size();
+				for (BorrowAndLend a : result) {
+					if (a.getActionType().getId() == 1) {
+						tempTotalCollectedDebts += Money.toMinor(a.getFinalMoney());
+					}
+					else if (a.getActionType().getId() == 2) {
+						tempTotalBorrowedMoney += Money.toMinor(a.getFinalMoney());
+					}
+					else if (a.getActionType().getId() == 3) {
+						tempTotalRepayedMoney += Money.toMinor(a.getFinalMoney());
+					}
+					else if (a.getActionType().getId() == 4) {
+						tempTotalLendedMoney += Money.toMinor(a.getFinalMoney());
+					}
+				}
+			}
 		}
-	}
 
-	/**
-	 * @effects reset all output attributes to their initial values
-	 */
-	private void resetOutput() {
-		borrowAndLend = null;
-		numBorrowAndLend = 0;
+		numBorrowAndLend = tempNumBorrowAndLend;
+		totalCollectedDebts = Money.toMajor(tempTotalCollectedDebts);
+		totalBorrowedMoney = Money.toMajor(tempTotalBorrowedMoney);
+		totalRepayedMoney = Money.toMajor(tempTotalRepayedMoney);
+		totalLendedMoney = Money.toMajor(tempTotalLendedMoney);
 	}
 
 	/**
@@ -211,9 +227,40 @@ public class BorrowAndLendByActionTypeReport {
 	}
 
 	/**
-	 * @effects return dailyExpense
+	 * @effects return borrowAndLend, retrieving them from the data source the first
+	 * time that they are viewed
 	 */
-	public Collection<BorrowAndLend> getBorrowAndLend() {
+	public Collection<BorrowAndLend> getBorrowAndLend() throws NotPossibleException, DataSourceException {
+		if (!borrowAndLendLoaded && numBorrowAndLend > ReportCursor.DEFAULT_PAGE_SIZE && AggregateQuery.isSupported()) {
+			// too many to be held: they are read a page at a time while they are viewed
+			borrowAndLend = new ReportCursor<>(BorrowAndLend.class, new AggregateQuery(BorrowAndLend.class)
+					.match(BorrowAndLend.T_actionType, ActionType.class, ActionType.A_name, actionType),
+					numBorrowAndLend);
+			borrowAndLendLoaded = true;
+		}
+
+		if (!borrowAndLendLoaded) {
+			// the cached result of the same action type, if any
+			ReportCache cache = ReportCache.getInstance();
+			ReportCache.Key<BorrowAndLend> key = new ReportCache.Key<>(BorrowAndLendByActionTypeReport.class, BorrowAndLend.class,
+					actionType);
+			Map<Oid, BorrowAndLend> result = cache.get(key);
+
+			if (result == null) {
+				QRM qrm = QRM.getInstance();
+				Query q = QueryToolKit.createSimpleJoinQuery(qrm.getDsm(), BorrowAndLend.class, ActionType.class,
+						BorrowAndLend.T_actionType, 
+						ActionType.A_name, 
+				        Op.MATCH, 
+				        "%"+actionType+"%");
+
+				result = cache.put(key, qrm.getDom().retrieveObjects(BorrowAndLend.class, q),
+						new NameMatchScope(BorrowAndLend.T_actionType, ActionType.class, ActionType.A_name, actionType));
+			}
+
+			borrowAndLend = result.values();
+			borrowAndLendLoaded = true;
+		}
 		return borrowAndLend;
 	}
 
@@ -0,0 +1,241 @@
+package vn.com.personalfinance.services.borrowandlend.report;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.meta.AttrRef;
+import domainapp.basics.model.meta.DAssoc;
+import domainapp.basics.model.meta.DAssoc.AssocEndType;
+import domainapp.basics.model.meta.DAssoc.AssocType;
+import domainapp.basics.model.meta.DAssoc.Associate;
+import domainapp.basics.model.meta.DAttr;
+import domainapp.basics.model.meta.DAttr.Type;
+import domainapp.basics.model.meta.DClass;
+import domainapp.basics.model.meta.DOpt;
+import domainapp.basics.model.meta.MetaConstants;
+import domainapp.basics.model.meta.Select;
+import domainapp.basics.modules.report.model.meta.Output;
+import vn.com.personalfinance.services.borrowandlend.ledger.DebtBalance;
+import vn.com.personalfinance.services.borrowandlend.ledger.DebtLedger;
+import vn.com.personalfinance.services.borrowandlend.model.Subjects;
+
+/**
+ * @overview
+ * 	Lists the subjects that owe the user the most (the debtors) and those that the user
+ * 	owes the most (the creditors), by net outstanding principal, as kept by the
+ * 	{@link DebtLedger}.
+ *
+ * 	<p>The subjects are listed in the order of their balances, which are read by
+ * 	{@link #getDebtorBalances()} and {@link #getCreditorBalances()}. The debts of the
+ * 	listed subjects (their principals, as owed to the user) are also output, one line
+ * 	per subject in the same order, by {@link #getDebtorDebts()} and
+ * 	{@link #getCreditorDebts()}.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+@DClass(schema="personalfinancemanager",serialisable=false)
+public class SubjectsByDebtReport {
+	public static final int DEFAULT_TOP = 10;
+
+	@DAttr(name = "id", id = true, auto = true, type = Type.Integer, length = 5, optional = false, mutable = false)
+	private int id;
+	private static int idCounter = 0;
+
+	/** input: the number of debtors and creditors listed */
+	@DAttr(name = "top", type = Type.Integer, length = 5, optional = false, min = 1)
+	private int top;
+
+	/** output: the debtors, the largest first */
+	@DAttr(name = "debtors", type = Type.Collection, optional = false, mutable = false,
+			serialisable = false, filter = @Select(clazz = Subjects.class), derivedFrom = {"top"})
+	@DAssoc(ascName = "subjects-by-debt-report-has-debtors", role = "report", ascType = AssocType.One2Many, endType = AssocEndType.One,
+	associate = @Associate(type = Subjects.class, cardMin = 0,
+	cardMax = MetaConstants.CARD_MORE))
+	@Output
+	private Collection<Subjects> debtors;
+
+	/** output: the creditors, the largest first */
+	@DAttr(name = "creditors", type = Type.Collection, optional = false, mutable = false,
+			serialisable = false, filter = @Select(clazz = Subjects.class), derivedFrom = {"top"})
+	@DAssoc(ascName = "subjects-by-debt-report-has-creditors", role = "report", ascType = AssocType.One2Many, endType = AssocEndType.One,
+	associate = @Associate(type = Subjects.class, cardMin = 0,
+	cardMax = MetaConstants.CARD_MORE))
+	@Output
+	private Collection<Subjects> creditors;
+
+	/** output: the debts of the debtors, one line per debtor */
+	@DAttr(name = "debtorDebts", type = Type.String, length = 1000, auto = true, mutable = false)
+	@Output
+	private String debtorDebts;
+
+	/** output: the debts of the creditors, one line per creditor */
+	@DAttr(name = "creditorDebts", type = Type.String, length = 1000, auto = true, mutable = false)
+	@Output
+	private String creditorDebts;
+
+	private List<DebtBalance> debtorBalances;
+	private List<DebtBalance> creditorBalances;
+
+	/**
+	 * @effects
+	 * 	initialise this with <tt>top</tt> and read the <tt>top</tt> largest debtors and
+	 * 	creditors from the {@link DebtLedger}.
+	 *
+	 * 	<p>throws NotPossibleException if <tt>top &lt; 1</tt>
+	 */
+	@DOpt(type=DOpt.Type.ObjectFormConstructor)
+	@DOpt(type=DOpt.Type.RequiredConstructor)
+	public SubjectsByDebtReport(@AttrRef("top") Integer top) throws NotPossibleException {
+		this.id = ++idCounter;
+
+		this.top = (top != null) ? top : DEFAULT_TOP;
+
+		doReportQuery();
+	}
+
+	public int getTop() {
+		return top;
+	}
+
+	/**
+	 * @effects
+	 * 	set this.top = top and update the output attributes.
+	 *
+	 * 	<p>throws NotPossibleException if <tt>top &lt; 1</tt>
+	 */
+	public void setTop(int top) throws NotPossibleException {
+		this.top = top;
+
+		doReportQuery();
+	}
+
+	/**
+	 * @effects
+	 * 	read the <tt>top</tt> largest debtors and creditors from the {@link DebtLedger}
+	 * 	and update the output attributes.
+	 *
+	 * 	<p>throws NotPossibleException if <tt>top &lt; 1</tt>
+	 */
+	@DOpt(type = DOpt.Type.DerivedAttributeUpdater)
+	@AttrRef(value = "debtors")
+	public void doReportQuery() throws NotPossibleException {
+		if (top < 1) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "top", top });
+		}
+
+		DebtLedger ledger = DebtLedger.getInstance();
+		debtorBalances = ledger.getTopDebtors(top);
+		creditorBalances = ledger.getTopCreditors(top);
+
+		debtors = subjects(debtorBalances);
+		creditors = subjects(creditorBalances);
+		debtorDebts = debts(debtorBalances);
+		creditorDebts = debts(creditorBalances);
+	}
+
+	/**
+	 * @effects
+	 * 	return the subjects of <tt>balances</tt> (those that are known), in the same order
+	 */
+	private static Collection<Subjects> subjects(List<DebtBalance> balances) {
+		Collection<Subjects> result = new ArrayList<>(balances.size());
+		for (DebtBalance b : balances) {
+			if (b.getOwner() instanceof Subjects)
+				result.add((Subjects) b.getOwner());
+		}
+		return result;
+	}
+
+	/**
+	 * @effects
+	 * 	return the lines <tt>name: principal</tt> of <tt>balances</tt>, in the same order
+	 * 	(the id of the subject if it is not known)
+	 */
+	private static String debts(List<DebtBalance> balances) {
+		StringBuilder sb = new StringBuilder();
+		for (DebtBalance b : balances) {
+			if (sb.length() > 0)
+				sb.append('\n');
+			Object owner = b.getOwner();
+			sb.append((owner instanceof Subjects) ? ((Subjects) owner).getName() : "#" + b.getOwnerId())
+					.append(": ").append(String.format("%.2f", b.getPrincipal()));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A link-adder method for {@link #debtors}, required for the object form to
+	 * function. However, this method is empty because the debtors have already been
+	 * recorded in the attribute {@link #debtors}.
+	 */
+	@DOpt(type = DOpt.Type.LinkAdder)
+	public boolean addDebtors(Collection<Subjects> debtors) {
+		// do nothing
+		return false;
+	}
+
+	/**
+	 * A link-adder method for {@link #creditors}, as {@link #addDebtors(Collection)}.
+	 */
+	@DOpt(type = DOpt.Type.LinkAdder)
+	public boolean addCreditors(Collection<Subjects> creditors) {
+		// do nothing
+		return false;
+	}
+
+	/**
+	 * @effects return debtors
+	 */
+	public Collection<Subjects> getDebtors() {
+		return debtors;
+	}
+
+	/**
+	 * @effects return creditors
+	 */
+	public Collection<Subjects> getCreditors() {
+		return creditors;
+	}
+
+	/**
+	 * @effects return debtorDebts
+	 */
+	public String getDebtorDebts() {
+		return debtorDebts;
+	}
+
+	/**
+	 * @effects return creditorDebts
+	 */
+	public String getCreditorDebts() {
+		return creditorDebts;
+	}
+
+	/**
+	 * @effects
+	 * 	return the balances of the debtors, the largest first
+	 */
+	public List<DebtBalance> getDebtorBalances() {
+		return debtorBalances;
+	}
+
+	/**
+	 * @effects
+	 * 	return the balances of the creditors, the largest first
+	 */
+	public List<DebtBalance> getCreditorBalances() {
+		return creditorBalances;
+	}
+
+	/**
+	 * @effects return id
+	 */
+	public int getId() {
+		return id;
+	}
+}
@@ -0,0 +1,399 @@
+package vn.com.personalfinance.services.datasource;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.meta.DAttr;
+import vn.com.personalfinance.services.model.Accessors;
+
+/**
+ * @overview
+ * 	A batch write mode of the (relational) data source, for bulk operations such as
+ * 	imports, seeding and migrations.
+ *
+ * 	<p>The rows of the objects added to this are held back and inserted as JDBC
+ * 	batches, one per domain class and column set, inside one transaction on a
+ * 	connection of this writer (see {@link DataSources#open(DOMBasic)}). Once the
+ * 	transaction is committed, the objects of its rows are added to the object pool
+ * 	(which reports them as new, as {@link DOMBasic#addObject(Object)} does), so that
+ * 	the listeners of the new objects only see objects whose rows are stored.
+ *
+ * 	<p>The pending rows are flushed when {@link #getBatchSize()} of them are held, when
+ * 	the oldest of them has been held for {@link #getFlushInterval()} milliseconds (by a
+ * 	timer, unless the interval is <tt>Long.MAX_VALUE</tt>), by {@link #flush()} and by
+ * 	{@link #close()}. A writer must be closed: its connection is closed by
+ * 	{@link #close()}, and objects cannot be added to it after that. A failed timed
+ * 	flush is thrown by the next call to {@link #add(Object)}, {@link #flush()} or
+ * 	{@link #close()}.
+ *
+ * 	<p>The row of an object has a column per non-null serialisable attribute (the id of
+ * 	the linked object, for an associative attribute), so the rows are the same as if the
+ * 	objects were added one at a time. Objects of a domain sub-class (whose rows span
+ * 	more than one table), and all objects when the data source is not relational, are
+ * 	added one at a time.
+ *
+ * 	<p>Rows that are pending are not visible to data source queries, and their objects
+ * 	are not in the object pool. If a flush fails, its transaction is rolled back and
+ * 	its rows are dropped; the pending rows can be dropped in the same way by
+ * 	{@link #discard()}.
+ *
+ * @example
+ * <pre>
+ * 	try (BatchWriter w = new BatchWriter()) {
+ * 		for (DailyExpense d : expenses)
+ * 			w.add(d);
+ * 	}
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class BatchWriter implements AutoCloseable {
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	private static final Logger logger = Logger.getLogger(BatchWriter.class.getName());
+
+	// the timer of the timed flushes of all writers
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "batch-writer-flush");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private int batchSize;
+	private long flushInterval;
+
+	private DOMBasic dom;
+	private DSMBasic dsm;
+	private RelationalOSMBasic osm;
+
+	// the connection of this writer, opened by the first flush
+	private Connection conn;
+
+	// the pending rows, by insert statement (in the order the statements are first used)
+	private Map<String, List<Row>> pending;
+	private int numPending;
+
+	// the timed flush of the pending rows, and its failure (to be thrown), if any
+	private ScheduledFuture<?> timedFlush;
+	private DataSourceException timedFailure;
+
+	private boolean closed;
+
+	private long rowsWritten;
+	private int batchesWritten;
+
+	public BatchWriter(int batchSize, long flushInterval) throws NotPossibleException {
+		if (batchSize < 1) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "batchSize", batchSize });
+		}
+		if (flushInterval < 1) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "flushInterval", flushInterval });
+		}
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+
+		dom = QRM.getInstance().getDom();
+		dsm = dom.getDsm();
+		if (dom.getOsm() instanceof RelationalOSMBasic)
+			osm = (RelationalOSMBasic) dom.getOsm();
+
+		pending = new LinkedHashMap<>();
+	}
+
+	public BatchWriter() throws NotPossibleException {
+		this(DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @effects
+	 * 	return the maximum time (in milliseconds) that a row is held before it is flushed
+	 */
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of rows inserted as batches so far
+	 */
+	public synchronized long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of batches executed so far
+	 */
+	public synchronized int getBatchesWritten() {
+		return batchesWritten;
+	}
+
+	/**
+	 * @effects
+	 * 	queue the row of <tt>o</tt> to be inserted (and <tt>o</tt> to be added to the
+	 * 	object pool once it is); flush the pending rows if {@link #getBatchSize()} of
+	 * 	them are held.
+	 *
+	 * 	<p>throws NotPossibleException if this is closed; DataSourceException if fails to
+	 * 	write to the data source (now or in a timed flush)
+	 */
+	public synchronized void add(Object o) throws NotPossibleException, DataSourceException {
+		if (closed) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM,
+					new Object[] { "BatchWriter", "add after close" });
+		}
+		throwTimedFailure();
+
+		Class<?> c = o.getClass();
+		if (osm == null || dsm.getSuperClass(c) != null) {
+			dom.addObject(o);
+			return;
+		}
+
+		Row row = new Row(o);
+		String sql = row.insert();
+		List<Row> rows = pending.get(sql);
+		if (rows == null) {
+			rows = new ArrayList<>();
+			pending.put(sql, rows);
+		}
+		rows.add(row);
+
+		if (numPending++ == 0 && flushInterval != Long.MAX_VALUE)
+			timedFlush = timer.schedule(this::flushTimed, flushInterval, TimeUnit.MILLISECONDS);
+
+		if (numPending >= batchSize)
+			flush();
+	}
+
+	/**
+	 * @effects
+	 * 	insert the pending rows as JDBC batches in one transaction and, once it is
+	 * 	committed, add their objects to the object pool.
+	 *
+	 * 	<p>throws DataSourceException if fails to write to the data source (now or in a
+	 * 	timed flush), in which case the transaction is rolled back and the rows are
+	 * 	dropped; or if fails to add an object (whose row is stored) to the object pool
+	 */
+	public synchronized void flush() throws DataSourceException {
+		throwTimedFailure();
+		write();
+	}
+
+	/**
+	 * @effects
+	 * 	drop the pending rows (whose objects are not in the object pool)
+	 */
+	public synchronized void discard() {
+		cancelTimedFlush();
+		pending = new LinkedHashMap<>();
+		numPending = 0;
+	}
+
+	/**
+	 * @effects
+	 * 	flush the pending rows and close the connection of this
+	 *
+	 * 	<p>throws DataSourceException if fails to write to the data source (now or in a
+	 * 	timed flush), or to close the connection
+	 */
+	@Override
+	public synchronized void close() throws DataSourceException {
+		if (closed)
+			return;
+
+		closed = true;
+		try {
+			flush();
+		} finally {
+			discard();
+			if (conn != null) {
+				try {
+					conn.close();
+				} catch (SQLException e) {
+					throw new DataSourceException(DataSourceException.Code.FAIL_TO_CONNECT, e,
+							new Object[] { "BatchWriter" });
+				} finally {
+					conn = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	flush the pending rows as a timed flush, keeping its failure to be thrown by the
+	 * 	next call to this
+	 */
+	private synchronized void flushTimed() {
+		timedFlush = null;
+		if (closed || timedFailure != null)
+			return;
+
+		try {
+			write();
+		} catch (DataSourceException | RuntimeException e) {
+			logger.log(Level.WARNING, "Failed to flush the pending rows", e);
+			timedFailure = (e instanceof DataSourceException) ? (DataSourceException) e
+					: new DataSourceException(DataSourceException.Code.FAIL_TO_INSERT_OBJECT, e,
+							new Object[] { "batch", "" });
+		}
+	}
+
+	private void throwTimedFailure() throws DataSourceException {
+		if (timedFailure != null) {
+			DataSourceException e = timedFailure;
+			timedFailure = null;
+			throw e;
+		}
+	}
+
+	private void cancelTimedFlush() {
+		if (timedFlush != null) {
+			timedFlush.cancel(false);
+			timedFlush = null;
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	write the pending rows, as {@link #flush()} does
+	 */
+	private void write() throws DataSourceException {
+		cancelTimedFlush();
+		if (numPending == 0)
+			return;
+
+		Map<String, List<Row>> rows = pending;
+		int count = numPending;
+		pending = new LinkedHashMap<>();
+		numPending = 0;
+
+		String sql = null;
+		try {
+			if (conn == null) {
+				conn = DataSources.open(dom);
+				conn.setAutoCommit(false);
+			}
+
+			try {
+				for (Map.Entry<String, List<Row>> e : rows.entrySet()) {
+					sql = e.getKey();
+					try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+						for (Row r : e.getValue()) {
+							r.bind(stmt);
+							stmt.addBatch();
+						}
+						stmt.executeBatch();
+					}
+					batchesWritten++;
+				}
+				conn.commit();
+				rowsWritten += count;
+			} catch (SQLException | RuntimeException e) {
+				conn.rollback();
+				throw e;
+			}
+		} catch (SQLException | RuntimeException e) {
+			throw new DataSourceException(DataSourceException.Code.FAIL_TO_INSERT_OBJECT,
+					e, new Object[] { "batch", sql });
+		}
+
+		// committed: the objects are added (and reported as new) after their rows are stored
+		DataSourceException failure = null;
+		for (List<Row> l : rows.values()) {
+			for (Row r : l) {
+				try {
+					dom.addObject(r.o, false);
+				} catch (DataSourceException e) {
+					if (failure == null)
+						failure = e;
+				}
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * @overview
+	 * 	A pending row: an object and the values of its columns, which are those of its
+	 * 	non-null serialisable attributes (in the order of the parameters of its insert
+	 * 	statement).
+	 */
+	private class Row {
+		private Object o;
+		private List<String> columns;
+		private List<Object> values;
+
+		Row(Object o) throws NotPossibleException {
+			this.o = o;
+			columns = new ArrayList<>();
+			values = new ArrayList<>();
+
+			Class<?> c = o.getClass();
+			Accessors acc = Accessors.of(c);
+			for (Map.Entry<Field, DAttr> e : dsm.getSerialisableAttributes(c).entrySet()) {
+				DAttr attr = e.getValue();
+				Object v = acc.get(o, e.getKey());
+				if (v == null || v instanceof Collection)
+					continue;
+
+				if (attr.type().isDomainType())
+					v = dsm.getIDAttributeValue(v);
+				else if (v instanceof Date)
+					v = new java.sql.Date(((Date) v).getTime());
+
+				columns.add(osm.toDBColumnName(c, attr, false));
+				values.add(v);
+			}
+		}
+
+		/**
+		 * @effects
+		 * 	return the parameterised insert statement of this
+		 */
+		String insert() {
+			StringBuilder sb = new StringBuilder("insert into ");
+			sb.append(dsm.getDomainClassName(o.getClass())).append(" (");
+			sb.append(String.join(", ", columns)).append(") values (");
+			for (int i = 0; i < columns.size(); i++)
+				sb.append((i > 0) ? ", ?" : "?");
+			return sb.append(')').toString();
+		}
+
+		void bind(PreparedStatement stmt) throws SQLException {
+			for (int i = 0; i < values.size(); i++)
+				stmt.setObject(i + 1, values.get(i));
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package vn.com.personalfinance.services.datasource;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.Oid;
+import domainapp.basics.model.config.dodm.DODMConfig;
+
+/**
+ * @overview
+ * 	The object pool of the software when it is bounded: a {@link DOMBasic} whose class
+ * 	extents are those of the installed {@link BoundedObjectPool}, if any.
+ *
+ * 	<p>The look-ups of the objects by their ids are recorded as uses of the objects in
+ * 	the bounded pool (which {@link DOMBasic} does by scanning the class extent).
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class BoundedDOM extends DOMBasic {
+	public BoundedDOM(DODMConfig config, DSMBasic dsm) {
+		super(config, dsm);
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	register <tt>c</tt> as {@link DOMBasic} does and, if a {@link BoundedObjectPool}
+	 * 	is installed, make its class extent one of the bounded pool
+	 */
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void registerClass(Class c) throws NotPossibleException {
+		boolean registered = isRegistered(c);
+		super.registerClass(c);
+
+		BoundedObjectPool pool = BoundedObjectPool.getInstance();
+		if (!registered && pool != null)
+			classExts.put(c, pool.newExtent(c));
+	}
+
+	@Override
+	public <T> T lookUpObject(Class<T> c, Oid id) {
+		T o = super.lookUpObject(c, id);
+		BoundedObjectPool pool = BoundedObjectPool.getInstance();
+		if (o != null && pool != null)
+			pool.used(classExts.get(o.getClass()), id);
+		return o;
+	}
+}
@@ -0,0 +1,467 @@
+package vn.com.personalfinance.services.datasource;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import domainapp.basics.db.IdObjectMap;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.exceptions.signal.ObsoleteStateSignal;
+import domainapp.basics.model.Oid;
+
+/**
+ * @overview
+ * 	Bounds the number of domain objects that the object pool holds, so that a session
+ * 	that is left open does not keep every object it has ever loaded.
+ *
+ * 	<p>The pool is installed before the software is set up (see {@link #install(int,
+ * 	Class...)}), and the object pool of the software is then a {@link BoundedDOM}, whose
+ * 	class extents are those of this pool.
+ *
+ * 	<p>When more than {@link #getCapacity()} objects of the classes that are not pinned
+ * 	are in the pool, the least recently used of them are evicted (removed from the pool
+ * 	but not from the data source), to be loaded again when they are next needed. The
+ * 	objects of the pinned classes (the reference data, e.g. the categories) are never
+ * 	evicted and are not counted against the capacity.
+ *
+ * 	<p>An evicted object must not stay reachable from the objects that remain in the
+ * 	pool, or else it would be loaded again as a second copy. So an object is evicted
+ * 	only if it links no objects itself and no object of the pool holds it in its loaded
+ * 	links; the others are kept in their place in the order of use, to be evicted once
+ * 	they are detached.
+ *
+ * 	<p>An object is used when it is added to the pool or looked up in it by its id. The
+ * 	id range of a class (used to browse its objects) is not changed by evictions.
+ *
+ * 	<p>The statistics of each domain class are: its resident size (the number of its
+ * 	objects in the pool), its hits (the look-ups of its objects that are found in the
+ * 	pool), its misses (its objects that are loaded into the pool) and its evictions.
+ *
+ * @example
+ * <pre>
+ * 	BoundedObjectPool pool = BoundedObjectPool.install(10000, Category.class, AccountType.class);
+ * 	// set up and run the software
+ * 	...
+ * 	pool.printStatistics();
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class BoundedObjectPool {
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	private static final Logger logger = Logger.getLogger(BoundedObjectPool.class.getName());
+
+	private static BoundedObjectPool instance;
+
+	private int capacity;
+	private Set<Class<?>> pinned;
+
+	// the objects that can be evicted, least recently used first
+	private LinkedHashMap<Oid, ClassPool> recency;
+
+	private Map<Class<?>, Statistics> statistics;
+
+	// the instance fields of the domain classes, by class
+	private Map<Class<?>, List<Field>> fields;
+
+	private BoundedObjectPool(int capacity, Class<?>... pinned) {
+		if (capacity < 1) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "capacity", capacity });
+		}
+		this.capacity = capacity;
+		this.pinned = new HashSet<>(Arrays.asList(pinned));
+		recency = new LinkedHashMap<>(16, 0.75f, true);
+		statistics = new LinkedHashMap<>();
+		fields = new HashMap<>();
+	}
+
+	/**
+	 * @effects
+	 * 	make the object pool of the software that is set up from now on hold no more
+	 * 	than <tt>capacity</tt> objects of the classes other than <tt>pinned</tt>, and
+	 * 	return the bounded pool.
+	 *
+	 * 	<p>The object pool is bounded only if it is a {@link BoundedDOM} (see
+	 * 	{@link vn.com.personalfinance.software.PersonalFinanceSetUp}), and only the
+	 * 	classes registered in it after this is installed are bounded, so this must be
+	 * 	installed before the software is set up.
+	 *
+	 * 	<p>throws NotPossibleException if <tt>capacity &lt; 1</tt>
+	 */
+	public static synchronized BoundedObjectPool install(int capacity, Class<?>... pinned)
+			throws NotPossibleException {
+		instance = new BoundedObjectPool(capacity, pinned);
+		return instance;
+	}
+
+	/**
+	 * @effects
+	 * 	return the installed pool; or <tt>null</tt> if none is installed
+	 */
+	public static synchronized BoundedObjectPool getInstance() {
+		return instance;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @effects
+	 * 	return the pinned classes
+	 */
+	public Set<Class<?>> getPinned() {
+		return Collections.unmodifiableSet(pinned);
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of objects in the pool that can be evicted
+	 */
+	public synchronized int getSize() {
+		return recency.size();
+	}
+
+	/**
+	 * @effects
+	 * 	return the statistics of the domain class <tt>c</tt>; or <tt>null</tt> if
+	 * 	<tt>c</tt> is not registered in the object pool
+	 */
+	public synchronized Statistics getStatistics(Class<?> c) {
+		Statistics s = statistics.get(c);
+		return (s != null) ? s.copy() : null;
+	}
+
+	/**
+	 * @effects
+	 * 	return the statistics of the domain classes, by class
+	 */
+	public synchronized Map<Class<?>, Statistics> getStatistics() {
+		Map<Class<?>, Statistics> result = new LinkedHashMap<>();
+		for (Map.Entry<Class<?>, Statistics> e : statistics.entrySet()) {
+			result.put(e.getKey(), e.getValue().copy());
+		}
+		return result;
+	}
+
+	/**
+	 * @effects
+	 * 	log the statistics of the domain classes
+	 */
+	public void printStatistics() {
+		if (!logger.isLoggable(Level.INFO))
+			return;
+
+		StringBuilder sb = new StringBuilder(toString());
+		for (Statistics s : getStatistics().values())
+			sb.append(System.lineSeparator()).append("  ").append(s);
+		logger.info(sb.toString());
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "BoundedObjectPool (" + recency.size() + "/" + capacity + ", pinned: " + pinned.size()
+				+ " classes)";
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	return a new (empty) class extent of <tt>c</tt> in this pool
+	 */
+	synchronized IdObjectMap<Oid, Object> newExtent(Class<?> c) {
+		ClassPool ext = new ClassPool(c);
+		statistics.put(c, ext.stats);
+		return ext;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	if <tt>ext</tt> is a class extent of this that contains <tt>id</tt>
+	 * 		record a look-up of the object of <tt>id</tt> (a hit)
+	 */
+	void used(IdObjectMap<Oid, Object> ext, Oid id) {
+		if (ext instanceof ClassPool)
+			((ClassPool) ext).get(id);
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	evict the least recently used objects that are detached (see
+	 * 	{@link #isDetached(Object)}) until no more than {@link #capacity} objects can be
+	 * 	evicted. The objects that are not detached are kept in their place.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Oid, ClassPool>> it = recency.entrySet().iterator();
+		while (recency.size() > capacity && it.hasNext()) {
+			Map.Entry<Oid, ClassPool> e = it.next();
+			ClassPool ext = e.getValue();
+			if (isDetached(ext.peek(e.getKey()))) {
+				it.remove();
+				ext.unload(e.getKey());
+			}
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	if <tt>o</tt> links no objects and no object of the pool that <tt>o</tt> refers
+	 * 	to (its owners) holds <tt>o</tt> in its loaded links
+	 * 		return true
+	 * 	else
+	 * 		return false
+	 *
+	 * 	<p>The links are read from the fields, so that the links that are not loaded are
+	 * 	not loaded.
+	 */
+	private boolean isDetached(Object o) {
+		List<Object> values = values(o);
+
+		// the objects linked to o refer to it
+		for (Object link : values) {
+			if (link instanceof Collection && !((Collection<?>) link).isEmpty())
+				return false;
+		}
+
+		for (Object owner : values) {
+			if (owner != null && statistics.containsKey(owner.getClass()) && holds(owner, o))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @effects
+	 * 	if one of the loaded link collections of <tt>owner</tt> contains <tt>o</tt>
+	 * 		return true
+	 * 	else
+	 * 		return false
+	 */
+	private boolean holds(Object owner, Object o) {
+		for (Object links : values(owner)) {
+			if (links instanceof Collection && ((Collection<?>) links).contains(o))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @effects
+	 * 	return the values of the instance fields of <tt>o</tt>
+	 */
+	private List<Object> values(Object o) {
+		List<Field> fs = fields.get(o.getClass());
+		if (fs == null) {
+			fs = new ArrayList<>();
+			for (Class<?> c = o.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field f : c.getDeclaredFields()) {
+					if (Modifier.isStatic(f.getModifiers()) || f.getType().isPrimitive())
+						continue;
+					try {
+						f.setAccessible(true);
+						fs.add(f);
+					} catch (RuntimeException e) {
+						// not accessible: not a link
+					}
+				}
+			}
+			fields.put(o.getClass(), fs);
+		}
+
+		List<Object> result = new ArrayList<>(fs.size());
+		for (Field f : fs) {
+			try {
+				result.add(f.get(o));
+			} catch (IllegalAccessException e) {
+				// made accessible above
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @overview
+	 * 	The objects of a domain class in the bounded pool.
+	 */
+	private class ClassPool extends IdObjectMap<Oid, Object> {
+		private static final long serialVersionUID = 1L;
+
+		private boolean bounded;
+		private Statistics stats;
+
+		ClassPool(Class<?> c) {
+			bounded = !pinned.contains(c);
+			stats = new Statistics(c);
+		}
+
+		@Override
+		public Object put(Oid id, Object o) {
+			synchronized (BoundedObjectPool.this) {
+				Object old = super.put(id, o);
+				if (old == null)
+					stats.misses++;
+				stats.resident = size();
+
+				if (bounded) {
+					recency.put(id, this);
+					evict();
+				}
+				return old;
+			}
+		}
+
+		@Override
+		public Object get(Object id) {
+			synchronized (BoundedObjectPool.this) {
+				Object o = super.get(id);
+				if (o != null) {
+					stats.hits++;
+					if (bounded)
+						recency.get(id);
+				}
+				return o;
+			}
+		}
+
+		@Override
+		public boolean containsKey(Object id) {
+			synchronized (BoundedObjectPool.this) {
+				return super.get(id) != null;
+			}
+		}
+
+		@Override
+		public Object remove(Object id) throws ObsoleteStateSignal {
+			synchronized (BoundedObjectPool.this) {
+				if (bounded)
+					recency.remove(id);
+				try {
+					return super.remove(id);
+				} finally {
+					stats.resident = size();
+				}
+			}
+		}
+
+		@Override
+		public void clear() {
+			synchronized (BoundedObjectPool.this) {
+				if (bounded)
+					recency.values().removeIf(ext -> ext == this);
+				super.clear();
+				stats.resident = 0;
+			}
+		}
+
+		/**
+		 * @effects
+		 * 	return the object of <tt>id</tt>, without using it
+		 */
+		Object peek(Oid id) {
+			return super.get(id);
+		}
+
+		/**
+		 * @modifies this
+		 * @effects
+		 * 	remove the object of <tt>id</tt>, keeping the id range
+		 */
+		void unload(Oid id) {
+			Oid min = getMinId();
+			Oid max = getMaxId();
+			try {
+				super.remove(id);
+			} catch (ObsoleteStateSignal e) {
+				// the id range is restored below
+			}
+			setMinId(min);
+			setMaxId(max);
+
+			stats.evictions++;
+			stats.resident = size();
+		}
+	}
+
+	/**
+	 * @overview
+	 * 	The use of the objects of a domain class in the pool.
+	 */
+	public static class Statistics {
+		private Class<?> cls;
+		private long hits;
+		private long misses;
+		private long evictions;
+		private int resident;
+
+		private Statistics(Class<?> cls) {
+			this.cls = cls;
+		}
+
+		public Class<?> getCls() {
+			return cls;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * @effects
+		 * 	return the number of objects of {@link #cls} in the pool
+		 */
+		public int getResident() {
+			return resident;
+		}
+
+		/**
+		 * @effects
+		 * 	return the fraction of the uses of the objects of {@link #cls} that are hits;
+		 * 	or 0 if there is none
+		 */
+		public double getHitRate() {
+			long uses = hits + misses;
+			return (uses == 0) ? 0 : (double) hits / uses;
+		}
+
+		private Statistics copy() {
+			Statistics s = new Statistics(cls);
+			s.hits = hits;
+			s.misses = misses;
+			s.evictions = evictions;
+			s.resident = resident;
+			return s;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: resident=%d, hits=%d, misses=%d, hit rate=%.2f, evictions=%d",
+					cls.getSimpleName(), resident, hits, misses, getHitRate(), evictions);
+		}
+	}
+}
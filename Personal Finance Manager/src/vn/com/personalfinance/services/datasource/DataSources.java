@@ -0,0 +1,177 @@
+package vn.com.personalfinance.services.datasource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.config.dodm.OsmConfig;
+
+/**
+ * @overview
+ * 	Access to the JDBC connections of the relational data source.
+ *
+ * 	<p>The queries of the software that the object store does not support are run
+ * 	on dedicated connections, opened from the configuration of the data source (see
+ * 	{@link #configure(OsmConfig)}), as prepared statements (see
+ * 	{@link #query(DOMBasic, String, Object...)}). A thread that runs many queries
+ * 	(e.g. a worker of the report queries) can bind a connection of its own (see
+ * 	{@link #bind(DOMBasic)}), on which its queries then run; the queries of the
+ * 	other threads each open and close a connection.
+ *
+ * 	<p>Code that writes to the data source in transactions of its own (e.g. the batch
+ * 	writes of {@link BatchWriter}) does so on a connection that it opens by
+ * 	{@link #open(DOMBasic)}, rather than on the connection of the object store.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public final class DataSources {
+	/** the escape clause of the <tt>like</tt> patterns of {@link #containing(String)} */
+	public static final String LIKE_ESCAPE = " escape '\\'";
+
+	// the configuration of the data source, or null if it is not known
+	private static OsmConfig osmConfig;
+
+	// the connection bound to the current thread, if any
+	private static final ThreadLocal<Connection> bound = new ThreadLocal<>();
+
+	private DataSources() {
+		// static methods only
+	}
+
+	/**
+	 * @effects
+	 * 	make the dedicated connections connect to the data source of <tt>config</tt>
+	 */
+	public static synchronized void configure(OsmConfig config) {
+		osmConfig = config;
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source of <tt>dom</tt> is relational
+	 * 		return a new connection to it, which the caller must close
+	 * 	else
+	 * 		return null
+	 *
+	 * 	<p>throws NotPossibleException if the data source is not configured;
+	 * 	SQLException if fails to connect
+	 */
+	public static Connection open(DOMBasic dom) throws NotPossibleException, SQLException {
+		if (!(dom.getOsm() instanceof RelationalOSMBasic))
+			return null;
+
+		OsmConfig config;
+		synchronized (DataSources.class) {
+			config = osmConfig;
+		}
+		if (config == null) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM,
+					new Object[] { "DataSources", "open" });
+		}
+		return DriverManager.getConnection(config.getDataSourceURL(), config.getProperties());
+	}
+
+	/**
+	 * @requires
+	 * 	the data source of <tt>dom</tt> is relational
+	 * @effects
+	 * 	execute the query <tt>sql</tt> with the parameters <tt>params</tt> (for its
+	 * 	<tt>?</tt>s, in order) on a dedicated connection and return its rows, as maps
+	 * 	from the labels of the columns (as the data source returns them, e.g. in upper
+	 * 	case for Derby) to their values.
+	 *
+	 * 	<p>throws DataSourceException if fails to execute the query
+	 */
+	public static List<Map<String, Object>> query(DOMBasic dom, String sql, Object... params)
+			throws DataSourceException {
+		try {
+			Connection conn = bound.get();
+			if (conn != null)
+				return query(conn, sql, params);
+
+			try (Connection c = open(dom)) {
+				return query(c, sql, params);
+			}
+		} catch (SQLException | RuntimeException e) {
+			throw new DataSourceException(DataSourceException.Code.FAIL_TO_EXECUTE_QUERY, e,
+					new Object[] { sql });
+		}
+	}
+
+	private static List<Map<String, Object>> query(Connection conn, String sql, Object[] params)
+			throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			for (int i = 0; i < params.length; i++)
+				stmt.setObject(i + 1, params[i]);
+
+			List<Map<String, Object>> rows = new ArrayList<>();
+			try (ResultSet rs = stmt.executeQuery()) {
+				ResultSetMetaData meta = rs.getMetaData();
+				int columns = meta.getColumnCount();
+				while (rs.next()) {
+					Map<String, Object> row = new LinkedHashMap<>();
+					for (int i = 1; i <= columns; i++)
+						row.put(meta.getColumnLabel(i), rs.getObject(i));
+					rows.add(row);
+				}
+			}
+			return rows;
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source of <tt>dom</tt> is relational and no connection is bound to
+	 * 	the current thread
+	 * 		open a connection and bind it to the current thread, so that the queries of
+	 * 		the thread run on it until {@link #unbind()}
+	 *
+	 * 	<p>throws NotPossibleException if the data source is not configured;
+	 * 	SQLException if fails to connect
+	 */
+	public static void bind(DOMBasic dom) throws NotPossibleException, SQLException {
+		if (bound.get() == null) {
+			Connection conn = open(dom);
+			if (conn != null)
+				bound.set(conn);
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	if a connection is bound to the current thread
+	 * 		unbind and close it
+	 *
+	 * 	<p>throws SQLException if fails to close the connection
+	 */
+	public static void unbind() throws SQLException {
+		Connection conn = bound.get();
+		if (conn != null) {
+			bound.remove();
+			conn.close();
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the <tt>like</tt> pattern (to be followed by {@link #LIKE_ESCAPE}) of
+	 * 	the values that contain <tt>text</tt>, in which the wildcards of <tt>text</tt>
+	 * 	match only themselves
+	 */
+	public static String containing(String text) {
+		return "%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+	}
+}
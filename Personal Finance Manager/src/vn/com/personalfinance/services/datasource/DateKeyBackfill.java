@@ -0,0 +1,119 @@
+package vn.com.personalfinance.services.datasource;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+
+/**
+ * @overview
+ * 	Fills in the date key columns (the sortable integer keys <tt>yyyyMMdd</tt> of
+ * 	{@link vn.com.personalfinance.services.expenseandincome.model.DateKey}) of the rows
+ * 	that were stored before the column existed, so that the date range queries and
+ * 	the grouped queries by date key see all the rows.
+ *
+ * 	<p>The date key column is added to the table if it is missing, and each row whose
+ * 	date key is <tt>NULL</tt> gets the key of its date, on a connection of its own (see
+ * 	{@link DataSources#open(DOMBasic)}). A class is backfilled once per
+ * 	run: at startup ({@link #ensureDateKeys(Class, String, String)}), or else before it
+ * 	is first queried by date key.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class DateKeyBackfill {
+	// the classes whose date keys are known to be filled in
+	private static final Set<Class<?>> filled = new HashSet<>();
+
+	private DateKeyBackfill() {
+		// static methods only
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source is relational and the date keys of <tt>c</tt> have not been
+	 * 	filled in during this run
+	 * 		add the column of <tt>dateKeyAttrib</tt> to the table of <tt>c</tt> if it is
+	 * 		missing and set it to the key of the column of <tt>dateAttrib</tt> in the rows
+	 * 		where it is <tt>NULL</tt>
+	 *
+	 * 	<p>throws DataSourceException if fails to read or change the data source
+	 */
+	public static synchronized void ensureDateKeys(Class<?> c, String dateAttrib, String dateKeyAttrib)
+			throws DataSourceException {
+		if (filled.contains(c))
+			return;
+
+		DOMBasic dom = QRM.getInstance().getDom();
+		String sql = null;
+		try (Connection conn = DataSources.open(dom)) {
+			if (conn == null) {
+				// nothing stored
+				filled.add(c);
+				return;
+			}
+
+			RelationalOSMBasic osm = (RelationalOSMBasic) dom.getOsm();
+			String table = dom.getDsm().getDomainClassName(c);
+			String date = osm.toDBColumnName(c, dateAttrib, false);
+			String dateKey = osm.toDBColumnName(c, dateKeyAttrib, false);
+
+			if (!hasColumn(conn, table, "%")) {
+				// the table is not created yet: no rows
+				filled.add(c);
+				return;
+			}
+
+			if (!hasColumn(conn, table, dateKey)) {
+				sql = "alter table " + table + " add column " + dateKey + " integer";
+				try (Statement stmt = conn.createStatement()) {
+					stmt.executeUpdate(sql);
+				}
+			}
+
+			sql = "update " + table + " set " + dateKey + " = year(" + date + ") * 10000 + month(" + date
+					+ ") * 100 + day(" + date + ") where " + dateKey + " is null and " + date + " is not null";
+			try (Statement stmt = conn.createStatement()) {
+				stmt.executeUpdate(sql);
+			}
+		} catch (SQLException e) {
+			throw new DataSourceException(DataSourceException.Code.FAIL_TO_EXECUTE_QUERY, e,
+					new Object[] { sql });
+		}
+
+		filled.add(c);
+	}
+
+	/**
+	 * @effects
+	 * 	if the table <tt>table</tt> (of the form <tt>[schema.]name</tt>) has a column
+	 * 	whose name matches the pattern <tt>column</tt>
+	 * 		return true
+	 * 	else
+	 * 		return false
+	 */
+	private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+		String schema = null;
+		int dot = table.indexOf('.');
+		if (dot >= 0) {
+			schema = table.substring(0, dot);
+			table = table.substring(dot + 1);
+		}
+
+		// Derby stores the unquoted names in upper case
+		DatabaseMetaData meta = conn.getMetaData();
+		try (ResultSet rs = meta.getColumns(null, (schema != null) ? schema.toUpperCase() : null,
+				table.toUpperCase(), column.toUpperCase())) {
+			return rs.next();
+		}
+	}
+}
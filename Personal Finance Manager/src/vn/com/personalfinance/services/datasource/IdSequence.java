@@ -0,0 +1,286 @@
+package vn.com.personalfinance.services.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.meta.DAttr;
+
+/**
+ * @overview
+ * 	A sequence of the (numeric part of the) ids of a domain class, shared by all the
+ * 	creators of its objects.
+ *
+ * 	<p>Ids are handed out from blocks of {@link #getBlockSize()} ids that are reserved in
+ * 	advance (hi/lo): only reserving a block writes to the data source, which stores the
+ * 	last id reserved (the high-water mark) of each sequence in the table
+ * 	{@link #TABLE}, in a row that is created the first time that a block is reserved.
+ * 	The ids of a block that are not handed out before the application stops are
+ * 	skipped, so ids are unique but not necessarily consecutive: the id attributes are
+ * 	long enough for the skipped ids (see {@link #ensureIdLength(Class)}).
+ *
+ * 	<p>The sequences are safe under concurrent creators, both in this application and
+ * 	in others that share the data source. If the data source is not relational, the
+ * 	blocks are reserved in memory only.
+ *
+ * @example
+ * <pre>
+ * 	private static final IdSequence ids = IdSequence.of(DailyExpense.class);
+ * 	...
+ * 	id = "E" + ids.next();
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class IdSequence {
+	public static final String TABLE = "IdSequence";
+	public static final int DEFAULT_BLOCK_SIZE = 50;
+
+	private static final Map<String, IdSequence> sequences = new HashMap<>();
+	private static boolean tableCreated;
+
+	private String name;
+	private int blockSize;
+
+	// the next id to hand out and the last id of the reserved block
+	private int next;
+	private int limit;
+
+	IdSequence(String name, int blockSize) {
+		this.name = name;
+		this.blockSize = blockSize;
+		next = 1;
+		limit = 0;
+	}
+
+	/**
+	 * @effects
+	 * 	return the sequence of the ids of the domain class <tt>c</tt>
+	 */
+	public static synchronized IdSequence of(Class<?> c) {
+		IdSequence seq = sequences.get(c.getSimpleName());
+		if (seq == null) {
+			seq = new IdSequence(c.getSimpleName(), DEFAULT_BLOCK_SIZE);
+			sequences.put(seq.name, seq);
+		}
+		return seq;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * @effects
+	 * 	return the next id of this, reserving a new block of ids if the current one is
+	 * 	used up.
+	 *
+	 * 	<p>throws NotPossibleException if fails to reserve the block in the data source
+	 */
+	public synchronized int next() throws NotPossibleException {
+		if (next > limit)
+			reserve();
+		return next++;
+	}
+
+	/**
+	 * @effects
+	 * 	return the last id handed out by (or advanced to in) this; or 0 if there is none
+	 */
+	public synchronized int current() {
+		return next - 1;
+	}
+
+	/**
+	 * @effects
+	 * 	make the ids handed out by this from now on greater than <tt>id</tt>, an id
+	 * 	that is used by an existing object
+	 */
+	public synchronized void advanceTo(int id) {
+		if (id >= next)
+			next = id + 1;
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source is relational and the id column of the table of <tt>c</tt>
+	 * 	(a string column) is shorter than the length of the id attribute of <tt>c</tt>
+	 * 		widen it to that length, so that the ids of the blocks reserved by the
+	 * 		sequence of <tt>c</tt> fit in the tables created with a shorter id
+	 *
+	 * 	<p>throws DataSourceException if fails to read or change the schema
+	 */
+	public static void ensureIdLength(Class<?> c) throws DataSourceException {
+		DOMBasic dom = QRM.getInstance().getDom();
+		DAttr idAttrib = dom.getDsm().getDomainConstraint(c, "id");
+		String sql = null;
+		try (Connection conn = DataSources.open(dom)) {
+			if (conn == null)
+				return;
+
+			String table = dom.getDsm().getDomainClassName(c);
+			String column = ((RelationalOSMBasic) dom.getOsm()).toDBColumnName(c, idAttrib, false);
+			String schema = null;
+			String name = table;
+			int dot = table.indexOf('.');
+			if (dot >= 0) {
+				schema = table.substring(0, dot).toUpperCase();
+				name = table.substring(dot + 1);
+			}
+
+			int length;
+			try (ResultSet rs = conn.getMetaData().getColumns(null, schema, name.toUpperCase(),
+					column.toUpperCase())) {
+				if (!rs.next()) {
+					// the table is not created yet
+					return;
+				}
+				length = rs.getInt("COLUMN_SIZE");
+			}
+
+			if (length < idAttrib.length()) {
+				sql = "alter table " + table + " alter column " + column + " set data type varchar("
+						+ idAttrib.length() + ")";
+				try (Statement stmt = conn.createStatement()) {
+					stmt.executeUpdate(sql);
+				}
+			}
+		} catch (SQLException e) {
+			throw new DataSourceException(DataSourceException.Code.FAIL_TO_EXECUTE_QUERY, e,
+					new Object[] { sql });
+		}
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	reserve the next block of ids, starting from <tt>next</tt> or past the
+	 * 	high-water mark of the data source, whichever is greater, on a connection of
+	 * 	its own (see {@link DataSources#open(DOMBasic)}).
+	 *
+	 * 	<p>throws NotPossibleException if fails to reserve the block in the data source
+	 */
+	private void reserve() throws NotPossibleException {
+		try (Connection conn = DataSources.open(QRM.getInstance().getDom())) {
+			reserve(conn);
+		} catch (SQLException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "IdSequence", "reserve " + name });
+		}
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	reserve the next block of ids in the data source of <tt>conn</tt> (or, if it is
+	 * 	<tt>null</tt>, in memory only), as {@link #reserve()} does
+	 */
+	synchronized void reserve(Connection conn) throws SQLException {
+		if (conn != null)
+			next = Math.max(next, reserve(conn, next - 1 + blockSize) - blockSize + 1);
+		limit = next + blockSize - 1;
+	}
+
+	/**
+	 * @effects
+	 * 	raise the high-water mark of this in the data source of <tt>conn</tt> by
+	 * 	{@link #blockSize}, to no less than <tt>minLimit</tt>, and return it.
+	 *
+	 * 	<p>The row of this is created (committed on its own) before it is changed, so
+	 * 	that the creators that reserve the first block at the same time all change the
+	 * 	same row. The row is locked by changing it first, and stays locked until the
+	 * 	transaction ends (a <tt>select ... for update</tt> is unlocked as soon as its
+	 * 	cursor is closed, under the default isolation).
+	 */
+	private int reserve(Connection conn, int minLimit) throws SQLException {
+		createTable(conn);
+		conn.setAutoCommit(false);
+		try {
+			createRow(conn);
+
+			try (PreparedStatement stmt = conn.prepareStatement(
+					"update " + TABLE + " set hi = hi + ? where name = ?")) {
+				stmt.setInt(1, blockSize);
+				stmt.setString(2, name);
+				stmt.executeUpdate();
+			}
+
+			int hi;
+			try (PreparedStatement stmt = conn.prepareStatement(
+					"select hi from " + TABLE + " where name = ?")) {
+				stmt.setString(1, name);
+				try (ResultSet rs = stmt.executeQuery()) {
+					rs.next();
+					hi = rs.getInt(1);
+				}
+			}
+
+			if (hi < minLimit) {
+				try (PreparedStatement stmt = conn.prepareStatement(
+						"update " + TABLE + " set hi = ? where name = ?")) {
+					stmt.setInt(1, minLimit);
+					stmt.setString(2, name);
+					stmt.executeUpdate();
+				}
+				hi = minLimit;
+			}
+
+			conn.commit();
+			return hi;
+		} catch (SQLException | RuntimeException e) {
+			conn.rollback();
+			throw e;
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source of <tt>conn</tt> has no row of this
+	 * 		insert it, with no id reserved, and commit
+	 */
+	private void createRow(Connection conn) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement(
+				"insert into " + TABLE + "(hi, name) values(0, ?)")) {
+			stmt.setString(1, name);
+			stmt.executeUpdate();
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			// 23505: the row exists (or was inserted by another creator meanwhile)
+			if (!"23505".equals(e.getSQLState()))
+				throw e;
+		}
+	}
+
+	private static void createTable(Connection conn) throws SQLException {
+		synchronized (IdSequence.class) {
+			if (tableCreated)
+				return;
+
+			try (Statement stmt = conn.createStatement()) {
+				stmt.executeUpdate("create table " + TABLE
+						+ "(name varchar(100) primary key, hi int not null)");
+			} catch (SQLException e) {
+				// X0Y32: the table already exists
+				if (!"X0Y32".equals(e.getSQLState()))
+					throw e;
+			}
+			tableCreated = true;
+		}
+	}
+}
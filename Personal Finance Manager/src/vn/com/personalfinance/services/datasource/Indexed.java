@@ -0,0 +1,30 @@
+package vn.com.personalfinance.services.datasource;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @overview
+ * 	Declares that the column of a (serialisable) domain attribute is to have a
+ * 	secondary index, because it is used to filter or to look up objects.
+ *
+ * 	<p>The columns of the associations (attributes of type <tt>Domain</tt>) are indexed
+ * 	without this annotation. See {@link SchemaIndexes}.
+ *
+ * @example
+ * <pre>
+ * 	&#64;DAttr(name = C_name, type = Type.String, length = 20, optional = false)
+ * 	&#64;Indexed
+ * 	private String name;
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Indexed {
+}
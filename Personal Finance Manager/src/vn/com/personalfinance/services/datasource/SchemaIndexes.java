@@ -0,0 +1,179 @@
+package vn.com.personalfinance.services.datasource;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMToolkit;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.meta.DAttr;
+
+/**
+ * @overview
+ * 	Creates the secondary indexes of the tables of the domain classes, which the
+ * 	schema generated by the framework does not have (it has only the primary keys).
+ *
+ * 	<p>A column of a (non-transient) class is indexed if its attribute is serialisable
+ * 	and either is an association (of type <tt>Domain</tt>, i.e. a foreign key) or is
+ * 	annotated with {@link Indexed}. The index of attribute <tt>a</tt> of class <tt>C</tt> is named
+ * 	<tt>IDX_C_a</tt> (in upper case); an index that exists is not created again.
+ *
+ * 	<p>The indexes are checked for all the domain classes at startup
+ * 	({@link #ensureIndexes(Class...)}) and for each class before it is first queried
+ * 	by the reports ({@link #ensureIndexes(Class)}).
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class SchemaIndexes {
+	// the classes whose indexes are known to exist
+	private static final Set<Class<?>> checked = new HashSet<>();
+
+	private SchemaIndexes() {
+		// static methods only
+	}
+
+	/**
+	 * @effects
+	 * 	create the missing indexes of each class of <tt>classes</tt>.
+	 *
+	 * 	<p>throws DataSourceException if fails to read or change the schema
+	 */
+	public static void ensureIndexes(Class<?>... classes) throws DataSourceException {
+		for (Class<?> c : classes) {
+			ensureIndexes(c);
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source is relational
+	 * 		create the missing indexes of <tt>c</tt>
+	 *
+	 * 	<p>throws DataSourceException if fails to read or change the schema
+	 */
+	public static synchronized void ensureIndexes(Class<?> c) throws DataSourceException {
+		if (checked.contains(c))
+			return;
+
+		if (DSMBasic.isTransient(c)) {
+			// not stored
+			checked.add(c);
+			return;
+		}
+
+		DOMBasic dom = QRM.getInstance().getDom();
+		DSMBasic dsm = dom.getDsm();
+		List<Field> indexed = new ArrayList<>();
+		Map<Field, DAttr> attribs = dsm.getSerialisableAttributes(c);
+		if (attribs != null) {
+			for (Map.Entry<Field, DAttr> e : attribs.entrySet()) {
+				Field f = e.getKey();
+				// the inherited attributes are stored in the table of the super-class
+				if (f.getDeclaringClass() == c && !e.getValue().id()
+						&& (e.getValue().type().isDomainType() || f.isAnnotationPresent(Indexed.class))) {
+					indexed.add(f);
+				}
+			}
+		}
+
+		if (!indexed.isEmpty())
+			ensureIndexes(dom, c, indexed);
+
+		checked.add(c);
+	}
+
+	/**
+	 * @effects
+	 * 	return the classes whose indexes are known to exist
+	 */
+	static synchronized Collection<Class<?>> getChecked() {
+		return new ArrayList<>(checked);
+	}
+
+	/**
+	 * @effects
+	 * 	record that the indexes of <tt>classes</tt> exist (e.g. as recorded by a
+	 * 	{@link StartupSnapshot})
+	 */
+	static synchronized void markChecked(Collection<Class<?>> classes) {
+		checked.addAll(classes);
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source is relational
+	 * 		create the index of the attribute <tt>attrib</tt> of <tt>c</tt>, if missing
+	 *
+	 * 	<p>throws DataSourceException if fails to read or change the schema
+	 */
+	public static synchronized void ensureIndex(Class<?> c, String attrib) throws DataSourceException {
+		DOMBasic dom = QRM.getInstance().getDom();
+		try {
+			ensureIndexes(dom, c, Collections.singletonList(c.getDeclaredField(attrib)));
+		} catch (NoSuchFieldException e) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT, e,
+					new Object[] { "attrib", attrib });
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source is relational
+	 * 		create the missing indexes of the attributes of the fields <tt>fields</tt>
+	 * 		of <tt>c</tt>, on a connection of their own
+	 *
+	 * 	<p>throws DataSourceException if fails to read or change the schema
+	 */
+	private static void ensureIndexes(DOMBasic dom, Class<?> c, List<Field> fields) throws DataSourceException {
+		String sql = null;
+		try (Connection conn = DataSources.open(dom)) {
+			if (conn == null) {
+				// nothing to index
+				return;
+			}
+
+			RelationalOSMBasic osm = (RelationalOSMBasic) dom.getOsm();
+			String table = dom.getDsm().getDomainClassName(c);
+			for (Field f : fields) {
+				String column = RelationalOSMToolkit.getColumName(osm, c, f, null);
+				String index = ("IDX_" + c.getSimpleName() + "_" + f.getName()).toUpperCase();
+
+				sql = "select conglomeratename from sys.sysconglomerates where conglomeratename = ?";
+				boolean exists;
+				try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+					stmt.setString(1, index);
+					try (ResultSet rs = stmt.executeQuery()) {
+						exists = rs.next();
+					}
+				}
+
+				if (!exists) {
+					sql = "create index " + index + " on " + table + "(" + column + ")";
+					try (Statement stmt = conn.createStatement()) {
+						stmt.executeUpdate(sql);
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new DataSourceException(DataSourceException.Code.FAIL_TO_EXECUTE_QUERY, e,
+					new Object[] { sql });
+		}
+	}
+}
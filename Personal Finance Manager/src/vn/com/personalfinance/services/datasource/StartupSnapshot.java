@@ -0,0 +1,615 @@
+package vn.com.personalfinance.services.datasource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.meta.DAssoc;
+import domainapp.basics.model.meta.DAttr;
+import domainapp.basics.util.events.ChangeEvent;
+import domainapp.basics.util.events.ChangeListener;
+import vn.com.personalfinance.services.model.Accessors;
+
+/**
+ * @overview
+ * 	A binary snapshot of the startup state of the software, which is written when the
+ * 	software shuts down and read (memory-mapped) when it next starts, so that the
+ * 	state does not have to be read from the data source again.
+ *
+ * 	<p>The snapshot holds the domain classes whose secondary indexes are known to exist
+ * 	(see {@link SchemaIndexes}) and the objects of the hot reference classes (e.g. the
+ * 	categories), which the object pool then does not load from the data source. Only
+ * 	the reference classes whose serialisable attributes are all of basic types, and
+ * 	that have a data source constructor, are snapshot.
+ *
+ * 	<p>A snapshot is used only if its format version ({@link #VERSION}) and the hash of
+ * 	the domain model (the attributes and associations of its classes) are those of the
+ * 	running software, and the checksum of its contents matches. The objects of the
+ * 	reference classes are restored only if none of them are in the object pool and the
+ * 	data source has the same number of them as the snapshot (read by one query for all
+ * 	the classes). The objects are all created first and added to the object pool only if
+ * 	all of them are, so that a snapshot that cannot be restored leaves the pool as it
+ * 	was and the normal startup path is taken.
+ *
+ * 	<p>The snapshot is installed (read and checked) before the software is run, and
+ * 	restored into the object pool by a startup step, once the object pool is created and
+ * 	before the UI is. From then on, the first change of an object of a reference class
+ * 	deletes the snapshot, so that a session that does not shut down cleanly leaves no
+ * 	stale snapshot behind.
+ *
+ * @example
+ * <pre>
+ * 	StartupSnapshot snapshot = StartupSnapshot.install(new File("data", "startup.snapshot"),
+ * 			model, Category.class);
+ * 	PersonalFinanceSetUp.addStartupStep("restore the startup snapshot", snapshot::restore);
+ * 	sw.run(model);
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class StartupSnapshot implements ChangeListener {
+	public static final int VERSION = 3;
+
+	private static final Logger logger = Logger.getLogger(StartupSnapshot.class.getName());
+
+	// "PFMS"
+	private static final int MAGIC = 0x50464D53;
+
+	// the value tags
+	private static final byte NULL = 0;
+	private static final byte INT = 1;
+	private static final byte LONG = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte BOOLEAN = 4;
+	private static final byte STRING = 5;
+
+	private File file;
+	private Class<?>[] model;
+	private Class<?>[] hot;
+	private byte[] schemaHash;
+
+	// the contents read from the snapshot, until they are restored
+	private Contents contents;
+
+	private int restored;
+	private volatile boolean invalidated;
+
+	public StartupSnapshot(File file, Class<?>[] model, Class<?>... hot) throws NotPossibleException {
+		this.file = file;
+		this.model = model;
+		this.hot = hot;
+		schemaHash = schemaHash(model);
+	}
+
+	/**
+	 * @effects
+	 * 	create a <tt>StartupSnapshot</tt> in <tt>file</tt>, read it (see {@link #load()})
+	 * 	and register it to be saved when the software shuts down; return it.
+	 *
+	 * 	<p>This is called before the software is run; {@link #restore()} is called by a
+	 * 	startup step.
+	 */
+	public static StartupSnapshot install(File file, Class<?>[] model, Class<?>... hot)
+			throws NotPossibleException {
+		StartupSnapshot snapshot = new StartupSnapshot(file, model, hot);
+		snapshot.load();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				snapshot.save();
+			} catch (NotPossibleException e) {
+				logger.log(Level.WARNING, "Failed to save the startup snapshot", e);
+			}
+		}, "StartupSnapshot"));
+		return snapshot;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of objects restored from the snapshot
+	 */
+	public int getRestored() {
+		return restored;
+	}
+
+	/**
+	 * @effects
+	 * 	if the snapshot has been deleted because the reference data has changed since it
+	 * 	was restored
+	 * 		return <tt>true</tt>
+	 * 	else
+	 * 		return <tt>false</tt>
+	 */
+	public boolean isInvalidated() {
+		return invalidated;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	if the snapshot exists, matches the running software and its checksum matches
+	 * 		read its contents into this and return <tt>true</tt>
+	 * 	else
+	 * 		return <tt>false</tt>
+	 */
+	public boolean load() {
+		contents = null;
+		if (!file.isFile())
+			return false;
+
+		MappedByteBuffer buf;
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		} catch (IOException e) {
+			return false;
+		}
+
+		try {
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+				return false;
+			byte[] hash = new byte[buf.getInt()];
+			buf.get(hash);
+			if (!Arrays.equals(hash, schemaHash))
+				return false;
+
+			// the contents must be complete and unchanged
+			int length = buf.getInt();
+			long checksum = buf.getLong();
+			if (length != buf.remaining())
+				return false;
+			ByteBuffer payload = buf.slice();
+			CRC32 crc = new CRC32();
+			crc.update(payload.duplicate());
+			if (crc.getValue() != checksum)
+				return false;
+
+			Map<String, Class<?>> classes = new HashMap<>();
+			for (Class<?> c : model)
+				classes.put(c.getName(), c);
+
+			Contents read = new Contents();
+
+			// the classes with indexes
+			for (int i = payload.getInt(); i > 0; i--) {
+				Class<?> c = classes.get(getString(payload));
+				if (c != null)
+					read.indexed.add(c);
+			}
+
+			// the reference objects
+			for (int i = payload.getInt(); i > 0; i--) {
+				Class<?> c = classes.get(getString(payload));
+				int count = payload.getInt();
+				String[] attribs = new String[payload.getInt()];
+				for (int j = 0; j < attribs.length; j++)
+					attribs[j] = getString(payload);
+
+				List<Map<String, Object>> rows = new ArrayList<>(count);
+				for (int k = 0; k < count; k++) {
+					Map<String, Object> row = new HashMap<>();
+					for (String a : attribs)
+						row.put(a, getValue(payload));
+					rows.add(row);
+				}
+
+				if (c != null)
+					read.objects.put(c, rows);
+			}
+
+			contents = read;
+			return true;
+		} catch (RuntimeException e) {
+			// a corrupt snapshot: take the normal path
+			return false;
+		}
+	}
+
+	/**
+	 * @requires the object pool has been created and its classes registered
+	 * @modifies this, the object pool
+	 * @effects
+	 * 	restore the contents read by {@link #load()} (if any) into the object pool, and
+	 * 	register this to delete the snapshot on the first change of an object of the
+	 * 	reference classes; return <tt>true</tt> if the contents were restored, or else
+	 * 	<tt>false</tt>
+	 */
+	public boolean restore() {
+		DOMBasic dom = QRM.getInstance().getDom();
+
+		boolean result = false;
+		if (contents != null) {
+			try {
+				Map<Class<?>, List<Object>> staged = stage(dom, contents.objects);
+				for (Map.Entry<Class<?>, List<Object>> e : staged.entrySet()) {
+					for (Object o : e.getValue())
+						dom.addObject(o, false);
+					restored += e.getValue().size();
+				}
+				SchemaIndexes.markChecked(contents.indexed);
+				result = true;
+			} catch (Exception e) {
+				// a stale snapshot: take the normal path
+				logger.log(Level.INFO, "The startup snapshot is not restored", e);
+			}
+			contents = null;
+		}
+
+		for (Class<?> c : hot)
+			dom.addChangeListener(c, this);
+
+		return result;
+	}
+
+	@Override
+	public void stateChanged(ChangeEvent e) {
+		invalidate();
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	delete the snapshot (if it is not already), so that it is not restored if the
+	 * 	software does not shut down cleanly
+	 */
+	public void invalidate() {
+		if (invalidated)
+			return;
+
+		synchronized (this) {
+			if (!invalidated) {
+				invalidated = true;
+				try {
+					Files.deleteIfExists(file.toPath());
+				} catch (IOException e) {
+					// then its checksum or the data source counts reject it
+				}
+			}
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	if the software has been run
+	 * 		write the current state of the software to the snapshot.
+	 *
+	 * 	<p>throws NotPossibleException if fails to write the snapshot
+	 */
+	public synchronized void save() throws NotPossibleException {
+		DOMBasic dom;
+		try {
+			dom = QRM.getInstance().getDom();
+		} catch (NotPossibleException e) {
+			// not run: nothing to save
+			return;
+		}
+		if (dom == null)
+			return;
+		DSMBasic dsm = dom.getDsm();
+
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(payload)) {
+			Collection<Class<?>> indexed = SchemaIndexes.getChecked();
+			out.writeInt(indexed.size());
+			for (Class<?> c : indexed)
+				putString(out, c.getName());
+
+			List<Class<?>> classes = new ArrayList<>();
+			for (Class<?> c : hot) {
+				if (isSnapshotable(dsm, c) && dom.getObjectCount(c) > 0)
+					classes.add(c);
+			}
+			out.writeInt(classes.size());
+			for (Class<?> c : classes) {
+				Collection<?> objects = dom.getObjects(c);
+				List<Field> fields = new ArrayList<>(dsm.getSerialisableAttributes(c).keySet());
+
+				putString(out, c.getName());
+				out.writeInt(objects.size());
+				out.writeInt(fields.size());
+				for (Field f : fields)
+					putString(out, f.getAnnotation(DAttr.class).name());
+
+				Accessors acc = Accessors.of(c);
+				for (Object o : objects) {
+					for (Field f : fields)
+						putValue(out, acc.get(o, f));
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "StartupSnapshot", "save " + file });
+		}
+
+		byte[] data = payload.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(schemaHash.length);
+			out.write(schemaHash);
+			out.writeInt(data.length);
+			out.writeLong(crc.getValue());
+			out.write(data);
+		} catch (IOException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "StartupSnapshot", "save " + file });
+		}
+
+		// replace the old snapshot only when the new one is complete
+		try {
+			if (file.getParentFile() != null)
+				Files.createDirectories(file.getParentFile().toPath());
+			File tmp = new File(file.getPath() + ".tmp");
+			Files.write(tmp.toPath(), bytes.toByteArray());
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "StartupSnapshot", "save " + file });
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the objects of the rows <tt>objects</tt> of the reference classes that
+	 * 	have none of their objects in the object pool of <tt>dom</tt>, by class, without
+	 * 	adding them to it.
+	 *
+	 * 	<p>throws Exception if the data source does not have the same number of objects
+	 * 	of these classes as the snapshot, or fails to create an object
+	 */
+	private Map<Class<?>, List<Object>> stage(DOMBasic dom, Map<Class<?>, List<Map<String, Object>>> objects)
+			throws Exception {
+		Map<Class<?>, List<Map<String, Object>>> missing = new LinkedHashMap<>();
+		for (Map.Entry<Class<?>, List<Map<String, Object>>> e : objects.entrySet()) {
+			if (dom.getObjectCount(e.getKey()) == 0)
+				missing.put(e.getKey(), e.getValue());
+		}
+
+		Map<Class<?>, List<Object>> staged = new LinkedHashMap<>();
+		if (missing.isEmpty())
+			return staged;
+
+		Map<Class<?>, Integer> counts = countObjects(dom, missing.keySet());
+		for (Map.Entry<Class<?>, List<Map<String, Object>>> e : missing.entrySet()) {
+			Class<?> c = e.getKey();
+			List<Map<String, Object>> rows = e.getValue();
+			Integer count = counts.get(c);
+			if (count != null && count != rows.size()) {
+				throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM,
+						new Object[] { "StartupSnapshot", "restore " + c.getSimpleName() });
+			}
+
+			Accessors acc = Accessors.of(c);
+			String[] params = acc.getConstructorAttributes();
+			List<Object> created = new ArrayList<>(rows.size());
+			for (Map<String, Object> row : rows) {
+				Object[] args = new Object[params.length];
+				for (int i = 0; i < params.length; i++)
+					args[i] = row.get(params[i]);
+				created.add(acc.newInstance(args));
+			}
+			staged.put(c, created);
+		}
+		return staged;
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source of <tt>dom</tt> is relational
+	 * 		return the numbers of the objects of <tt>classes</tt> in it, read by one query
+	 * 	else
+	 * 		return an empty map
+	 */
+	private static Map<Class<?>, Integer> countObjects(DOMBasic dom, Collection<Class<?>> classes)
+			throws DataSourceException {
+		Map<Class<?>, Integer> counts = new HashMap<>();
+		if (!(dom.getOsm() instanceof RelationalOSMBasic))
+			return counts;
+
+		List<Class<?>> order = new ArrayList<>(classes);
+		StringBuilder sql = new StringBuilder();
+		for (int i = 0; i < order.size(); i++) {
+			if (i > 0)
+				sql.append(" union all ");
+			sql.append("select ").append(i).append(" as c, count(*) as n from ")
+					.append(dom.getDsm().getDomainClassName(order.get(i)));
+		}
+
+		for (Map<String, Object> row : DataSources.query(dom, sql.toString())) {
+			int i = ((Number) row.get("C")).intValue();
+			counts.put(order.get(i), ((Number) row.get("N")).intValue());
+		}
+		return counts;
+	}
+
+	/**
+	 * @effects
+	 * 	if the objects of <tt>c</tt> can be written to the snapshot
+	 * 		return <tt>true</tt>
+	 * 	else
+	 * 		return <tt>false</tt>
+	 */
+	private static boolean isSnapshotable(DSMBasic dsm, Class<?> c) {
+		if (Accessors.of(c).getConstructorAttributes() == null)
+			return false;
+
+		for (DAttr a : dsm.getSerialisableAttributes(c).values()) {
+			DAttr.Type t = a.type();
+			if (!(t.isInteger() || t.isLong() || t.isDouble() || t.isBoolean() || t.isString()))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @effects
+	 * 	return the hash of the attributes and associations of the classes of <tt>model</tt>
+	 */
+	private static byte[] schemaHash(Class<?>[] model) throws NotPossibleException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "StartupSnapshot", "schemaHash" });
+		}
+
+		for (Class<?> c : model) {
+			md.update(c.getName().getBytes(StandardCharsets.UTF_8));
+			Field[] fields = c.getDeclaredFields();
+			Arrays.sort(fields, Comparator.comparing(Field::getName));
+			for (Field f : fields) {
+				DAttr attr = f.getAnnotation(DAttr.class);
+				if (attr == null)
+					continue;
+				md.update(f.getName().getBytes(StandardCharsets.UTF_8));
+				md.update(describe(attr).getBytes(StandardCharsets.UTF_8));
+				DAssoc assoc = f.getAnnotation(DAssoc.class);
+				if (assoc != null)
+					md.update(describe(assoc).getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return md.digest();
+	}
+
+	/**
+	 * @effects
+	 * 	return the members of <tt>a</tt> and their values, in the order of their names.
+	 *
+	 * 	<p>The order of the members of <tt>a.toString()</tt> is not the same in every run
+	 * 	of the software, so it is not used.
+	 */
+	private static String describe(Annotation a) throws NotPossibleException {
+		Method[] members = a.annotationType().getDeclaredMethods();
+		Arrays.sort(members, Comparator.comparing(Method::getName));
+
+		StringBuilder sb = new StringBuilder(a.annotationType().getName()).append('(');
+		for (Method m : members) {
+			Object v;
+			try {
+				v = m.invoke(a);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+						new Object[] { "StartupSnapshot", "schemaHash" });
+			}
+
+			sb.append(m.getName()).append('=');
+			if (v instanceof Annotation)
+				sb.append(describe((Annotation) v));
+			else if (v instanceof Annotation[])
+				for (Annotation e : (Annotation[]) v)
+					sb.append(describe(e));
+			else if (v instanceof Object[])
+				sb.append(Arrays.deepToString((Object[]) v));
+			else if (v != null && v.getClass().isArray())
+				sb.append(Arrays.deepToString(new Object[] { v }));
+			else
+				sb.append(v);
+			sb.append(',');
+		}
+		return sb.append(')').toString();
+	}
+
+	private static void putString(DataOutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String getString(ByteBuffer buf) {
+		byte[] b = new byte[buf.getInt()];
+		buf.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	private static void putValue(DataOutputStream out, Object v) throws IOException {
+		if (v == null) {
+			out.writeByte(NULL);
+		} else if (v instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt((Integer) v);
+		} else if (v instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) v);
+		} else if (v instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) v);
+		} else if (v instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) v);
+		} else {
+			out.writeByte(STRING);
+			putString(out, v.toString());
+		}
+	}
+
+	private static Object getValue(ByteBuffer buf) {
+		byte tag = buf.get();
+		switch (tag) {
+		case NULL:
+			return null;
+		case INT:
+			return buf.getInt();
+		case LONG:
+			return buf.getLong();
+		case DOUBLE:
+			return buf.getDouble();
+		case BOOLEAN:
+			return buf.get() != 0;
+		case STRING:
+			return getString(buf);
+		default:
+			throw new IllegalArgumentException("unknown value tag: " + tag);
+		}
+	}
+
+	/**
+	 * @overview
+	 * 	The contents of a snapshot: the classes with indexes and the rows of the objects
+	 * 	of the reference classes, by class.
+	 */
+	private static class Contents {
+		final List<Class<?>> indexed = new ArrayList<>();
+		final Map<Class<?>, List<Map<String, Object>>> objects = new HashMap<>();
+	}
+}
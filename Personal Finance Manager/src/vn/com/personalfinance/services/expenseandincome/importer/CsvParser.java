@@ -0,0 +1,116 @@
+package vn.com.personalfinance.services.expenseandincome.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @overview
+ * 	The parser stage of the statement import: reads the rows of a CSV stream one at
+ * 	a time, splitting each line into its fields.
+ *
+ * 	<p>Fields are separated by commas and may be enclosed in double quotes, in which
+ * 	case they may contain commas, (doubled) double quotes and line breaks: a row
+ * 	whose quoted field is not closed at the end of a line continues on the next
+ * 	line. Blank lines between rows are skipped.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+class CsvParser {
+	private BufferedReader reader;
+
+	// the number of the lines read, and of the first line of the last row
+	private int linesRead;
+	private int lineNumber;
+
+	CsvParser(BufferedReader reader) {
+		this.reader = reader;
+		linesRead = 0;
+		lineNumber = 0;
+	}
+
+	/**
+	 * @effects
+	 * 	if there is another (non-blank) row
+	 * 		return its fields
+	 * 	else
+	 * 		return null
+	 *
+	 * 	<p>throws IOException if fails to read from the stream, or if the stream ends
+	 * 	inside a quoted field
+	 */
+	String[] next() throws IOException {
+		String line;
+		do {
+			line = reader.readLine();
+			if (line == null)
+				return null;
+			linesRead++;
+		} while (line.trim().isEmpty());
+		lineNumber = linesRead;
+
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		while (true) {
+			quoted = split(line, quoted, fields, field);
+			if (!quoted)
+				break;
+
+			// the quoted field continues on the next line
+			line = reader.readLine();
+			if (line == null) {
+				throw new IOException("Unterminated quoted field in the row at line " + lineNumber);
+			}
+			linesRead++;
+			field.append('\n');
+		}
+		fields.add(field.toString().trim());
+
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of the (first) line of the last row returned by {@link #next()}
+	 */
+	int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * @modifies fields, field
+	 * @effects
+	 * 	split <tt>line</tt>, which starts inside a quoted field if <tt>quoted</tt>, adding
+	 * 	the fields that it ends to <tt>fields</tt> and the text of its last field to
+	 * 	<tt>field</tt>; return whether the line ends inside a quoted field
+	 */
+	private static boolean split(String line, boolean quoted, List<String> fields, StringBuilder field) {
+		for (int i = 0; i < line.length(); i++) {
+			char ch = line.charAt(i);
+			if (quoted) {
+				if (ch == '"') {
+					if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						field.append('"');
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else {
+					field.append(ch);
+				}
+			} else if (ch == '"') {
+				quoted = true;
+			} else if (ch == ',') {
+				fields.add(field.toString().trim());
+				field.setLength(0);
+			} else {
+				field.append(ch);
+			}
+		}
+		return quoted;
+	}
+}
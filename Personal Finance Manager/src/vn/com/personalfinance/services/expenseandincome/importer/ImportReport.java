@@ -0,0 +1,121 @@
+package vn.com.personalfinance.services.expenseandincome.importer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @overview
+ * 	The outcome of a statement import: the numbers of rows read, imported and
+ * 	rejected, the time spent in each stage and the first rejection messages.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class ImportReport {
+	/** the maximum number of rejection messages kept */
+	public static final int MAX_MESSAGES = 100;
+
+	private long rowsRead;
+	private long rowsImported;
+	private long rowsRejected;
+	private int batches;
+
+	private long parseNanos;
+	private long validateNanos;
+	private long persistNanos;
+	private long totalNanos;
+
+	private List<String> messages;
+
+	ImportReport() {
+		messages = new ArrayList<>();
+	}
+
+	void rowRead() {
+		rowsRead++;
+	}
+
+	void rowsImported(int count) {
+		rowsImported += count;
+		batches++;
+	}
+
+	void rowRejected(String message) {
+		rowsRejected++;
+		if (messages.size() < MAX_MESSAGES)
+			messages.add(message);
+	}
+
+	void addParseNanos(long nanos) {
+		parseNanos += nanos;
+	}
+
+	void addValidateNanos(long nanos) {
+		validateNanos += nanos;
+	}
+
+	void addPersistNanos(long nanos) {
+		persistNanos += nanos;
+	}
+
+	void setTotalNanos(long nanos) {
+		totalNanos = nanos;
+	}
+
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	public long getRowsImported() {
+		return rowsImported;
+	}
+
+	public long getRowsRejected() {
+		return rowsRejected;
+	}
+
+	public int getBatches() {
+		return batches;
+	}
+
+	public long getParseMillis() {
+		return parseNanos / 1000000;
+	}
+
+	public long getValidateMillis() {
+		return validateNanos / 1000000;
+	}
+
+	public long getPersistMillis() {
+		return persistNanos / 1000000;
+	}
+
+	public long getTotalMillis() {
+		return totalNanos / 1000000;
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of rows imported per second
+	 */
+	public double getRowsPerSecond() {
+		return (totalNanos > 0) ? rowsImported * 1e9 / totalNanos : 0;
+	}
+
+	/**
+	 * @effects
+	 * 	return the messages of the first {@link #MAX_MESSAGES} rejected rows
+	 */
+	public List<String> getMessages() {
+		return messages;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ImportReport(read=%d, imported=%d, rejected=%d, batches=%d, "
+				+ "parse=%dms, validate=%dms, persist=%dms, total=%dms, %.1f rows/s)",
+				rowsRead, rowsImported, rowsRejected, batches,
+				getParseMillis(), getValidateMillis(), getPersistMillis(), getTotalMillis(), getRowsPerSecond());
+	}
+}
@@ -0,0 +1,245 @@
+package vn.com.personalfinance.services.expenseandincome.importer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.ConstraintViolationException;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import vn.com.personalfinance.services.account.Account;
+import vn.com.personalfinance.services.datasource.BatchWriter;
+import vn.com.personalfinance.services.expenseandincome.model.Category;
+import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
+import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
+import vn.com.personalfinance.services.model.LinkOwner;
+
+/**
+ * @overview
+ * 	Imports the daily expenses and daily incomes of a bank statement in CSV format,
+ * 	in three stages:
+ * 	<ol>
+ * 	<li>parse: the rows are read from the stream one at a time ({@link CsvParser})
+ * 	<li>validate: each row is turned into a daily expense or income, or rejected
+ * 		({@link StatementValidator})
+ * 	<li>persist: the valid rows are stored in batches of {@link #getBatchSize()},
+ * 		each inserted as JDBC batches in one transaction ({@link BatchWriter}); once
+ * 		a batch is committed, its objects are added to the object pool (and reported as
+ * 		new), linked to their accounts and categories, and the balance of each account
+ * 		is changed (and stored) once
+ * 	</ol>
+ *
+ * 	<p>Only one batch of rows is held by the importer at any time: after a batch is
+ * 	linked, the links of its accounts and categories are unloaded (see
+ * 	{@link LinkOwner}), so that its objects can be evicted from the object pool (see
+ * 	{@link vn.com.personalfinance.services.datasource.BoundedObjectPool}).
+ *
+ * @example
+ * <pre>
+ * 	ImportReport r = new StatementImporter().importFile(new File("statement.csv"));
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class StatementImporter {
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final String DEFAULT_DATE_PATTERN = "dd/MM/yyyy";
+
+	private int batchSize;
+	private String datePattern;
+
+	public StatementImporter(int batchSize, String datePattern) {
+		if (batchSize < 1) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "batchSize", batchSize });
+		}
+		this.batchSize = batchSize;
+		this.datePattern = datePattern;
+	}
+
+	public StatementImporter() {
+		this(DEFAULT_BATCH_SIZE, DEFAULT_DATE_PATTERN);
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public String getDatePattern() {
+		return datePattern;
+	}
+
+	/**
+	 * @effects
+	 * 	import the statement in the (UTF-8) file <tt>file</tt> and return the report
+	 * 	of the import.
+	 *
+	 * 	<p>throws IOException if fails to read the file; NotPossibleException if failed
+	 * 	to generate data source query; DataSourceException if fails to read from or
+	 * 	write to the data source
+	 */
+	public ImportReport importFile(File file) throws IOException, NotPossibleException, DataSourceException {
+		try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			return importStatement(in);
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	import the statement read from <tt>in</tt> and return the report of the import.
+	 * 	Rows that are invalid are rejected (and reported); the others are imported.
+	 *
+	 * 	<p>throws IOException if fails to read from <tt>in</tt>; NotPossibleException if
+	 * 	failed to generate data source query; DataSourceException if fails to read from
+	 * 	or write to the data source
+	 */
+	public ImportReport importStatement(Reader in) throws IOException, NotPossibleException, DataSourceException {
+		long start = System.nanoTime();
+		ImportReport report = new ImportReport();
+
+		DOMBasic dom = QRM.getInstance().getDom();
+		StatementValidator validator = new StatementValidator(dom, datePattern);
+		CsvParser parser = new CsvParser(new BufferedReader(in));
+		List<Object> batch = new ArrayList<>(batchSize);
+		// rows are only flushed by persist
+		try (BatchWriter writer = new BatchWriter(batchSize, Long.MAX_VALUE)) {
+			while (true) {
+				long t = System.nanoTime();
+				String[] fields = parser.next();
+				report.addParseNanos(System.nanoTime() - t);
+				if (fields == null)
+					break;
+
+				if (parser.getLineNumber() == 1 && StatementValidator.isHeader(fields))
+					continue;
+				report.rowRead();
+
+				t = System.nanoTime();
+				try {
+					batch.add(validator.validate(parser.getLineNumber(), fields));
+				} catch (ConstraintViolationException e) {
+					report.rowRejected(e.getMessage());
+				}
+				report.addValidateNanos(System.nanoTime() - t);
+
+				if (batch.size() == batchSize) {
+					persist(dom, writer, batch, report);
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				persist(dom, writer, batch, report);
+			}
+		} finally {
+			report.setTotalNanos(System.nanoTime() - start);
+		}
+
+		return report;
+	}
+
+	/**
+	 * @effects
+	 * 	store the objects of <tt>batch</tt> in one transaction; if it is committed, link
+	 * 	them to their accounts and categories, store the (changed) accounts and unload
+	 * 	the links of the accounts and categories; then clear <tt>batch</tt>.
+	 *
+	 * 	<p>throws DataSourceException if fails to write to the data source, in which
+	 * 	case no object of <tt>batch</tt> is stored, linked or added to the object pool
+	 */
+	private void persist(DOMBasic dom, BatchWriter writer, List<Object> batch, ImportReport report)
+			throws DataSourceException {
+		long t = System.nanoTime();
+
+		try {
+			for (Object o : batch) {
+				writer.add(o);
+			}
+			writer.flush();
+		} catch (DataSourceException | RuntimeException e) {
+			// the rows of the batch that were not rolled back by the failed flush
+			writer.discard();
+			batch.clear();
+			throw e;
+		}
+
+		// committed (and the objects pooled): one balance change per account and batch
+		Map<Account, List<DailyExpense>> accountExpenses = new LinkedHashMap<>();
+		Map<Account, List<DailyIncome>> accountIncomes = new LinkedHashMap<>();
+		Map<Category, List<DailyExpense>> categoryExpenses = new LinkedHashMap<>();
+		Map<Category, List<DailyIncome>> categoryIncomes = new LinkedHashMap<>();
+		for (Object o : batch) {
+			if (o instanceof DailyExpense) {
+				DailyExpense d = (DailyExpense) o;
+				group(accountExpenses, d.getAccount(), d);
+				group(categoryExpenses, d.getCategory(), d);
+			} else {
+				DailyIncome d = (DailyIncome) o;
+				group(accountIncomes, d.getAccount(), d);
+				group(categoryIncomes, d.getCategory(), d);
+			}
+		}
+
+		for (Map.Entry<Account, List<DailyExpense>> e : accountExpenses.entrySet()) {
+			e.getKey().addNewDailyExpense(e.getValue());
+		}
+		for (Map.Entry<Account, List<DailyIncome>> e : accountIncomes.entrySet()) {
+			e.getKey().addNewDailyIncome(e.getValue());
+		}
+		for (Map.Entry<Category, List<DailyExpense>> e : categoryExpenses.entrySet()) {
+			e.getKey().addNewDailyExpense(e.getValue());
+		}
+		for (Map.Entry<Category, List<DailyIncome>> e : categoryIncomes.entrySet()) {
+			e.getKey().addNewDailyIncome(e.getValue());
+		}
+		report.rowsImported(batch.size());
+		batch.clear();
+
+		List<Account> accounts = union(accountExpenses, accountIncomes);
+		for (Account a : accounts) {
+			dom.getOsm().updateObject(a, Account.class);
+		}
+
+		// the objects of the batch are no longer held by their owners
+		for (Account a : accounts) {
+			a.unloadLinks();
+		}
+		for (Category c : union(categoryExpenses, categoryIncomes)) {
+			c.unloadLinks();
+		}
+		report.addPersistNanos(System.nanoTime() - t);
+	}
+
+	private static <K, V> void group(Map<K, List<V>> groups, K key, V value) {
+		List<V> values = groups.get(key);
+		if (values == null) {
+			values = new ArrayList<>();
+			groups.put(key, values);
+		}
+		values.add(value);
+	}
+
+	/**
+	 * @effects
+	 * 	return the keys of <tt>m1</tt> and those of <tt>m2</tt> that are not in <tt>m1</tt>
+	 */
+	private static <K> List<K> union(Map<K, ?> m1, Map<K, ?> m2) {
+		List<K> keys = new ArrayList<>(m1.keySet());
+		for (K k : m2.keySet()) {
+			if (!m1.containsKey(k))
+				keys.add(k);
+		}
+		return keys;
+	}
+}
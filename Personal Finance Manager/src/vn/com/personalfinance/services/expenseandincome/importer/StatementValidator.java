@@ -0,0 +1,140 @@
+package vn.com.personalfinance.services.expenseandincome.importer;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.exceptions.ConstraintViolationException;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import vn.com.personalfinance.exceptions.DExCode;
+import vn.com.personalfinance.services.account.Account;
+import vn.com.personalfinance.services.expenseandincome.model.Category;
+import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
+import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
+
+/**
+ * @overview
+ * 	The validation stage of the statement import: turns the fields of a statement row
+ * 	<pre>
+ * 	type, date, amount, account, category, description
+ * 	</pre>
+ * 	into a {@link DailyExpense} (type <tt>expense</tt>) or a {@link DailyIncome}
+ * 	(type <tt>income</tt>). The account is given by its id or name, the category by
+ * 	its name; both must exist.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+class StatementValidator {
+	static final int NUM_FIELDS = 6;
+
+	private DateFormat dateFormat;
+
+	// the accounts by id and by name, and the categories by name
+	private Map<String, Account> accounts;
+	private Map<String, Category> categories;
+
+	/**
+	 * @effects
+	 * 	initialise this with the accounts and categories of <tt>dom</tt> and the date
+	 * 	pattern <tt>datePattern</tt>.
+	 *
+	 * 	<p>throws NotPossibleException if failed to generate data source query;
+	 * 	DataSourceException if fails to read from the data source
+	 */
+	StatementValidator(DOMBasic dom, String datePattern) throws NotPossibleException, DataSourceException {
+		dateFormat = new SimpleDateFormat(datePattern);
+		dateFormat.setLenient(false);
+
+		accounts = new HashMap<>();
+		Map<?, Account> as = dom.retrieveObjects(Account.class);
+		if (as != null) {
+			for (Account a : as.values()) {
+				accounts.put(a.getName(), a);
+				accounts.put(a.getId(), a);
+			}
+		}
+
+		categories = new HashMap<>();
+		Map<?, Category> cs = dom.retrieveObjects(Category.class);
+		if (cs != null) {
+			for (Category c : cs.values()) {
+				categories.put(c.getName(), c);
+			}
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	if <tt>fields</tt> is the header row of a statement
+	 * 		return true
+	 * 	else
+	 * 		return false
+	 */
+	static boolean isHeader(String[] fields) {
+		return fields.length > 0 && fields[0].equalsIgnoreCase("type");
+	}
+
+	/**
+	 * @effects
+	 * 	return the daily expense or daily income of the row <tt>fields</tt> at line
+	 * 	<tt>line</tt>.
+	 *
+	 * 	<p>throws ConstraintViolationException if the row is invalid
+	 */
+	Object validate(int line, String[] fields) throws ConstraintViolationException {
+		if (fields.length < NUM_FIELDS - 1 || fields.length > NUM_FIELDS)
+			throw invalid(line, "expected " + NUM_FIELDS + " fields but found " + fields.length);
+
+		boolean expense;
+		if (fields[0].equalsIgnoreCase("expense")) {
+			expense = true;
+		} else if (fields[0].equalsIgnoreCase("income")) {
+			expense = false;
+		} else {
+			throw invalid(line, "unknown type " + fields[0]);
+		}
+
+		Date date;
+		try {
+			date = dateFormat.parse(fields[1]);
+		} catch (ParseException e) {
+			throw invalid(line, "invalid date " + fields[1]);
+		}
+
+		double amount;
+		try {
+			amount = Double.parseDouble(fields[2]);
+		} catch (NumberFormatException e) {
+			throw invalid(line, "invalid amount " + fields[2]);
+		}
+		if (amount < 0 || Double.isNaN(amount) || Double.isInfinite(amount))
+			throw invalid(line, "invalid amount " + fields[2]);
+
+		Account account = accounts.get(fields[3]);
+		if (account == null)
+			throw invalid(line, "unknown account " + fields[3]);
+
+		Category category = categories.get(fields[4]);
+		if (category == null)
+			throw invalid(line, "unknown category " + fields[4]);
+
+		String description = (fields.length == NUM_FIELDS) ? fields[5] : "";
+
+		if (expense) {
+			return new DailyExpense(amount, date, category, account, description);
+		} else {
+			return new DailyIncome(amount, date, category, account, description);
+		}
+	}
+
+	private static ConstraintViolationException invalid(int line, String reason) {
+		return new ConstraintViolationException(DExCode.INVALID_STATEMENT_ROW, line, reason);
+	}
+}
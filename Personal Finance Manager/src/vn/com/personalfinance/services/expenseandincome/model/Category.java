@@ -1,9 +1,12 @@
 package vn.com.personalfinance.services.expenseandincome.model;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Map;
 
+import domainapp.basics.core.dodm.qrm.QRM;
 import domainapp.basics.exceptions.ConstraintViolationException;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.model.Oid;
 import domainapp.basics.model.meta.AttrRef;
 import domainapp.basics.model.meta.DAssoc;
 import domainapp.basics.model.meta.DAttr;
@@ -17,15 +20,27 @@ import domainapp.basics.model.meta.DAssoc.Associate;
 import domainapp.basics.model.meta.DAttr.Type;
 import domainapp.basics.util.Tuple;
 
+import vn.com.personalfinance.services.datasource.Indexed;
+import vn.com.personalfinance.services.datasource.IdSequence;
+import vn.com.personalfinance.services.model.LinkCollection;
+import vn.com.personalfinance.services.model.LinkOwner;
+
+/**
+ * Represents a category of daily expenses and daily incomes.
+ * 
+ * The daily expenses and daily incomes of the category are loaded on first access; 
+ * until then, links to them only update the counts.
+ */
 @DClass(schema="personalfinancemanager")
-public class Category {
+public class Category implements LinkOwner {
 	public static final String C_name = "name";
 
 	@DAttr(name="id",id=true,auto=true,length=6,mutable=false,type=Type.Integer)
 	private int id;
-	private static int idCounter;
+	private static final IdSequence ids = IdSequence.of(Category.class);
 	
 	@DAttr(name = C_name, type = Type.String, length = 20, optional = false, cid=true)
+	@Indexed
 	private String name;
 	
 	@DAttr(name = "dailyExpense", type = Type.Collection, optional = false,
@@ -59,17 +74,15 @@ public class Category {
 		this.id = nextId(id);
 		this.name = name;	
 		
-		dailyExpense = new ArrayList<>();
+		// the linked objects are loaded on first access (see getDailyExpense() etc.)
 		dailyExpenseCount = 0;
-		
-		dailyIncome = new ArrayList<>();
 		dailyIncomeCount = 0;
 	}
 	
 	@DOpt(type = DOpt.Type.LinkAdder)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean addDailyExpense(DailyExpense a) {
-		if (!this.dailyExpense.contains(a)) {
+		if (dailyExpense != null && !this.dailyExpense.contains(a)) {
 			dailyExpense.add(a);
 		}
 		// no other attributes changed
@@ -79,7 +92,8 @@ public class Category {
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewDailyExpense(DailyExpense a) {
-		dailyExpense.add(a);
+		if (dailyExpense != null)
+			dailyExpense.add(a);
 		dailyExpenseCount++;
 		// no other attributes changed
 		return false;
@@ -88,7 +102,7 @@ public class Category {
 	@DOpt(type = DOpt.Type.LinkAdder)
 	public boolean addDailyExpense(Collection<DailyExpense> dailyExpense) {
 		for (DailyExpense a : dailyExpense) {
-			if (!this.dailyExpense.contains(a)) {
+			if (this.dailyExpense != null && !this.dailyExpense.contains(a)) {
 				this.dailyExpense.add(a);
 			}
 		}
@@ -98,7 +112,8 @@ public class Category {
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewDailyExpense(Collection<DailyExpense> dailyExpense) {
-		this.dailyExpense.addAll(dailyExpense);
+		if (this.dailyExpense != null)
+			this.dailyExpense.addAll(dailyExpense);
 		dailyExpenseCount += dailyExpense.size();
 		// no other attributes changed
 		return false;
@@ -107,7 +122,8 @@ public class Category {
 	@DOpt(type = DOpt.Type.LinkRemover)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean removeDailyExpense(DailyExpense a) {
-		boolean removed = dailyExpense.remove(a);
+		// if not loaded, a is linked to this if its category is this
+		boolean removed = (dailyExpense != null) ? dailyExpense.remove(a) : this.equals(a.getCategory());
 
 		if (removed) {
 			dailyExpenseCount--;
@@ -119,7 +135,7 @@ public class Category {
 	@DOpt(type = DOpt.Type.LinkAdder)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean addDailyIncome(DailyIncome a) {
-		if (!this.dailyIncome.contains(a)) {
+		if (dailyIncome != null && !this.dailyIncome.contains(a)) {
 			dailyIncome.add(a);
 		}
 		// no other attributes changed
@@ -129,7 +145,8 @@ public class Category {
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewDailyIncome(DailyIncome a) {
-		dailyIncome.add(a);
+		if (dailyIncome != null)
+			dailyIncome.add(a);
 		dailyIncomeCount++;
 		// no other attributes changed
 		return false;
@@ -138,7 +155,7 @@ public class Category {
 	@DOpt(type = DOpt.Type.LinkAdder)
 	public boolean addDailyIncome(Collection<DailyIncome> dailyIncome) {
 		for (DailyIncome a : dailyIncome) {
-			if (!this.dailyIncome.contains(a)) {
+			if (this.dailyIncome != null && !this.dailyIncome.contains(a)) {
 				this.dailyIncome.add(a);
 			}
 		}
@@ -148,7 +165,8 @@ public class Category {
 	
 	@DOpt(type = DOpt.Type.LinkAdderNew)
 	public boolean addNewDailyIncome(Collection<DailyIncome> dailyIncome) {
-		this.dailyIncome.addAll(dailyIncome);
+		if (this.dailyIncome != null)
+			this.dailyIncome.addAll(dailyIncome);
 		dailyIncomeCount += dailyIncome.size();
 		// no other attributes changed
 		return false;
@@ -157,7 +175,8 @@ public class Category {
 	@DOpt(type = DOpt.Type.LinkRemover)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
 	public boolean removeDailyIncome(DailyIncome a) {
-		boolean removed = dailyIncome.remove(a);
+		// if not loaded, a is linked to this if its category is this
+		boolean removed = (dailyIncome != null) ? dailyIncome.remove(a) : this.equals(a.getCategory());
 
 		if (removed) {
 			dailyIncomeCount--;
@@ -168,7 +187,7 @@ public class Category {
 	
 	@DOpt(type=DOpt.Type.Setter)
 	public void setDailyExpense(Collection<DailyExpense> dailyExpense) {
-		this.dailyExpense = dailyExpense;
+		this.dailyExpense = LinkCollection.of(dailyExpense);
 		dailyExpenseCount = dailyExpense.size();
 	}
 	
@@ -185,14 +204,22 @@ public class Category {
 		this.dailyExpenseCount = dailyExpenseCount;
 	}
 	
+	/**
+	 * @effects
+	 * 	return the DailyExpense objects linked to this, loading them on first access
+	 *
+	 * 	<p>throws DataSourceException if fails to read from the data source
+	 */
 	@DOpt(type=DOpt.Type.Getter)
-	public Collection<DailyExpense> getDailyExpense() {
+	public Collection<DailyExpense> getDailyExpense() throws DataSourceException {
+		if (dailyExpense == null)
+			dailyExpense = loadLinks(DailyExpense.class, "category-has-dailyExpense");
 		return dailyExpense;
 	}
 	
 	@DOpt(type=DOpt.Type.Setter)
 	public void setDailyIncome(Collection<DailyIncome> dailyIncome) {
-		this.dailyIncome = dailyIncome;
+		this.dailyIncome = LinkCollection.of(dailyIncome);
 		dailyIncomeCount = dailyIncome.size();
 	}
 	
@@ -209,8 +236,16 @@ public class Category {
 		this.dailyIncomeCount = dailyIncomeCount;
 	}
 	
+	/**
+	 * @effects
+	 * 	return the DailyIncome objects linked to this, loading them on first access
+	 *
+	 * 	<p>throws DataSourceException if fails to read from the data source
+	 */
 	@DOpt(type=DOpt.Type.Getter)
-	public Collection<DailyIncome> getDailyIncome() {
+	public Collection<DailyIncome> getDailyIncome() throws DataSourceException {
+		if (dailyIncome == null)
+			dailyIncome = loadLinks(DailyIncome.class, "category-has-dailyIncome");
 		return dailyIncome;
 	}
 	
@@ -229,6 +264,30 @@ public class Category {
 		return id;
 	}
 
+	/**
+	 * @effects 
+	 *  return a new collection of the objects of <tt>assocClass</tt> that are linked to 
+	 *  this by the association <tt>ascName</tt>, read from the object pool or the 
+	 *  data source.
+	 *  
+	 *  <p>throws DataSourceException if fails to read from the data source
+	 */
+	private <T> Collection<T> loadLinks(Class<T> assocClass, String ascName) throws DataSourceException {
+		Map<Oid, T> linked = QRM.getInstance().getDom().retrieveAssociatedObjects(this, Category.class,
+				assocClass, ascName);
+		
+		Collection<T> links = new LinkCollection<>();
+		if (linked != null)
+			links.addAll(linked.values());
+		return links;
+	}
+	
+	@Override
+	public void unloadLinks() {
+		dailyExpense = null;
+		dailyIncome = null;
+	}
+
 	@Override
 	  public String toString() {
 	    return "Category("+getId()+","+getName()+")";
@@ -258,12 +317,10 @@ public class Category {
 
 	private static int nextId(Integer currID) {
 		if (currID == null) {
-			idCounter++;
-			return idCounter;
+			return ids.next();
 		} else {
 			int num = currID.intValue();
-			if (num > idCounter)
-				idCounter = num;
+			ids.advanceTo(num);
 			return currID;
 		}
 	}
@@ -282,8 +339,7 @@ public class Category {
 			// TODO: update this for the correct attribute if there are more than one auto
 			// attributes of this class
 			int maxIdVal = (Integer) maxVal;
-			if (maxIdVal > idCounter)
-				idCounter = maxIdVal;
+			ids.advanceTo(maxIdVal);
 		}
 	}	
 }
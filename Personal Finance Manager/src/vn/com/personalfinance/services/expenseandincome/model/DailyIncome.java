@@ -16,10 +16,13 @@ import domainapp.basics.model.meta.DAssoc.Associate;
 import domainapp.basics.model.meta.DAttr.Type;
 import domainapp.basics.util.Tuple;
 import vn.com.personalfinance.services.account.Account;
+import vn.com.personalfinance.services.account.Money;
 import vn.com.personalfinance.services.expenseandincome.report.ExpenseAndIncomeByCategoryReport;
 import vn.com.personalfinance.services.expenseandincome.report.ExpenseAndIncomeByDateReport;
 import vn.com.personalfinance.services.expenseandincome.report.ExpenseAndIncomeByMonthReport;
 import vn.com.personalfinance.services.expenseandincome.report.ExpenseAndIncomeByYearReport;
+import vn.com.personalfinance.services.datasource.Indexed;
+import vn.com.personalfinance.services.datasource.IdSequence;
 
 /**
  * Represents income.
@@ -40,12 +43,13 @@ public class DailyIncome {
 	public static final String I_rptExpenseAndIncomeByMonth = "rptExpenseAndIncomeByMonth";
 	public static final String I_rptExpenseAndIncomeByYear = "rptExpenseAndIncomeByYear";
 	public static final String I_dateToString = "dateToString";
+	public static final String I_dateKey = "dateKey";
 
 	// attributes of daily expense
 	@DAttr(name = I_id, id = true, type = Type.String, auto = true, length = 6, mutable = false, optional = false)
 	private String id;
 	// static variable to keep track of account id
-	public static int idCounter = 0;
+	private static final IdSequence ids = IdSequence.of(DailyIncome.class);
 
 	@DAttr(name = I_amount, type = Type.Double, length = 15, optional = false, min = 0)
 	private double amount;
@@ -54,7 +58,13 @@ public class DailyIncome {
 	private Date date;
 	
 	@DAttr(name = I_dateToString, type = Type.String, auto = true, length = 15, mutable = false, serialisable =true)
+	@Indexed
 	private String dateToString;
+	
+	// the sortable key (yyyyMMdd) of date, used by the date range queries of the reports
+	@DAttr(name = I_dateKey, type = Type.Integer, auto = true, length = 8, mutable = false, serialisable = true, derivedFrom = {I_date})
+	@Indexed
+	private int dateKey;
 
 	@DAttr(name = I_category, type = Type.Domain, optional = false)
 	@DAssoc(ascName = "category-has-dailyIncome", role = "dailyIncome", ascType = AssocType.One2Many, endType = AssocEndType.Many, associate = @Associate(type = Category.class, cardMin = 1, cardMax = 1), dependsOn = true)
@@ -84,25 +94,28 @@ public class DailyIncome {
 	public DailyIncome(@AttrRef("amount") Double amount, @AttrRef("date") Date date, 
 			@AttrRef("category") Category category, @AttrRef("account") Account account,
 			@AttrRef("description") String description) {
-		this(null, amount, date, null, category, account, description);
+		this(null, amount, date, null, null, category, account, description);
 	}
 
 	// a shared constructor that is invoked by other constructors
 	@DOpt(type = DOpt.Type.DataSourceConstructor)
-	public DailyIncome(String id, Double amount, Date date, String dateToString, Category category, Account account,
+	public DailyIncome(String id, Double amount, Date date, String dateToString, Integer dateKey, Category category, Account account,
 			String description) {
 		// generate an id
 		this.id = nextID(id);
 
 		// assign other values
-		this.amount = amount;
+		this.amount = Money.round(amount);
 		this.date = date;
 		this.dateToString = dateToString;
+		if (dateKey != null)
+			this.dateKey = dateKey;
 		this.category = category;
 		this.account = account;
 		this.description = description;
 
 		updateDateToString();
+		updateDateKey();
 //		computeNewBalance();
 	}
 	// getter and setter method
@@ -116,7 +129,7 @@ public class DailyIncome {
 	}
 
 	public void setAmount(double amount) {
-		this.amount = amount;
+		this.amount = Money.round(amount);
 	}
 
 	public Date getDate() {
@@ -127,6 +140,7 @@ public class DailyIncome {
 		this.date = date;
 		
 		updateDateToString();
+		updateDateKey();
 	}
 
 	public Category getCategory() {
@@ -173,11 +187,14 @@ public class DailyIncome {
 		return dateToString;
 	}
 	
+	public int getDateKey() {
+		return dateKey;
+	}
+	
 	// automatically generate the next account id
 	public String nextID(String id) throws ConstraintViolationException {
 		if (id == null) { // generate a new id
-			idCounter++;
-			return "I" + idCounter;
+			return "I" + ids.next();
 		} else {
 			// update id
 			int num;
@@ -187,9 +204,7 @@ public class DailyIncome {
 				throw new ConstraintViolationException(ConstraintViolationException.Code.INVALID_VALUE, e, new Object[] { id });
 			}
 
-			if (num > idCounter) {
-				idCounter = num;
-			}
+			ids.advanceTo(num);
 
 			return id;
 		}
@@ -220,7 +235,7 @@ public class DailyIncome {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + Integer.parseInt(id.substring(1));
+		result = prime * result + ((id == null) ? 0 : id.hashCode());
 		return result;
 	}
 
@@ -256,9 +271,7 @@ public class DailyIncome {
 				try {
 					int maxIDNum = Integer.parseInt(maxID.substring(1));
 
-					if (maxIDNum > idCounter) {
-						idCounter = maxIDNum;
-					}
+					ids.advanceTo(maxIDNum);
 
 				} catch (RuntimeException e) {
 					throw new ConstraintViolationException(ConstraintViolationException.Code.INVALID_VALUE, e,
@@ -274,4 +287,10 @@ public class DailyIncome {
 		DateFormat dateFormat = new SimpleDateFormat("ddMMyyyy");
 		this.dateToString = dateFormat.format(date);
 	}
+	
+	@DOpt(type=DOpt.Type.DerivedAttributeUpdater)
+	@AttrRef(value=I_dateKey)
+	public void updateDateKey() {
+		this.dateKey = DateKey.of(date);
+	}
 }
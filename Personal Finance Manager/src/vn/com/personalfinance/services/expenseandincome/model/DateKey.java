@@ -0,0 +1,69 @@
+package vn.com.personalfinance.services.expenseandincome.model;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * @overview
+ * 	Sortable integer keys of dates in the form <tt>yyyyMMdd</tt> (e.g. 20210315),
+ * 	so that all the dates of a day, month or year fall into one half-open range
+ * 	of keys.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class DateKey {
+
+	private DateKey() {
+		// static methods only
+	}
+
+	/**
+	 * @effects
+	 * 	return the key of <tt>date</tt>
+	 */
+	public static int of(Date date) {
+		Calendar c = Calendar.getInstance();
+		c.setTime(date);
+		return of(c.get(Calendar.YEAR), c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH));
+	}
+
+	/**
+	 * @requires 1 <= month <= 12 /\ 1 <= day <= 31
+	 * @effects
+	 * 	return the key of the date <tt>day/month/year</tt>
+	 */
+	public static int of(int year, int month, int day) {
+		return year * 10000 + month * 100 + day;
+	}
+
+	/**
+	 * @effects
+	 * 	return <tt>[from, to)</tt> such that the keys of the dates of the day of
+	 * 	<tt>date</tt> are exactly those in the range
+	 */
+	public static int[] dayRange(Date date) {
+		int key = of(date);
+		return new int[] { key, key + 1 };
+	}
+
+	/**
+	 * @requires 1 <= month <= 12
+	 * @effects
+	 * 	return <tt>[from, to)</tt> such that the keys of the dates of
+	 * 	<tt>month/year</tt> are exactly those in the range
+	 */
+	public static int[] monthRange(int year, int month) {
+		return new int[] { of(year, month, 0), of(year, month + 1, 0) };
+	}
+
+	/**
+	 * @effects
+	 * 	return <tt>[from, to)</tt> such that the keys of the dates of <tt>year</tt>
+	 * 	are exactly those in the range
+	 */
+	public static int[] yearRange(int year) {
+		return new int[] { of(year, 0, 0), of(year + 1, 0, 0) };
+	}
+}
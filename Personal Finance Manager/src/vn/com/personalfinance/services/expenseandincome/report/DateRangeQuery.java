@@ -0,0 +1,123 @@
+package vn.com.personalfinance.services.expenseandincome.report;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.Oid;
+import domainapp.basics.model.query.Expression.Op;
+import domainapp.basics.model.query.Query;
+import domainapp.basics.model.query.QueryToolKit;
+import vn.com.personalfinance.services.datasource.DateKeyBackfill;
+import vn.com.personalfinance.services.datasource.SchemaIndexes;
+import vn.com.personalfinance.services.expenseandincome.model.DateKey;
+import vn.com.personalfinance.services.report.ReportCache;
+
+/**
+ * @overview
+ * 	Retrieves the objects of a domain class whose date key (see
+ * 	{@link vn.com.personalfinance.services.expenseandincome.model.DateKey}) falls
+ * 	into a half-open range <tt>[from, to)</tt>.
+ *
+ * 	<p>The first time a class is queried, the date keys of its rows that were stored
+ * 	without one are filled in (see {@link DateKeyBackfill}) and a B-tree index is
+ * 	created on its date key column (if the data source does not have it yet, see
+ * 	{@link SchemaIndexes}), so that the range predicates see all the rows and are
+ * 	answered by an index scan instead of a table scan.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+class DateRangeQuery {
+	// the classes whose date key column is known to be indexed
+	private static final Set<Class<?>> indexed = new HashSet<>();
+
+	private DateRangeQuery() {
+		// static methods only
+	}
+
+	/**
+	 * @effects
+	 * 	return the objects of <tt>c</tt> whose attribute <tt>dateKeyAttrib</tt> (the key of
+	 * 	<tt>dateAttrib</tt>) is in <tt>[range[0], range[1])</tt>, or <tt>null</tt> if there
+	 * 	are none.
+	 *
+	 * 	<p>throws NotPossibleException if failed to generate data source query;
+	 * 	DataSourceException if fails to read from the data source
+	 */
+	static <T> Map<Oid, T> retrieve(Class<T> c, String dateAttrib, String dateKeyAttrib, int[] range)
+			throws NotPossibleException, DataSourceException {
+		QRM qrm = QRM.getInstance();
+		DSMBasic dsm = qrm.getDsm();
+
+		ensureIndex(qrm, c, dateAttrib, dateKeyAttrib);
+
+		Query<?> q = QueryToolKit.createSearchQuery(dsm, c, new String[] { dateKeyAttrib, dateKeyAttrib },
+				new Op[] { Op.GTEQ, Op.LT },
+				new Object[] { range[0], range[1] });
+
+		return qrm.getDom().retrieveObjects(c, q);
+	}
+
+	/**
+	 * @effects
+	 * 	return the integer value of the report input <tt>value</tt> of the attribute
+	 * 	<tt>name</tt>.
+	 *
+	 * 	<p>throws NotPossibleException if <tt>value</tt> is not an integer
+	 */
+	static int toInt(String name, String value) throws NotPossibleException {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (RuntimeException e) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT, e,
+					new Object[] { name, value });
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source of <tt>c</tt> is relational
+	 * 		fill in the missing keys of <tt>dateKeyAttrib</tt> from <tt>dateAttrib</tt>
+	 * 		and, if the column of <tt>dateKeyAttrib</tt> is not indexed, create the index
+	 */
+	static synchronized void ensureIndex(QRM qrm, Class<?> c, String dateAttrib, String dateKeyAttrib)
+			throws DataSourceException {
+		if (indexed.contains(c))
+			return;
+
+		DateKeyBackfill.ensureDateKeys(c, dateAttrib, dateKeyAttrib);
+		SchemaIndexes.ensureIndex(c, dateKeyAttrib);
+		indexed.add(c);
+	}
+
+	/**
+	 * @overview
+	 * 	The scope of the objects whose dates have keys in <tt>[from, to)</tt>.
+	 */
+	static class DateScope extends ReportCache.Scope {
+		private int from;
+		private int to;
+
+		DateScope(String dateAttrib, int[] range) {
+			super(dateAttrib);
+			from = range[0];
+			to = range[1];
+		}
+
+		@Override
+		public boolean covers(Object value) {
+			if (!(value instanceof Date))
+				return false;
+
+			int key = DateKey.of((Date) value);
+			return key >= from && key < to;
+		}
+	}
+}
@@ -1,13 +1,10 @@
 package vn.com.personalfinance.services.expenseandincome.report;
 
 import java.util.Collection;
-import java.util.Map;
 
-import domainapp.basics.core.dodm.dsm.DSMBasic;
 import domainapp.basics.core.dodm.qrm.QRM;
 import domainapp.basics.exceptions.DataSourceException;
 import domainapp.basics.exceptions.NotPossibleException;
-import domainapp.basics.model.Oid;
 import domainapp.basics.model.meta.AttrRef;
 import domainapp.basics.model.meta.DAssoc;
 import domainapp.basics.model.meta.DAssoc.AssocEndType;
@@ -19,13 +16,13 @@ import domainapp.basics.model.meta.DClass;
 import domainapp.basics.model.meta.DOpt;
 import domainapp.basics.model.meta.MetaConstants;
 import domainapp.basics.model.meta.Select;
-import domainapp.basics.model.query.Expression.Op;
-import domainapp.basics.model.query.Query;
-import domainapp.basics.model.query.QueryToolKit;
 import domainapp.basics.modules.report.model.meta.Output;
+import vn.com.personalfinance.services.account.Money;
 import vn.com.personalfinance.services.expenseandincome.model.Category;
 import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
 import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
+import vn.com.personalfinance.services.report.AggregateQuery;
+import vn.com.personalfinance.services.report.ReportQueryExecutor;
 
 /**
  * @overview 
@@ -55,6 +52,7 @@ public class ExpenseAndIncomeByCategoryReport {
 	cardMax = MetaConstants.CARD_MORE))
 	@Output
 	private Collection<DailyExpense> dailyExpense;
+	private boolean dailyExpenseLoaded;
 
 	/** output: number of daily expenses found (if any), derived from {@link #dailyExpense} */
 	@DAttr(name = "numDailyExpense", type = Type.Integer, length = 5, auto = true, mutable = false)
@@ -71,6 +69,7 @@ public class ExpenseAndIncomeByCategoryReport {
 	cardMax = MetaConstants.CARD_MORE))
 	@Output
 	private Collection<DailyIncome> dailyIncome;
+	private boolean dailyIncomeLoaded;
 
 	/** output: number of daily incomes found (if any), derived from {@link #dailyIncome} */
 	@DAttr(name = "numDailyIncome", type = Type.Integer, length = 5, auto = true, mutable = false)
@@ -102,8 +101,8 @@ public class ExpenseAndIncomeByCategoryReport {
 	    
 	    this.category = category;
 	    
-	    doReportQuery1();
-	    doReportQuery2();
+	    // the expenses and the incomes are queried concurrently
+	    ReportQueryExecutor.getInstance().runAll(this::doReportQuery1, this::doReportQuery2);
 	  }
 
 	/**
@@ -135,8 +134,8 @@ public class ExpenseAndIncomeByCategoryReport {
 	public void setCategory(String category) throws NotPossibleException, DataSourceException {
 		this.category = category;
 
-		doReportQuery1();
-		doReportQuery2();
+		// the expenses and the incomes are queried concurrently
+		ReportQueryExecutor.getInstance().runAll(this::doReportQuery1, this::doReportQuery2);
 	}
 
 	/**
@@ -156,34 +155,33 @@ public class ExpenseAndIncomeByCategoryReport {
 	@DOpt(type = DOpt.Type.DerivedAttributeUpdater)
 	@AttrRef(value = "dailyExpense")
 	public void doReportQuery1() throws NotPossibleException, DataSourceException {
-		// the query manager instance
-
-		QRM qrm = QRM.getInstance();
-
-		DSMBasic dsm = qrm.getDsm();
-
-		// TODO: to conserve memory cache the query and only change the query parameter
-		// value(s)
-		Query q1 = QueryToolKit.createSimpleJoinQuery(dsm, DailyExpense.class, Category.class,
-				DailyExpense.E_category, 
-				Category.C_name, 
-		        Op.MATCH, 
-		        "%"+category+"%");
-
-		Map<Oid, DailyExpense> result1 = qrm.getDom().retrieveObjects(DailyExpense.class, q1);
-		
-		if (result1 != null) {
-			dailyExpense = result1.values();
-			numDailyExpense = dailyExpense.size();
-			
-			double tempAmount = 0.0;
-			for(DailyExpense d: dailyExpense) {
-				tempAmount+=d.getAmount();
-			}
-			totalExpense = tempAmount;
+		if (AggregateQuery.isSupported()) {
+			// the number and the total of the expenses are computed by the data source
+			AggregateQuery q = new AggregateQuery(DailyExpense.class)
+					.match(DailyExpense.E_category, Category.class, Category.C_name, category)
+					.count("cnt");
+			q.sum("total", q.column(DailyExpense.E_amount));
+			AggregateQuery.Row r = q.executeOne();
+
+			numDailyExpense = r.getInt("cnt");
+			totalExpense = Money.toMajor(r.getMinor("total"));
+
+			// the expenses are only retrieved when they are viewed
+			dailyExpense = null;
+			dailyExpenseLoaded = (numDailyExpense == 0);
 		} else {
-			// no data found: reset output
-			resetOutput1();
+			dailyExpenseLoaded = false;
+			numDailyExpense = 0;
+			// summed in minor units, so that the total does not drift
+			long tempAmount = 0;
+			Collection<DailyExpense> result1 = getDailyExpense();
+			if (result1 != null) {
+				numDailyExpense = result1.size();
+				for (DailyExpense d : result1) {
+					tempAmount += Money.toMinor(d.getAmount());
+				}
+			}
+			totalExpense = Money.toMajor(tempAmount);
 		}
 	}
 	
@@ -204,53 +202,36 @@ public class ExpenseAndIncomeByCategoryReport {
 	@DOpt(type = DOpt.Type.DerivedAttributeUpdater)
 	@AttrRef(value = "dailyIncome")
 	public void doReportQuery2() throws NotPossibleException, DataSourceException {
-		// the query manager instance
-
-		QRM qrm = QRM.getInstance();
-
-		DSMBasic dsm = qrm.getDsm();
-
-		// TODO: to conserve memory cache the query and only change the query parameter
-		// value(s)
-		Query q2 = QueryToolKit.createSimpleJoinQuery(dsm, DailyIncome.class, Category.class,
-				DailyIncome.I_category, 
-				Category.C_name, 
-		        Op.MATCH, 
-		        "%"+category+"%");
-
-		Map<Oid, DailyIncome> result2 = qrm.getDom().retrieveObjects(DailyIncome.class, q2);
-		
-		if (result2 != null) {	
-			dailyIncome = result2.values();
-			numDailyIncome = dailyIncome.size();
-			
-			double tempAmount = 0.0;
-			for(DailyIncome d: dailyIncome) {
-				tempAmount+=d.getAmount();
-			}
-			totalIncome = tempAmount;
+		if (AggregateQuery.isSupported()) {
+			// the number and the total of the incomes are computed by the data source
+			AggregateQuery q = new AggregateQuery(DailyIncome.class)
+					.match(DailyIncome.I_category, Category.class, Category.C_name, category)
+					.count("cnt");
+			q.sum("total", q.column(DailyIncome.I_amount));
+			AggregateQuery.Row r = q.executeOne();
+
+			numDailyIncome = r.getInt("cnt");
+			totalIncome = Money.toMajor(r.getMinor("total"));
+
+			// the incomes are only retrieved when they are viewed
+			dailyIncome = null;
+			dailyIncomeLoaded = (numDailyIncome == 0);
 		} else {
-			// no data found: reset output
-			resetOutput2();
+			dailyIncomeLoaded = false;
+			numDailyIncome = 0;
+			// summed in minor units, so that the total does not drift
+			long tempAmount = 0;
+			Collection<DailyIncome> result2 = getDailyIncome();
+			if (result2 != null) {
+				numDailyIncome = result2.size();
+				for (DailyIncome d : result2) {
+					tempAmount += Money.toMinor(d.getAmount());
+				}
+			}
+			totalIncome = Money.toMajor(tempAmount);
 		}
 	}
 
-	/**
-	 * @effects reset all output attributes to their initial values
-	 */
-	private void resetOutput1() {
-		dailyExpense = null;
-		numDailyExpense = 0;
-	}
-	
-	/**
-	 * @effects reset all output attributes to their initial values
-	 */
-	private void resetOutput2() {
-		dailyIncome = null;
-		numDailyIncome = 0;
-	}
-
 	/**
 	 * A link-adder method for {@link #dailyExpense}, required for the object form to
 	 * function. However, this method is empty because dailyExpense have already be
@@ -264,9 +245,16 @@ public class ExpenseAndIncomeByCategoryReport {
 	}
 
 	/**
-	 * @effects return dailyExpense
+	 * @effects return dailyExpense, retrieving them from the data source the first
+	 * time that they are viewed
 	 */
-	public Collection<DailyExpense> getDailyExpense() {
+	public Collection<DailyExpense> getDailyExpense() throws NotPossibleException, DataSourceException {
+		if (!dailyExpenseLoaded) {
+			// large results are read a page at a time while they are viewed
+			dailyExpense = ExpenseAndIncomeQuery.expensesByCategory(ExpenseAndIncomeByCategoryReport.class,
+					category, numDailyExpense);
+			dailyExpenseLoaded = true;
+		}
 		return dailyExpense;
 	}
 
@@ -290,9 +278,16 @@ public class ExpenseAndIncomeByCategoryReport {
 	}
 
 	/**
-	 * @effects return dailyIncome
+	 * @effects return dailyIncome, retrieving them from the data source the first
+	 * time that they are viewed
 	 */
-	public Collection<DailyIncome> getDailyIncome() {
+	public Collection<DailyIncome> getDailyIncome() throws NotPossibleException, DataSourceException {
+		if (!dailyIncomeLoaded) {
+			// large results are read a page at a time while they are viewed
+			dailyIncome = ExpenseAndIncomeQuery.incomesByCategory(ExpenseAndIncomeByCategoryReport.class,
+					category, numDailyIncome);
+			dailyIncomeLoaded = true;
+		}
 		return dailyIncome;
 	}
 
@@ -6,7 +6,6 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
 
-import domainapp.basics.core.dodm.dsm.DSMBasic;
 import domainapp.basics.core.dodm.qrm.QRM;
 import domainapp.basics.exceptions.DataSourceException;
 import domainapp.basics.exceptions.NotPossibleException;
@@ -22,13 +21,11 @@ import domainapp.basics.model.meta.DClass;
 import domainapp.basics.model.meta.DOpt;
 import domainapp.basics.model.meta.MetaConstants;
 import domainapp.basics.model.meta.Select;
-import domainapp.basics.model.query.Expression.Op;
-import domainapp.basics.model.query.Query;
-import domainapp.basics.model.query.QueryToolKit;
 import domainapp.basics.modules.report.model.meta.Output;
 import domainapp.basics.util.cache.StateHistory;
 import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
 import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
+import vn.com.personalfinance.services.expenseandincome.model.DateKey;
 
 /**
  * @overview 
@@ -173,20 +170,9 @@ public class ExpenseAndIncomeByDateReport {
 	@DOpt(type = DOpt.Type.DerivedAttributeUpdater)
 	@AttrRef(value = "dailyExpense")
 	public void doReportQuery1() throws NotPossibleException, DataSourceException {
-		// the query manager instance
-
-		QRM qrm = QRM.getInstance();
-
-		DSMBasic dsm = qrm.getDsm();
-
-		// TODO: to conserve memory cache the query and only change the query parameter
-		// value(s)
-		Query q1 = QueryToolKit.createSearchQuery(dsm, DailyExpense.class, new String[] { DailyExpense.E_dateToString },
-				new Op[] { Op.MATCH },
-
-				new Object[] { "%"+dateToString+"%" });
-
-		Map<Oid, DailyExpense> result1 = qrm.getDom().retrieveObjects(DailyExpense.class, q1);
+		// the expenses of the day of date
+		Map<Oid, DailyExpense> result1 = ExpenseAndIncomeQuery.byDateRange(ExpenseAndIncomeByDateReport.class,
+				DateKey.dayRange(date)).getExpenses();
 
 		if (!(result1 == null)) {
 			// update the main output data
@@ -219,20 +205,9 @@ public class ExpenseAndIncomeByDateReport {
 	@DOpt(type = DOpt.Type.DerivedAttributeUpdater)
 	@AttrRef(value = "dailyIncome")
 	public void doReportQuery2() throws NotPossibleException, DataSourceException {
-		// the query manager instance
-
-		QRM qrm = QRM.getInstance();
-
-		DSMBasic dsm = qrm.getDsm();
-
-		// TODO: to conserve memory cache the query and only change the query parameter
-		// value(s)
-		Query q2 = QueryToolKit.createSearchQuery(dsm, DailyIncome.class, new String[] { DailyIncome.I_dateToString },
-				new Op[] { Op.MATCH },
-
-				new Object[] { "%"+dateToString+"%" });
-
-		Map<Oid, DailyIncome> result2 = qrm.getDom().retrieveObjects(DailyIncome.class, q2);
+		// the incomes of the day of date
+		Map<Oid, DailyIncome> result2 = ExpenseAndIncomeQuery.byDateRange(ExpenseAndIncomeByDateReport.class,
+				DateKey.dayRange(date)).getIncomes();
 
 		if (!(result2 == null)) {
 			// update the main output data
@@ -1,12 +1,9 @@
 package vn.com.personalfinance.services.expenseandincome.report;
 import java.util.Collection;
-import java.util.Map;
 
-import domainapp.basics.core.dodm.dsm.DSMBasic;
 import domainapp.basics.core.dodm.qrm.QRM;
 import domainapp.basics.exceptions.DataSourceException;
 import domainapp.basics.exceptions.NotPossibleException;
-import domainapp.basics.model.Oid;
 import domainapp.basics.model.meta.AttrRef;
 import domainapp.basics.model.meta.DAssoc;
 import domainapp.basics.model.meta.DAssoc.AssocEndType;
@@ -18,12 +15,12 @@ import domainapp.basics.model.meta.DClass;
 import domainapp.basics.model.meta.DOpt;
 import domainapp.basics.model.meta.MetaConstants;
 import domainapp.basics.model.meta.Select;
-import domainapp.basics.model.query.Expression.Op;
-import domainapp.basics.model.query.Query;
-import domainapp.basics.model.query.QueryToolKit;
 import domainapp.basics.modules.report.model.meta.Output;
 import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
 import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
+import vn.com.personalfinance.services.expenseandincome.model.DateKey;
+import vn.com.personalfinance.services.expenseandincome.rollup.ExpenseAndIncomeRollup;
+import vn.com.personalfinance.services.expenseandincome.rollup.RollupTotals;
 /**
  * @overview 
  * 	Represent the reports about daily expense by date.
@@ -52,11 +49,15 @@ public class ExpenseAndIncomeByYearReport {
 	@DAssoc(ascName = "expenseAndIncome-by-month-report-has-dailyExpense", role = "report", ascType = AssocType.One2Many, endType = AssocEndType.One, associate = @Associate(type = DailyExpense.class, cardMin = 0, cardMax = MetaConstants.CARD_MORE))
 	@Output
 	private Collection<DailyExpense> dailyExpense;
+	private boolean dailyExpenseLoaded;
+	private int numDailyExpense;
 	
 	@DAttr(name = R_dailyIncome, type = Type.Collection, optional = false, mutable = false, serialisable = false, filter = @Select(clazz = DailyIncome.class), derivedFrom = {"year"})
 	@DAssoc(ascName = "expenseAndIncome-by-month-report-has-dailyIncome", role = "report", ascType = AssocType.One2Many, endType = AssocEndType.One, associate = @Associate(type = DailyIncome.class, cardMin = 0, cardMax = MetaConstants.CARD_MORE))
 	@Output
 	private Collection<DailyIncome> dailyIncome;
+	private boolean dailyIncomeLoaded;
+	private int numDailyIncome;
 
 	/**
 	 * output: number of daily expenses found (if any), derived from
@@ -145,93 +146,31 @@ public class ExpenseAndIncomeByYearReport {
 	@DOpt(type = DOpt.Type.DerivedAttributeUpdater)
 	@AttrRef(value = "dailyExpense")
 	public void doReportQueryDailyExpense() throws NotPossibleException, DataSourceException {
-		// the query manager instance
+		// the totals of the year are read from the rollup
+		RollupTotals totals = ExpenseAndIncomeRollup.getInstance().getYearTotals(DateRangeQuery.toInt(R_year, year));
 
-		QRM qrm = QRM.getInstance();
+		totalExpense = totals.getExpenseSum();
+		numDailyTransaction = totals.getExpenseCount() + totals.getIncomeCount();
 
-		DSMBasic dsm = qrm.getDsm();
-
-		// TODO: to conserve memory cache the query and only change the query parameter
-		// value(s)
-		Query q = QueryToolKit.createSearchQuery(dsm, DailyExpense.class, new String[] { DailyExpense.E_dateToString },
-				new Op[] { Op.MATCH },
-				new Object[] { "%"+year+"%" });
-
-		Map<Oid, DailyExpense> result = qrm.getDom().retrieveObjects(DailyExpense.class, q);
-
-		if (!(result == null)) {
-			// update the main output data
-			dailyExpense = result.values();
-			// update other output (if any)
-			numDailyTransaction += dailyExpense.size();
-			
-			if(numDailyTransaction == 0) {
-				totalExpense = 0;
-			} else {
-				double temp = 0.0;
-				for(DailyExpense d: dailyExpense) {
-					temp+=d.getAmount();
-				}
-				totalExpense = temp;
-			}
-		} else {
-			// no data found: reset output
-			resetOutputDailyExpense();
-		}
+		// the expenses are only retrieved when they are viewed
+		dailyExpense = null;
+		numDailyExpense = totals.getExpenseCount();
+		dailyExpenseLoaded = (numDailyExpense == 0);
 	}
 	
 	@DOpt(type = DOpt.Type.DerivedAttributeUpdater)
 	@AttrRef(value = "dailyIncome")
 	public void doReportQueryDailyIncome() throws NotPossibleException, DataSourceException {
-		// the query manager instance
-
-		QRM qrm = QRM.getInstance();
-
-		DSMBasic dsm = qrm.getDsm();
-
-		// TODO: to conserve memory cache the query and only change the query parameter
-		// value(s)
-		Query q = QueryToolKit.createSearchQuery(dsm, DailyIncome.class, new String[] { DailyIncome.I_dateToString },
-				new Op[] { Op.MATCH },
-
-				new Object[] { "%"+year+"%" });
-
-		Map<Oid, DailyIncome> result = qrm.getDom().retrieveObjects(DailyIncome.class, q);
+		// the totals of the year are read from the rollup
+		RollupTotals totals = ExpenseAndIncomeRollup.getInstance().getYearTotals(DateRangeQuery.toInt(R_year, year));
 
-		if (!(result == null)) {
-			// update the main output data
-			dailyIncome = result.values();
-			// update other output (if any)
-			numDailyTransaction += dailyIncome.size();
+		totalIncome = totals.getIncomeSum();
+		numDailyTransaction = totals.getExpenseCount() + totals.getIncomeCount();
 
-			if(numDailyTransaction == 0) {
-				totalIncome = 0;
-			} else {
-				double temp = 0.0;
-				for(DailyIncome d: dailyIncome) {
-					temp+=d.getAmount();
-				}
-				totalIncome = temp;
-			}
-		} else {
-			// no data found: reset output
-			resetOutputDailyIncome();
-		}
-	}
-
-	/**
-	 * @effects reset all output attributes to their initial values
-	 */
-	private void resetOutputDailyExpense() {
-		dailyExpense = null;
-		numDailyTransaction = 0;
-		totalExpense = 0;
-	}
-	
-	private void resetOutputDailyIncome() {
+		// the incomes are only retrieved when they are viewed
 		dailyIncome = null;
-		numDailyTransaction = 0;
-		totalIncome = 0;
+		numDailyIncome = totals.getIncomeCount();
+		dailyIncomeLoaded = (numDailyIncome == 0);
 	}
 
 	/**
@@ -254,16 +193,30 @@ public class ExpenseAndIncomeByYearReport {
 	}
 
 	/**
-	 * @effects return dailyExpense
+	 * @effects return dailyExpense, retrieving them from the data source the first
+	 * time that they are viewed
 	 */
-	public Collection<DailyExpense> getDailyExpense() {
+	public Collection<DailyExpense> getDailyExpense() throws NotPossibleException, DataSourceException {
+		if (!dailyExpenseLoaded) {
+			// large results are read a page at a time while they are viewed
+			dailyExpense = ExpenseAndIncomeQuery.expensesByDateRange(ExpenseAndIncomeByYearReport.class,
+					DateKey.yearRange(DateRangeQuery.toInt(R_year, year)), numDailyExpense);
+			dailyExpenseLoaded = true;
+		}
 		return dailyExpense;
 	}
 	
 	/**
-	 * @effects return dailyExpense
+	 * @effects return dailyIncome, retrieving them from the data source the first
+	 * time that they are viewed
 	 */
-	public Collection<DailyIncome> getDailyIncome() {
+	public Collection<DailyIncome> getDailyIncome() throws NotPossibleException, DataSourceException {
+		if (!dailyIncomeLoaded) {
+			// large results are read a page at a time while they are viewed
+			dailyIncome = ExpenseAndIncomeQuery.incomesByDateRange(ExpenseAndIncomeByYearReport.class,
+					DateKey.yearRange(DateRangeQuery.toInt(R_year, year)), numDailyIncome);
+			dailyIncomeLoaded = true;
+		}
 		return dailyIncome;
 	}
 
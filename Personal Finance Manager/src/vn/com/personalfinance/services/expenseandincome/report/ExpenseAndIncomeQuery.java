@@ -0,0 +1,412 @@
+package vn.com.personalfinance.services.expenseandincome.report;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.core.dodm.osm.OSM;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.Oid;
+import domainapp.basics.model.query.Expression.Op;
+import domainapp.basics.model.query.Query;
+import domainapp.basics.model.query.QueryToolKit;
+import vn.com.personalfinance.services.datasource.DataSources;
+import vn.com.personalfinance.services.expenseandincome.model.Category;
+import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
+import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
+import vn.com.personalfinance.services.report.AggregateQuery;
+import vn.com.personalfinance.services.report.NameMatchScope;
+import vn.com.personalfinance.services.report.ObjectRows;
+import vn.com.personalfinance.services.report.ReportCache;
+import vn.com.personalfinance.services.report.ReportCursor;
+
+/**
+ * @overview
+ * 	Retrieves the daily expenses and the daily incomes that satisfy the same report
+ * 	predicate together: the rows of both are read by one <tt>union all</tt> query
+ * 	(with a discriminator column) and then read into objects of the two classes (see
+ * 	{@link ObjectRows}).
+ *
+ * 	<p>Both results are cached in {@link ReportCache}, so that a report which queries
+ * 	the expenses and then the incomes only reaches the data source once. Concurrent
+ * 	queries of the same results wait for the one that is running instead of running
+ * 	it again; queries of different results run at the same time. Results larger than
+ * 	a page are instead viewed through a {@link ReportCursor}.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+class ExpenseAndIncomeQuery {
+	private static final String EXPENSE = "E";
+	private static final String INCOME = "I";
+
+	// the queries being run, by the cache key of their expenses
+	private static final Map<ReportCache.Key<DailyExpense>, CompletableFuture<Result>> running = new HashMap<>();
+
+	private ExpenseAndIncomeQuery() {
+		// static methods only
+	}
+
+	/**
+	 * @effects
+	 * 	return the daily expenses and daily incomes whose date keys are in
+	 * 	<tt>[range[0], range[1])</tt>, as retrieved for the report <tt>reportClass</tt>.
+	 *
+	 * 	<p>throws NotPossibleException if failed to generate data source query;
+	 * 	DataSourceException if fails to read from the data source
+	 */
+	static Result byDateRange(Class<?> reportClass, int[] range) throws NotPossibleException, DataSourceException {
+		ReportCache.Key<DailyExpense> expenseKey = new ReportCache.Key<>(reportClass, DailyExpense.class,
+				range[0], range[1]);
+		ReportCache.Key<DailyIncome> incomeKey = new ReportCache.Key<>(reportClass, DailyIncome.class,
+				range[0], range[1]);
+
+		return getOrRetrieve(expenseKey, incomeKey, () -> retrieveByDateRange(expenseKey, incomeKey, range));
+	}
+
+	private static Result retrieveByDateRange(ReportCache.Key<DailyExpense> expenseKey,
+			ReportCache.Key<DailyIncome> incomeKey, int[] range) throws NotPossibleException, DataSourceException {
+		QRM qrm = QRM.getInstance();
+		DateRangeQuery.ensureIndex(qrm, DailyExpense.class, DailyExpense.E_date, DailyExpense.E_dateKey);
+		DateRangeQuery.ensureIndex(qrm, DailyIncome.class, DailyIncome.I_date, DailyIncome.I_dateKey);
+
+		Result result = null;
+		RelationalOSMBasic rosm = relationalOsm(qrm);
+		if (rosm != null) {
+			String where = " where t.%1$s >= ? and t.%1$s < ?";
+			result = retrieveUnion(qrm, "", String.format(where,
+							rosm.toDBColumnName(DailyExpense.class, DailyExpense.E_dateKey, false)),
+					"", String.format(where,
+							rosm.toDBColumnName(DailyIncome.class, DailyIncome.I_dateKey, false)),
+					range[0], range[1]);
+		}
+
+		if (result == null) {
+			// one query per class
+			result = new Result(
+					DateRangeQuery.retrieve(DailyExpense.class, DailyExpense.E_date, DailyExpense.E_dateKey, range),
+					DateRangeQuery.retrieve(DailyIncome.class, DailyIncome.I_date, DailyIncome.I_dateKey, range));
+		}
+
+		ReportCache cache = ReportCache.getInstance();
+		return new Result(
+				cache.put(expenseKey, result.expenses, new DateRangeQuery.DateScope(DailyExpense.E_date, range)),
+				cache.put(incomeKey, result.incomes, new DateRangeQuery.DateScope(DailyIncome.I_date, range)));
+	}
+
+	/**
+	 * @effects
+	 * 	return the daily expenses and daily incomes whose category names contain
+	 * 	<tt>category</tt>, as retrieved for the report <tt>reportClass</tt>.
+	 *
+	 * 	<p>throws NotPossibleException if failed to generate data source query;
+	 * 	DataSourceException if fails to read from the data source
+	 */
+	static Result byCategory(Class<?> reportClass, String category) throws NotPossibleException, DataSourceException {
+		ReportCache.Key<DailyExpense> expenseKey = new ReportCache.Key<>(reportClass, DailyExpense.class, category);
+		ReportCache.Key<DailyIncome> incomeKey = new ReportCache.Key<>(reportClass, DailyIncome.class, category);
+
+		return getOrRetrieve(expenseKey, incomeKey, () -> retrieveByCategory(expenseKey, incomeKey, category));
+	}
+
+	private static Result retrieveByCategory(ReportCache.Key<DailyExpense> expenseKey,
+			ReportCache.Key<DailyIncome> incomeKey, String category) throws NotPossibleException, DataSourceException {
+		QRM qrm = QRM.getInstance();
+		DSMBasic dsm = qrm.getDsm();
+
+		Result result = null;
+		RelationalOSMBasic rosm = relationalOsm(qrm);
+		if (rosm != null) {
+			String join = " join " + dsm.getDomainClassName(Category.class) + " c on t.%s = c."
+					+ rosm.toDBColumnName(Category.class, "id", false);
+			String where = " where c." + rosm.toDBColumnName(Category.class, Category.C_name, false)
+					+ " like ?" + DataSources.LIKE_ESCAPE;
+			result = retrieveUnion(qrm,
+					String.format(join, rosm.toDBColumnName(DailyExpense.class, DailyExpense.E_category, false)),
+					where,
+					String.format(join, rosm.toDBColumnName(DailyIncome.class, DailyIncome.I_category, false)),
+					where,
+					DataSources.containing(category));
+		}
+
+		if (result == null) {
+			// one query per class
+			Query<?> qe = QueryToolKit.createSimpleJoinQuery(dsm, DailyExpense.class, Category.class,
+					DailyExpense.E_category, Category.C_name, Op.MATCH, "%" + category + "%");
+			Query<?> qi = QueryToolKit.createSimpleJoinQuery(dsm, DailyIncome.class, Category.class,
+					DailyIncome.I_category, Category.C_name, Op.MATCH, "%" + category + "%");
+			result = new Result(
+					qrm.getDom().retrieveObjects(DailyExpense.class, qe),
+					qrm.getDom().retrieveObjects(DailyIncome.class, qi));
+		}
+
+		ReportCache cache = ReportCache.getInstance();
+		return new Result(
+				cache.put(expenseKey, result.expenses,
+						new NameMatchScope(DailyExpense.E_category, Category.class, Category.C_name, category)),
+				cache.put(incomeKey, result.incomes,
+						new NameMatchScope(DailyIncome.I_category, Category.class, Category.C_name, category)));
+	}
+
+	/**
+	 * @effects
+	 * 	return the <tt>count</tt> daily expenses whose date keys are in
+	 * 	<tt>[range[0], range[1])</tt>, as viewed in the report <tt>reportClass</tt>:
+	 * 	as a {@link ReportCursor} if there are more than a page of them, otherwise
+	 * 	as retrieved by {@link #byDateRange(Class, int[])}.
+	 *
+	 * 	<p>throws NotPossibleException if failed to generate data source query;
+	 * 	DataSourceException if fails to read from the data source
+	 */
+	static Collection<DailyExpense> expensesByDateRange(Class<?> reportClass, int[] range, int count)
+			throws NotPossibleException, DataSourceException {
+		if (isPaged(count)) {
+			DateRangeQuery.ensureIndex(QRM.getInstance(), DailyExpense.class, DailyExpense.E_date, DailyExpense.E_dateKey);
+			return new ReportCursor<>(DailyExpense.class,
+					new AggregateQuery(DailyExpense.class).range(DailyExpense.E_dateKey, range[0], range[1]), count);
+		}
+		return values(byDateRange(reportClass, range).getExpenses());
+	}
+
+	/**
+	 * @effects
+	 * 	return the <tt>count</tt> daily incomes whose date keys are in
+	 * 	<tt>[range[0], range[1])</tt>, in the same way as
+	 * 	{@link #expensesByDateRange(Class, int[], int)}
+	 */
+	static Collection<DailyIncome> incomesByDateRange(Class<?> reportClass, int[] range, int count)
+			throws NotPossibleException, DataSourceException {
+		if (isPaged(count)) {
+			DateRangeQuery.ensureIndex(QRM.getInstance(), DailyIncome.class, DailyIncome.I_date, DailyIncome.I_dateKey);
+			return new ReportCursor<>(DailyIncome.class,
+					new AggregateQuery(DailyIncome.class).range(DailyIncome.I_dateKey, range[0], range[1]), count);
+		}
+		return values(byDateRange(reportClass, range).getIncomes());
+	}
+
+	/**
+	 * @effects
+	 * 	return the <tt>count</tt> daily expenses whose category names contain
+	 * 	<tt>category</tt>, in the same way as {@link #expensesByDateRange(Class, int[], int)}
+	 */
+	static Collection<DailyExpense> expensesByCategory(Class<?> reportClass, String category, int count)
+			throws NotPossibleException, DataSourceException {
+		if (isPaged(count)) {
+			return new ReportCursor<>(DailyExpense.class, new AggregateQuery(DailyExpense.class)
+					.match(DailyExpense.E_category, Category.class, Category.C_name, category), count);
+		}
+		return values(byCategory(reportClass, category).getExpenses());
+	}
+
+	/**
+	 * @effects
+	 * 	return the <tt>count</tt> daily incomes whose category names contain
+	 * 	<tt>category</tt>, in the same way as {@link #expensesByDateRange(Class, int[], int)}
+	 */
+	static Collection<DailyIncome> incomesByCategory(Class<?> reportClass, String category, int count)
+			throws NotPossibleException, DataSourceException {
+		if (isPaged(count)) {
+			return new ReportCursor<>(DailyIncome.class, new AggregateQuery(DailyIncome.class)
+					.match(DailyIncome.I_category, Category.class, Category.C_name, category), count);
+		}
+		return values(byCategory(reportClass, category).getIncomes());
+	}
+
+	/**
+	 * @effects
+	 * 	if the results of <tt>expenseKey, incomeKey</tt> are cached
+	 * 		return them
+	 * 	else if they are being retrieved by another thread
+	 * 		wait for and return its result
+	 * 	else
+	 * 		retrieve (and cache) them by <tt>retriever</tt> and return them.
+	 *
+	 * 	<p>Only the look up of the cache and of the running queries is serialised, so
+	 * 	that the queries of different results run at the same time.
+	 *
+	 * 	<p>throws NotPossibleException if failed to generate data source query;
+	 * 	DataSourceException if fails to read from the data source
+	 */
+	private static Result getOrRetrieve(ReportCache.Key<DailyExpense> expenseKey,
+			ReportCache.Key<DailyIncome> incomeKey, Retriever retriever) throws NotPossibleException, DataSourceException {
+		ReportCache cache = ReportCache.getInstance();
+		CompletableFuture<Result> future;
+		CompletableFuture<Result> other;
+		synchronized (running) {
+			Map<Oid, DailyExpense> expenses = cache.get(expenseKey);
+			Map<Oid, DailyIncome> incomes = cache.get(incomeKey);
+			if (expenses != null && incomes != null)
+				return new Result(expenses, incomes);
+
+			other = running.get(expenseKey);
+			future = null;
+			if (other == null) {
+				future = new CompletableFuture<>();
+				running.put(expenseKey, future);
+			}
+		}
+
+		if (other != null) {
+			// waited for outside the lock
+			return await(other);
+		}
+
+		try {
+			Result result = retriever.retrieve();
+			future.complete(result);
+			return result;
+		} catch (DataSourceException | RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			synchronized (running) {
+				running.remove(expenseKey);
+			}
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the result of <tt>future</tt> when it has completed, or throw its exception
+	 */
+	private static Result await(CompletableFuture<Result> future) throws NotPossibleException, DataSourceException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof DataSourceException)
+				throw (DataSourceException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, cause,
+					new Object[] { "ExpenseAndIncomeQuery", "await" });
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "ExpenseAndIncomeQuery", "await" });
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	if <tt>count</tt> objects are too many to be held in memory (and can be paged)
+	 * 		return true
+	 * 	else
+	 * 		return false
+	 */
+	private static boolean isPaged(int count) {
+		return count > ReportCursor.DEFAULT_PAGE_SIZE && AggregateQuery.isSupported();
+	}
+
+	private static <T> Collection<T> values(Map<Oid, T> result) {
+		return (result != null && !result.isEmpty()) ? result.values() : null;
+	}
+
+	private static RelationalOSMBasic relationalOsm(QRM qrm) {
+		OSM osm = qrm.getDom().getOsm();
+		return (osm instanceof RelationalOSMBasic) ? (RelationalOSMBasic) osm : null;
+	}
+
+	/**
+	 * @effects
+	 * 	return the SQL query of the rows (see {@link ObjectRows}) of the objects of
+	 * 	<tt>c</tt> (aliased <tt>t</tt>) that satisfy <tt>join</tt> and <tt>where</tt>,
+	 * 	tagged by <tt>kind</tt>
+	 */
+	private static String selectRows(QRM qrm, ObjectRows<?> rows, Class<?> c, String kind, String join,
+			String where) {
+		return "select '" + kind + "' as kind, " + rows.select("t") + " from "
+				+ qrm.getDsm().getDomainClassName(c) + " t" + join + where;
+	}
+
+	/**
+	 * @effects
+	 * 	read the daily expenses that satisfy <tt>expenseJoin, expenseWhere</tt> and the
+	 * 	daily incomes that satisfy <tt>incomeJoin, incomeWhere</tt> by one
+	 * 	<tt>union all</tt> query, whose <tt>?</tt>s of each part are <tt>params</tt>,
+	 * 	and return them; or return <tt>null</tt> if the rows of the two classes
+	 * 	cannot be read by one query.
+	 *
+	 * 	<p>The objects already in memory are returned as they are, the others are read
+	 * 	from their rows without being pooled (see {@link ObjectRows}).
+	 */
+	private static Result retrieveUnion(QRM qrm, String expenseJoin, String expenseWhere, String incomeJoin,
+			String incomeWhere, Object... params) throws NotPossibleException, DataSourceException {
+		DOMBasic dom = qrm.getDom();
+		ObjectRows<DailyExpense> expenseRows = new ObjectRows<>(dom, DailyExpense.class);
+		ObjectRows<DailyIncome> incomeRows = new ObjectRows<>(dom, DailyIncome.class);
+		if (expenseRows.size() != incomeRows.size())
+			return null;
+
+		Object[] args = new Object[params.length * 2];
+		System.arraycopy(params, 0, args, 0, params.length);
+		System.arraycopy(params, 0, args, params.length, params.length);
+		List<Map<String, Object>> rows = DataSources.query(dom,
+				selectRows(qrm, expenseRows, DailyExpense.class, EXPENSE, expenseJoin, expenseWhere)
+						+ " union all "
+						+ selectRows(qrm, incomeRows, DailyIncome.class, INCOME, incomeJoin, incomeWhere),
+				args);
+
+		List<Map<String, Object>> expenses = new ArrayList<>();
+		List<Map<String, Object>> incomes = new ArrayList<>();
+		for (Map<String, Object> row : rows) {
+			Object kind = column(row, "kind");
+			if (kind != null && EXPENSE.equals(kind.toString().trim())) {
+				expenses.add(row);
+			} else {
+				incomes.add(row);
+			}
+		}
+
+		return new Result(
+				expenses.isEmpty() ? null : expenseRows.toObjects(dom, expenses),
+				incomes.isEmpty() ? null : incomeRows.toObjects(dom, incomes));
+	}
+
+	private static Object column(Map<String, Object> row, String label) {
+		Object val = row.get(label.toUpperCase());
+		return (val != null) ? val : row.get(label);
+	}
+
+	/**
+	 * @overview
+	 * 	Retrieves the results of a report query from the data source (and caches them).
+	 */
+	private interface Retriever {
+		Result retrieve() throws NotPossibleException, DataSourceException;
+	}
+
+	/**
+	 * @overview
+	 * 	The daily expenses and daily incomes of a report query.
+	 */
+	static class Result {
+		private Map<Oid, DailyExpense> expenses;
+		private Map<Oid, DailyIncome> incomes;
+
+		Result(Map<Oid, DailyExpense> expenses, Map<Oid, DailyIncome> incomes) {
+			this.expenses = expenses;
+			this.incomes = incomes;
+		}
+
+		Map<Oid, DailyExpense> getExpenses() {
+			return expenses;
+		}
+
+		Map<Oid, DailyIncome> getIncomes() {
+			return incomes;
+		}
+	}
+}
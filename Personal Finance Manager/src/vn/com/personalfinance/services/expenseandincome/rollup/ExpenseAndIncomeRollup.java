@@ -0,0 +1,296 @@
+package vn.com.personalfinance.services.expenseandincome.rollup;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.osm.OSM;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.meta.DAttr;
+import domainapp.basics.util.events.ChangeEvent;
+import domainapp.basics.util.events.ChangeEventSource;
+import domainapp.basics.util.events.ChangeListener;
+import domainapp.basics.util.events.ObjectUpdateData;
+import vn.com.personalfinance.services.account.Account;
+import vn.com.personalfinance.services.account.Money;
+import vn.com.personalfinance.services.datasource.DataSources;
+import vn.com.personalfinance.services.datasource.DateKeyBackfill;
+import vn.com.personalfinance.services.expenseandincome.model.Category;
+import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
+import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
+import vn.com.personalfinance.services.expenseandincome.model.DateKey;
+
+/**
+ * @overview
+ * 	The materialised numbers and sums of the daily expenses and daily incomes,
+ * 	keyed by (account, category, year, month).
+ *
+ * 	<p>The rollup is loaded once from the data source by a grouped query and then
+ * 	kept up to date by listening to the objects of {@link DailyExpense} and
+ * 	{@link DailyIncome} that are added, updated or deleted, so that the totals of
+ * 	a month or a year are read from at most 12 periods instead of summing all
+ * 	their transactions.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class ExpenseAndIncomeRollup implements ChangeListener {
+	private static ExpenseAndIncomeRollup instance;
+
+	// period (yyyyMM) -> (account, category) -> totals
+	private NavigableMap<Integer, Map<Key, RollupTotals>> periods;
+
+	private ExpenseAndIncomeRollup() {
+		periods = new TreeMap<>();
+	}
+
+	/**
+	 * @effects
+	 * 	return the rollup of the current data source, loading it the first time
+	 * 	that it is used.
+	 *
+	 * 	<p>throws NotPossibleException if failed to generate data source query;
+	 * 	DataSourceException if fails to read from the data source
+	 */
+	public static synchronized ExpenseAndIncomeRollup getInstance() throws NotPossibleException, DataSourceException {
+		if (instance == null) {
+			ExpenseAndIncomeRollup rollup = new ExpenseAndIncomeRollup();
+			DOMBasic dom = QRM.getInstance().getDom();
+
+			// the periods are grouped by date key
+			DateKeyBackfill.ensureDateKeys(DailyExpense.class, DailyExpense.E_date, DailyExpense.E_dateKey);
+			DateKeyBackfill.ensureDateKeys(DailyIncome.class, DailyIncome.I_date, DailyIncome.I_dateKey);
+
+			rollup.load(dom, DailyExpense.class, true);
+			rollup.load(dom, DailyIncome.class, false);
+
+			dom.addChangeListener(DailyExpense.class, rollup);
+			dom.addChangeListener(DailyIncome.class, rollup);
+			instance = rollup;
+		}
+		return instance;
+	}
+
+	/**
+	 * @effects
+	 * 	return the totals of the month <tt>month/year</tt>
+	 */
+	public synchronized RollupTotals getMonthTotals(int year, int month) {
+		return sum(periods.subMap(year * 100 + month, true, year * 100 + month, true));
+	}
+
+	/**
+	 * @effects
+	 * 	return the totals of the year <tt>year</tt>
+	 */
+	public synchronized RollupTotals getYearTotals(int year) {
+		return sum(periods.subMap(year * 100, true, (year + 1) * 100, false));
+	}
+
+	private static RollupTotals sum(Map<Integer, Map<Key, RollupTotals>> periods) {
+		RollupTotals result = new RollupTotals();
+		for (Map<Key, RollupTotals> cells : periods.values()) {
+			for (RollupTotals t : cells.values()) {
+				result.add(t);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @effects
+	 * 	add to the cell (<tt>accountId, categoryId, period</tt>) <tt>count</tt>
+	 * 	expenses (if <tt>expense</tt>) or incomes (otherwise) of the total <tt>sum</tt>
+	 * 	(in minor units)
+	 */
+	private synchronized void add(String accountId, int categoryId, int period, boolean expense,
+			int count, long sum) {
+		Map<Key, RollupTotals> cells = periods.get(period);
+		if (cells == null) {
+			cells = new HashMap<>();
+			periods.put(period, cells);
+		}
+
+		Key key = new Key(accountId, categoryId);
+		RollupTotals t = cells.get(key);
+		if (t == null) {
+			t = new RollupTotals();
+			cells.put(key, t);
+		}
+
+		t.add(expense, count, sum);
+
+		if (t.isEmpty()) {
+			// drop the cells of the deleted transactions
+			cells.remove(key);
+			if (cells.isEmpty())
+				periods.remove(period);
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	add (if <tt>sign = 1</tt>) or remove (if <tt>sign = -1</tt>) the transaction
+	 * 	of <tt>amount</tt> at <tt>date</tt> to/from this
+	 */
+	private void add(Account account, Category category, Date date, double amount, boolean expense, int sign) {
+		if (account == null || category == null || date == null)
+			return;
+
+		add(account.getId(), category.getId(), DateKey.of(date) / 100, expense, sign, sign * Money.toMinor(amount));
+	}
+
+	@Override
+	public void stateChanged(ChangeEvent e) {
+		ChangeEventSource<?> source = (ChangeEventSource<?>) e.getSource();
+		for (Object o : source.getObjects()) {
+			if (o instanceof DailyExpense) {
+				DailyExpense d = (DailyExpense) o;
+				update(source, d.getAccount(), d.getCategory(), d.getDate(), d.getAmount(), true);
+			} else if (o instanceof DailyIncome) {
+				DailyIncome d = (DailyIncome) o;
+				update(source, d.getAccount(), d.getCategory(), d.getDate(), d.getAmount(), false);
+			}
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	update this with the change of <tt>source</tt> to the transaction whose current
+	 * 	values are <tt>account, category, date, amount</tt>
+	 */
+	private void update(ChangeEventSource<?> source, Account account, Category category, Date date, double amount,
+			boolean expense) {
+		if (source.isAddNew()) {
+			add(account, category, date, amount, expense, 1);
+		} else if (source.isDelete()) {
+			add(account, category, date, amount, expense, -1);
+		} else if (source.isUpdate() && source.getEventData() instanceof ObjectUpdateData) {
+			// move the transaction from the cell of its old values to that of its new values
+			ObjectUpdateData data = (ObjectUpdateData) source.getEventData();
+			Account oldAccount = account;
+			Category oldCategory = category;
+			Date oldDate = date;
+			double oldAmount = amount;
+			for (DAttr attrib : data.getUpdatedAttribs()) {
+				Object old = data.getOldVal(attrib);
+				switch (attrib.name()) {
+				case DailyExpense.E_account:
+					oldAccount = (Account) old;
+					break;
+				case DailyExpense.E_category:
+					oldCategory = (Category) old;
+					break;
+				case DailyExpense.E_date:
+					oldDate = (Date) old;
+					break;
+				case DailyExpense.E_amount:
+					oldAmount = ((Number) old).doubleValue();
+					break;
+				}
+			}
+
+			add(oldAccount, oldCategory, oldDate, oldAmount, expense, -1);
+			add(account, category, date, amount, expense, 1);
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	add to this the numbers and sums of the transactions of <tt>c</tt> in the
+	 * 	data source, except those without an account, a category or a date key
+	 *
+	 * @requires
+	 * 	the date keys of <tt>c</tt> are filled in (see {@link DateKeyBackfill})
+	 */
+	private void load(DOMBasic dom, Class<?> c, boolean expense) throws NotPossibleException, DataSourceException {
+		OSM osm = dom.getOsm();
+		if (!(osm instanceof RelationalOSMBasic)) {
+			// no grouped query: sum the objects
+			Map<?, ?> objects = dom.retrieveObjects(c);
+			if (objects != null) {
+				for (Object o : objects.values()) {
+					if (expense) {
+						DailyExpense d = (DailyExpense) o;
+						add(d.getAccount(), d.getCategory(), d.getDate(), d.getAmount(), true, 1);
+					} else {
+						DailyIncome d = (DailyIncome) o;
+						add(d.getAccount(), d.getCategory(), d.getDate(), d.getAmount(), false, 1);
+					}
+				}
+			}
+			return;
+		}
+
+		RelationalOSMBasic rosm = (RelationalOSMBasic) osm;
+		String table = QRM.getInstance().getDsm().getDomainClassName(c);
+		String account = rosm.toDBColumnName(c, DailyExpense.E_account, false);
+		String category = rosm.toDBColumnName(c, DailyExpense.E_category, false);
+		String period = rosm.toDBColumnName(c, DailyExpense.E_dateKey, false) + " / 100";
+		String amount = rosm.toDBColumnName(c, DailyExpense.E_amount, false);
+
+		List<Map<String, Object>> rows = DataSources.query(dom,
+				"select " + account + " as acc, " + category + " as cat, " + period + " as prd, "
+						+ "count(*) as cnt, sum(" + amount + ") as total from " + table
+						+ " group by " + account + ", " + category + ", " + period);
+
+		for (Map<String, Object> row : rows) {
+			Object acc = column(row, "acc");
+			Object cat = column(row, "cat");
+			Object prd = column(row, "prd");
+			if (acc == null || cat == null || prd == null) {
+				// as the objects without an account, category or date (see add)
+				continue;
+			}
+
+			add(String.valueOf(acc),
+					((Number) cat).intValue(),
+					((Number) prd).intValue(),
+					expense,
+					((Number) column(row, "cnt")).intValue(),
+					Money.toMinor(((Number) column(row, "total")).doubleValue()));
+		}
+	}
+
+	private static Object column(Map<String, Object> row, String label) {
+		Object val = row.get(label.toUpperCase());
+		return (val != null) ? val : row.get(label);
+	}
+
+	/**
+	 * @overview
+	 * 	The (account, category) of a cell of a period.
+	 */
+	private static class Key {
+		private String accountId;
+		private int categoryId;
+
+		Key(String accountId, int categoryId) {
+			this.accountId = accountId;
+			this.categoryId = categoryId;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * accountId.hashCode() + categoryId;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return categoryId == other.categoryId && accountId.equals(other.accountId);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package vn.com.personalfinance.services.expenseandincome.rollup;
+
+import vn.com.personalfinance.services.account.Money;
+
+/**
+ * @overview
+ * 	The numbers and sums of the daily expenses and daily incomes of a period
+ * 	(of one account and category, or of all of them). The sums are kept in minor
+ * 	units (see {@link Money}).
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class RollupTotals {
+	private int expenseCount;
+	private long expenseSum;
+	private int incomeCount;
+	private long incomeSum;
+
+	public RollupTotals() {
+		// all zero
+	}
+
+	/**
+	 * @effects
+	 * 	add to this <tt>count</tt> expenses (if <tt>expense</tt>) or incomes (otherwise)
+	 * 	of the total <tt>sum</tt> (in minor units)
+	 */
+	void add(boolean expense, int count, long sum) {
+		if (expense) {
+			expenseCount += count;
+			expenseSum += sum;
+		} else {
+			incomeCount += count;
+			incomeSum += sum;
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	add the totals of <tt>other</tt> to this
+	 */
+	void add(RollupTotals other) {
+		expenseCount += other.expenseCount;
+		expenseSum += other.expenseSum;
+		incomeCount += other.incomeCount;
+		incomeSum += other.incomeSum;
+	}
+
+	/**
+	 * @effects
+	 * 	if this contains neither expenses nor incomes
+	 * 		return true
+	 * 	else
+	 * 		return false
+	 */
+	boolean isEmpty() {
+		return expenseCount == 0 && incomeCount == 0;
+	}
+
+	public int getExpenseCount() {
+		return expenseCount;
+	}
+
+	public double getExpenseSum() {
+		return Money.toMajor(expenseSum);
+	}
+
+	public int getIncomeCount() {
+		return incomeCount;
+	}
+
+	public double getIncomeSum() {
+		return Money.toMajor(incomeSum);
+	}
+
+	@Override
+	public String toString() {
+		return "RollupTotals(" + expenseCount + "," + getExpenseSum() + "," + incomeCount + "," + getIncomeSum() + ")";
+	}
+}
@@ -0,0 +1,229 @@
+package vn.com.personalfinance.services.model;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.meta.AttrRef;
+import domainapp.basics.model.meta.DAttr;
+import domainapp.basics.model.meta.DOpt;
+
+/**
+ * @overview
+ * 	The accessors of the attributes of a domain class, by attribute name, and the
+ * 	invoker of its data source constructor, for code that reads and creates objects
+ * 	outside the framework (e.g. to write them in batches or to a snapshot).
+ *
+ * 	<p>The accessors are created the first time a class is used and are registered
+ * 	by class. An attribute is read through a method handle of its getter (the public
+ * 	method <tt>getA()</tt> of attribute <tt>a</tt>, which is what the framework reads),
+ * 	so that the computed attributes (e.g. {@link
+ * 	vn.com.personalfinance.services.account.TotalBalance#getTotalBalance()}) have the
+ * 	same values as in the framework. An attribute that has no getter is read through a
+ * 	method handle of its field; if neither handle can be created, it is read by
+ * 	reflection, as by the framework.
+ *
+ * 	<p>The accessors are used for their access by attribute name and their constructor
+ * 	invoker; they are not measured against the framework's reflection, and no speed-up
+ * 	over it is assumed.
+ *
+ * @example
+ * <pre>
+ * 	Accessors acc = Accessors.of(DailyExpense.class);
+ * 	double amount = (Double) acc.get(expense, "amount");
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class Accessors {
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private static final Map<Class<?>, Accessors> registry = new HashMap<>();
+
+	private Class<?> cls;
+
+	// the accessors, by attribute name
+	private Map<String, Function<Object, Object>> getters;
+
+	private MethodHandle constructor;
+	private String[] constructorAttributes;
+
+	private Accessors(Class<?> cls) {
+		this.cls = cls;
+		getters = new HashMap<>();
+		for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				DAttr attr = f.getAnnotation(DAttr.class);
+				if (attr != null && !getters.containsKey(attr.name()))
+					getters.put(attr.name(), genGetter(f, attr));
+			}
+		}
+		genConstructor();
+	}
+
+	/**
+	 * @effects
+	 * 	return the accessors of the domain class <tt>c</tt>, creating them if needed
+	 */
+	public static synchronized Accessors of(Class<?> c) {
+		Accessors acc = registry.get(c);
+		if (acc == null) {
+			acc = new Accessors(c);
+			registry.put(c, acc);
+		}
+		return acc;
+	}
+
+	public Class<?> getCls() {
+		return cls;
+	}
+
+	/**
+	 * @requires <tt>o</tt> is an object of {@link #cls}
+	 * @effects
+	 * 	return the value of the attribute named <tt>attrib</tt> of <tt>o</tt>
+	 *
+	 * 	<p>throws NotPossibleException if {@link #cls} has no such attribute or fails to
+	 * 	read it
+	 */
+	public Object get(Object o, String attrib) throws NotPossibleException {
+		Function<Object, Object> getter = getters.get(attrib);
+		if (getter == null) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "attrib", attrib });
+		}
+		return getter.apply(o);
+	}
+
+	/**
+	 * @requires <tt>o</tt> is an object of {@link #cls}
+	 * @effects
+	 * 	return the value of the attribute of field <tt>f</tt> of <tt>o</tt>
+	 */
+	public Object get(Object o, Field f) throws NotPossibleException {
+		return get(o, f.getAnnotation(DAttr.class).name());
+	}
+
+	/**
+	 * @effects
+	 * 	return the names of the attributes of the parameters of the data source constructor
+	 * 	of {@link #cls}, in order; or <tt>null</tt> if it has none
+	 */
+	public String[] getConstructorAttributes() {
+		return (constructorAttributes != null) ? constructorAttributes.clone() : null;
+	}
+
+	/**
+	 * @effects
+	 * 	return a new object of {@link #cls} created by its data source constructor from
+	 * 	<tt>args</tt> (the values of {@link #getConstructorAttributes()}).
+	 *
+	 * 	<p>throws NotPossibleException if {@link #cls} has no data source constructor or
+	 * 	the constructor fails
+	 */
+	public Object newInstance(Object... args) throws NotPossibleException {
+		if (constructor == null) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM,
+					new Object[] { cls.getSimpleName(), "newInstance" });
+		}
+		try {
+			return (Object) constructor.invokeExact(args);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { cls.getSimpleName(), "newInstance" });
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the accessor of the attribute <tt>attr</tt> of field <tt>f</tt>
+	 */
+	private Function<Object, Object> genGetter(Field f, DAttr attr) {
+		MethodHandle mh;
+		try {
+			Method getter = findGetter(f);
+			MethodHandle h = (getter != null) ? lookup.unreflect(getter)
+					: MethodHandles.privateLookupIn(f.getDeclaringClass(), lookup).unreflectGetter(f);
+			mh = h.asType(MethodType.methodType(Object.class, Object.class));
+		} catch (IllegalAccessException | RuntimeException e) {
+			// reflection
+			return o -> QRM.getInstance().getDsm().getAttributeValue(f, o);
+		}
+
+		return o -> {
+			try {
+				return mh.invokeExact(o);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+						new Object[] { cls.getSimpleName(), "get " + attr.name() });
+			}
+		};
+	}
+
+	/**
+	 * @effects
+	 * 	if {@link #cls} has a public getter of the field <tt>f</tt> (the method
+	 * 	<tt>getF()</tt>, as found by the framework) that returns a value of the field type
+	 * 	(boxed or not)
+	 * 		return it
+	 * 	else
+	 * 		return <tt>null</tt>
+	 */
+	private Method findGetter(Field f) {
+		String name = f.getName();
+		try {
+			Method m = cls.getMethod("get" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+			Class<?> type = MethodType.methodType(f.getType()).wrap().returnType();
+			Class<?> returnType = MethodType.methodType(m.getReturnType()).wrap().returnType();
+			return (type.isAssignableFrom(returnType)) ? m : null;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	generate the invoker of the data source constructor of {@link #cls}, if it has one
+	 */
+	private void genConstructor() {
+		for (Constructor<?> cons : cls.getConstructors()) {
+			for (DOpt opt : cons.getAnnotationsByType(DOpt.class)) {
+				if (opt.type() != DOpt.Type.DataSourceConstructor)
+					continue;
+
+				String[] attribs = new String[cons.getParameterCount()];
+				for (int i = 0; i < attribs.length; i++) {
+					AttrRef ref = cons.getParameters()[i].getAnnotation(AttrRef.class);
+					if (ref == null)
+						return;
+					attribs[i] = ref.value();
+				}
+
+				try {
+					constructor = lookup.unreflectConstructor(cons)
+							.asSpreader(Object[].class, attribs.length)
+							.asType(MethodType.methodType(Object.class, Object[].class));
+					constructorAttributes = attribs;
+				} catch (IllegalAccessException e) {
+					// no invoker
+				}
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package vn.com.personalfinance.services.model;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+/**
+ * @overview
+ * 	The collection of the objects linked to a domain object by a one-to-many
+ * 	association (e.g. the daily expenses of a category).
+ *
+ * 	<p>Membership tests, additions and removals take constant time, so linking
+ * 	<tt>n</tt> objects takes <tt>O(n)</tt> time; iteration is in the order the objects
+ * 	were linked, which is the order they are shown in. An object is linked at most
+ * 	once: adding an object that is already linked has no effect.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class LinkCollection<T> extends LinkedHashSet<T> {
+	private static final long serialVersionUID = 1L;
+
+	public LinkCollection() {
+		super();
+	}
+
+	public LinkCollection(Collection<? extends T> links) {
+		super(links);
+	}
+
+	/**
+	 * @effects
+	 * 	if <tt>links</tt> is a LinkCollection
+	 * 		return <tt>links</tt>
+	 * 	else
+	 * 		return a new LinkCollection of the objects of <tt>links</tt>
+	 */
+	public static <T> LinkCollection<T> of(Collection<T> links) {
+		if (links instanceof LinkCollection)
+			return (LinkCollection<T>) links;
+		return new LinkCollection<>(links);
+	}
+}
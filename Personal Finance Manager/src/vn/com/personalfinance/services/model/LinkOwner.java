@@ -0,0 +1,25 @@
+package vn.com.personalfinance.services.model;
+
+/**
+ * @overview
+ * 	A domain object whose one-to-many links (its {@link LinkCollection}s) are loaded from
+ * 	the data source on first access, and so can be unloaded to be loaded again on the
+ * 	next access.
+ *
+ * 	<p>Unloading the links releases the linked objects held by the owner (e.g. after a
+ * 	bulk import); the counts of the links and the other attributes of the owner are not
+ * 	changed.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public interface LinkOwner {
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	forget the loaded links of this, so that they are loaded again on next access
+	 */
+	void unloadLinks();
+}
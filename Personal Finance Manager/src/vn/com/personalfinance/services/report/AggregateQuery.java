@@ -0,0 +1,301 @@
+package vn.com.personalfinance.services.report;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.core.dodm.osm.OSM;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import vn.com.personalfinance.services.account.Money;
+import vn.com.personalfinance.services.datasource.DataSources;
+import vn.com.personalfinance.services.datasource.SchemaIndexes;
+
+/**
+ * @overview
+ * 	An aggregate query (<tt>COUNT</tt>, <tt>SUM</tt>, <tt>MAX</tt>, <tt>GROUP BY</tt>) over the
+ * 	objects of a domain class, which is executed by the data source so that only
+ * 	the aggregated values (and not the objects) are read.
+ *
+ * 	<p>Attributes are given by their domain names and translated into the columns
+ * 	of the data source. The values that restrict a query are passed as the
+ * 	parameters of a prepared statement (see {@link DataSources#query}). Aggregate queries are only supported by relational data
+ * 	sources (see {@link #isSupported()}). Before a query is first executed, the
+ * 	secondary indexes of the queried class are created (see {@link SchemaIndexes}).
+ *
+ * @example
+ * <pre>
+ * 	AggregateQuery q = new AggregateQuery(DailyExpense.class)
+ * 		.match(DailyExpense.E_category, Category.class, Category.C_name, "Food")
+ * 		.count("cnt");
+ * 	q.sum("total", q.column(DailyExpense.E_amount));
+ * 	AggregateQuery.Row r = q.executeOne();
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class AggregateQuery {
+	private Class<?> c;
+	private RelationalOSMBasic rosm;
+	private DSMBasic dsm;
+
+	private List<String> selects;
+	private List<String> joins;
+	private List<String> conditions;
+	private List<String> groupBys;
+
+	// the values of the ?s of joins and conditions, in order
+	private List<Object> params;
+
+	/**
+	 * @effects
+	 * 	initialise this as an aggregate query over the objects of <tt>c</tt>.
+	 *
+	 * 	<p>throws NotPossibleException if the data source does not support aggregate
+	 * 	queries
+	 */
+	public AggregateQuery(Class<?> c) throws NotPossibleException {
+		OSM osm = QRM.getInstance().getDom().getOsm();
+		if (!(osm instanceof RelationalOSMBasic)) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM,
+					new Object[] { "AggregateQuery", c.getSimpleName() });
+		}
+
+		this.c = c;
+		rosm = (RelationalOSMBasic) osm;
+		dsm = QRM.getInstance().getDsm();
+		selects = new ArrayList<>();
+		joins = new ArrayList<>();
+		conditions = new ArrayList<>();
+		groupBys = new ArrayList<>();
+		params = new ArrayList<>();
+	}
+
+	/**
+	 * @effects
+	 * 	if the current data source supports aggregate queries
+	 * 		return true
+	 * 	else
+	 * 		return false
+	 */
+	public static boolean isSupported() {
+		return QRM.getInstance().getDom().getOsm() instanceof RelationalOSMBasic;
+	}
+
+	/**
+	 * @effects
+	 * 	return the column of the attribute <tt>attrib</tt> of the queried class, for
+	 * 	use in the expressions of this
+	 */
+	public String column(String attrib) {
+		return "t." + rosm.toDBColumnName(c, attrib, false);
+	}
+
+	/**
+	 * @effects
+	 * 	restrict this to the objects whose attribute <tt>attrib</tt> refers to an object
+	 * 	of <tt>assocClass</tt> whose attribute <tt>assocAttrib</tt> contains <tt>text</tt>
+	 */
+	public AggregateQuery match(String attrib, Class<?> assocClass, String assocAttrib, String text) {
+		String alias = "a" + joins.size();
+		joins.add(" join " + dsm.getDomainClassName(assocClass) + " " + alias + " on " + column(attrib) + " = "
+				+ alias + "." + rosm.toDBColumnName(assocClass, "id", false));
+		conditions.add(alias + "." + rosm.toDBColumnName(assocClass, assocAttrib, false) + " like ?"
+				+ DataSources.LIKE_ESCAPE);
+		params.add(DataSources.containing(text));
+		return this;
+	}
+
+	/**
+	 * @effects
+	 * 	restrict this to the objects whose (numeric) attribute <tt>attrib</tt> is in
+	 * 	<tt>[from, to)</tt>
+	 */
+	public AggregateQuery range(String attrib, int from, int to) {
+		String col = column(attrib);
+		conditions.add(col + " >= ? and " + col + " < ?");
+		params.add(from);
+		params.add(to);
+		return this;
+	}
+
+	/**
+	 * @effects
+	 * 	group the result of this by the value of the attribute <tt>attrib</tt>, which
+	 * 	is returned in the column <tt>alias</tt>
+	 */
+	public AggregateQuery groupBy(String alias, String attrib) {
+		String col = column(attrib);
+		selects.add(col + " as " + alias);
+		groupBys.add(col);
+		return this;
+	}
+
+	/**
+	 * @effects
+	 * 	return in the column <tt>alias</tt> the number of objects (of each group)
+	 */
+	public AggregateQuery count(String alias) {
+		selects.add("count(*) as " + alias);
+		return this;
+	}
+
+	/**
+	 * @effects
+	 * 	return in the column <tt>alias</tt> the sum of <tt>expression</tt> over the
+	 * 	objects (of each group), where <tt>expression</tt> is built from
+	 * 	{@link #column(String)}
+	 */
+	public AggregateQuery sum(String alias, String expression) {
+		selects.add("sum(" + expression + ") as " + alias);
+		return this;
+	}
+
+	/**
+	 * @effects
+	 * 	return in the column <tt>alias</tt> the largest value of <tt>expression</tt> over
+	 * 	the objects (of each group), where <tt>expression</tt> is built from
+	 * 	{@link #column(String)}
+	 */
+	public AggregateQuery max(String alias, String expression) {
+		selects.add("max(" + expression + ") as " + alias);
+		return this;
+	}
+
+	/**
+	 * @effects
+	 * 	return the SQL statement of this, whose <tt>?</tt>s are the parameters of this
+	 */
+	public String toSQL() {
+		StringBuilder sql = new StringBuilder("select ");
+		sql.append(String.join(", ", selects));
+		sql.append(" from ").append(dsm.getDomainClassName(c)).append(" t");
+		for (String j : joins)
+			sql.append(j);
+		if (!conditions.isEmpty())
+			sql.append(" where ").append(String.join(" and ", conditions));
+		if (!groupBys.isEmpty())
+			sql.append(" group by ").append(String.join(", ", groupBys));
+		return sql.toString();
+	}
+
+	/**
+	 * @effects
+	 * 	execute this and return its rows (one row if this has no groups).
+	 *
+	 * 	<p>throws DataSourceException if fails to read from the data source
+	 */
+	public List<Row> execute() throws DataSourceException {
+		SchemaIndexes.ensureIndexes(c);
+
+		return rows(toSQL(), params);
+	}
+
+	/**
+	 * @effects
+	 * 	execute this (which has no groups) and return its only row.
+	 *
+	 * 	<p>throws DataSourceException if fails to read from the data source
+	 */
+	public Row executeOne() throws DataSourceException {
+		List<Row> rows = execute();
+		return rows.isEmpty() ? new Row(new HashMap<>()) : rows.get(0);
+	}
+
+	/**
+	 * @effects
+	 * 	return the rows (as selected by <tt>objectRows</tt>) of at most <tt>limit</tt>
+	 * 	objects that satisfy the conditions of this, in the order of their ids and
+	 * 	after the id <tt>after</tt> (if it is not <tt>null</tt>).
+	 *
+	 * 	<p>throws DataSourceException if fails to read from the data source
+	 */
+	List<Map<String, Object>> executeRows(ObjectRows<?> objectRows, Object after, int limit)
+			throws DataSourceException {
+		SchemaIndexes.ensureIndexes(c);
+
+		String id = column("id");
+		StringBuilder sql = new StringBuilder("select ").append(objectRows.select("t"));
+		sql.append(" from ").append(dsm.getDomainClassName(c)).append(" t");
+		for (String j : joins)
+			sql.append(j);
+
+		List<String> where = new ArrayList<>(conditions);
+		List<Object> args = new ArrayList<>(params);
+		if (after != null) {
+			where.add(id + " > ?");
+			args.add(after);
+		}
+		if (!where.isEmpty())
+			sql.append(" where ").append(String.join(" and ", where));
+		sql.append(" order by ").append(id).append(" fetch first ").append(limit).append(" rows only");
+
+		return DataSources.query(QRM.getInstance().getDom(), sql.toString(), args.toArray());
+	}
+
+	/**
+	 * @effects
+	 * 	execute <tt>sql</tt> with the parameters <tt>args</tt> and return its rows.
+	 *
+	 * 	<p>throws DataSourceException if fails to read from the data source
+	 */
+	private List<Row> rows(String sql, List<Object> args) throws DataSourceException {
+		List<Row> result = new ArrayList<>();
+		for (Map<String, Object> r : DataSources.query(QRM.getInstance().getDom(), sql, args.toArray())) {
+			result.add(new Row(r));
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "AggregateQuery(" + toSQL() + ", " + params + ")";
+	}
+
+	/**
+	 * @overview
+	 * 	A row of the result of an aggregate query.
+	 */
+	public static class Row {
+		private Map<String, Object> values;
+
+		Row(Map<String, Object> values) {
+			this.values = values;
+		}
+
+		/**
+		 * @effects
+		 * 	return the value of the column <tt>alias</tt>, or <tt>null</tt> if it is
+		 * 	<tt>NULL</tt> (e.g. the sum of no objects)
+		 */
+		public Object get(String alias) {
+			Object val = values.get(alias.toUpperCase());
+			return (val != null) ? val : values.get(alias);
+		}
+
+		public int getInt(String alias) {
+			Object val = get(alias);
+			return (val != null) ? ((Number) val).intValue() : 0;
+		}
+
+		public double getDouble(String alias) {
+			Object val = get(alias);
+			return (val != null) ? ((Number) val).doubleValue() : 0;
+		}
+
+		/**
+		 * @effects
+		 * 	return the money amount of the column <tt>alias</tt> in minor units (see
+		 * 	{@link Money}), or <tt>0</tt> if it is <tt>NULL</tt>
+		 */
+		public long getMinor(String alias) {
+			return Money.toMinor(getDouble(alias));
+		}
+	}
+}
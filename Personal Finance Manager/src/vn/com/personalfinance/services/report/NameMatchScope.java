@@ -0,0 +1,46 @@
+package vn.com.personalfinance.services.report;
+
+import vn.com.personalfinance.services.model.Accessors;
+
+/**
+ * @overview
+ * 	The scope of a report query that matches the name of an associated object
+ * 	(e.g. the category of a daily expense) against <tt>"%text%"</tt>.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class NameMatchScope extends ReportCache.Scope {
+	private Class<?> associateClass;
+	private String nameAttrib;
+	private String text;
+
+	/**
+	 * @effects
+	 * 	initialise this as the scope of the objects whose attribute <tt>attrib</tt>
+	 * 	refers to an object of <tt>associateClass</tt> whose attribute
+	 * 	<tt>nameAttrib</tt> contains <tt>text</tt>
+	 */
+	public NameMatchScope(String attrib, Class<?> associateClass, String nameAttrib, String text) {
+		super(attrib);
+		this.associateClass = associateClass;
+		this.nameAttrib = nameAttrib;
+		this.text = text;
+	}
+
+	@Override
+	public boolean covers(Object value) {
+		if (value == null)
+			return false;
+
+		Object name = Accessors.of(value.getClass()).get(value, nameAttrib);
+		return name != null && name.toString().contains(text);
+	}
+
+	@Override
+	public boolean dependsOn(Class<?> c) {
+		// renaming an associate may change the matched objects
+		return c == associateClass;
+	}
+}
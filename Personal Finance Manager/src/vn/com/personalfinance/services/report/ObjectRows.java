@@ -0,0 +1,211 @@
+package vn.com.personalfinance.services.report;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.Oid;
+import domainapp.basics.model.meta.DAttr;
+import domainapp.basics.model.meta.DOpt;
+
+/**
+ * @overview
+ * 	Reads the objects of a domain class from the rows of a query that selects all of
+ * 	their serialisable attributes (see {@link #select(String)}), so that the objects
+ * 	of a report are read by one query instead of a query per object.
+ *
+ * 	<p>An object that is already in the object pool is returned as it is. The others
+ * 	are created by the data source constructor of the class from the row, and are not
+ * 	added to the object pool (as the objects of a {@link ReportCursor}). The objects
+ * 	that they link to are taken from the object pool or, if they are not there, are
+ * 	retrieved (and pooled) once per query.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class ObjectRows<T> {
+	private Class<T> c;
+	private DAttr idAttrib;
+	private Constructor<T> constructor;
+
+	// the serialisable attributes (the parameters of constructor), and their columns
+	private List<Field> fields;
+	private List<DAttr> attribs;
+	private List<String> columns;
+
+	/**
+	 * @requires
+	 * 	the data source of <tt>dom</tt> is relational
+	 * @effects
+	 * 	initialise this as the reader of the objects of <tt>c</tt>.
+	 *
+	 * 	<p>throws NotPossibleException if <tt>c</tt> has no data source constructor of
+	 * 	its serialisable attributes
+	 */
+	public ObjectRows(DOMBasic dom, Class<T> c) throws NotPossibleException {
+		this.c = c;
+		DSMBasic dsm = dom.getDsm();
+		RelationalOSMBasic rosm = (RelationalOSMBasic) dom.getOsm();
+		idAttrib = dsm.getDomainConstraint(c, "id");
+
+		fields = new ArrayList<>();
+		attribs = new ArrayList<>();
+		columns = new ArrayList<>();
+		for (Map.Entry<Field, DAttr> e : dsm.getSerialisableAttributes(c).entrySet()) {
+			fields.add(e.getKey());
+			attribs.add(e.getValue());
+			columns.add(rosm.toDBColumnName(c, e.getValue(), false));
+		}
+
+		constructor = dataSourceConstructor(c, fields.size());
+		if (constructor == null) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM,
+					new Object[] { "ObjectRows", c.getSimpleName() });
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of columns of {@link #select(String)}
+	 */
+	public int size() {
+		return columns.size();
+	}
+
+	/**
+	 * @effects
+	 * 	return the select list of the columns of the objects of the table aliased
+	 * 	<tt>alias</tt>, labelled <tt>c0, c1, ...</tt>
+	 */
+	public String select(String alias) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(alias).append('.').append(columns.get(i)).append(" as c").append(i);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @effects
+	 * 	return the objects of the rows <tt>rows</tt> of a query that selects
+	 * 	{@link #select(String)}, by their ids and in the order of the rows.
+	 *
+	 * 	<p>throws NotPossibleException if fails to create an object; DataSourceException
+	 * 	if fails to retrieve a linked object
+	 */
+	public Map<Oid, T> toObjects(DOMBasic dom, List<Map<String, Object>> rows)
+			throws NotPossibleException, DataSourceException {
+		Map<Oid, T> objects = new LinkedHashMap<>();
+		Map<Oid, Object> links = new HashMap<>();
+		for (Map<String, Object> row : rows) {
+			T o = toObject(dom, row, links);
+			objects.put(dom.genObjectId(c, idAttrib, (Comparable) idOf(row)), o);
+		}
+		return objects;
+	}
+
+	/**
+	 * @effects
+	 * 	return the object of the row <tt>row</tt> of a query that selects
+	 * 	{@link #select(String)}, taking the objects that it links to from
+	 * 	<tt>links</tt> (or adding them to it).
+	 *
+	 * 	<p>throws NotPossibleException if fails to create the object; DataSourceException
+	 * 	if fails to retrieve a linked object
+	 */
+	public T toObject(DOMBasic dom, Map<String, Object> row, Map<Oid, Object> links)
+			throws NotPossibleException, DataSourceException {
+		Oid oid = dom.genObjectId(c, idAttrib, (Comparable) idOf(row));
+		T o = dom.lookUpObject(c, oid);
+		if (o != null)
+			return o;
+
+		Object[] args = new Object[fields.size()];
+		for (int i = 0; i < args.length; i++) {
+			Object val = column(row, i);
+			if (val != null && attribs.get(i).type().isDomainType())
+				val = linked(dom, fields.get(i).getType(), val, links);
+			args[i] = val;
+		}
+
+		try {
+			return constructor.newInstance(args);
+		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
+				| InvocationTargetException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "ObjectRows", c.getSimpleName() + " " + oid });
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the value of the id of the object of <tt>row</tt>
+	 */
+	Object idOf(Map<String, Object> row) {
+		for (int i = 0; i < attribs.size(); i++) {
+			if (attribs.get(i).id())
+				return column(row, i);
+		}
+		return null;
+	}
+
+	/**
+	 * @effects
+	 * 	return the object of <tt>assoc</tt> whose id is <tt>id</tt>, from
+	 * 	<tt>links</tt>, the object pool or (and then pooled) the data source
+	 */
+	private static Object linked(DOMBasic dom, Class<?> assoc, Object id, Map<Oid, Object> links)
+			throws DataSourceException {
+		Oid oid = dom.genObjectId(assoc, dom.getDsm().getDomainConstraint(assoc, "id"), (Comparable) id);
+		Object o = links.get(oid);
+		if (o == null) {
+			o = dom.lookUpObject(assoc, oid);
+			if (o == null) {
+				Map<Oid, ?> read = dom.retrieveObjects(assoc, Collections.singleton(oid), null);
+				o = (read != null) ? read.get(oid) : null;
+			}
+			if (o != null)
+				links.put(oid, o);
+		}
+		return o;
+	}
+
+	private static Object column(Map<String, Object> row, int i) {
+		Object val = row.get("C" + i);
+		return (val != null) ? val : row.get("c" + i);
+	}
+
+	/**
+	 * @effects
+	 * 	return the data source constructor of <tt>c</tt> of <tt>params</tt> parameters,
+	 * 	or <tt>null</tt> if it has none
+	 */
+	private static <T> Constructor<T> dataSourceConstructor(Class<T> c, int params) {
+		for (Constructor<?> cons : c.getConstructors()) {
+			for (DOpt opt : cons.getAnnotationsByType(DOpt.class)) {
+				if (opt.type() == DOpt.Type.DataSourceConstructor && cons.getParameterCount() == params) {
+					try {
+						return c.getConstructor(cons.getParameterTypes());
+					} catch (NoSuchMethodException e) {
+						return null;
+					}
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,304 @@
+package vn.com.personalfinance.services.report;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.model.Oid;
+import domainapp.basics.model.meta.DAttr;
+import domainapp.basics.util.events.ChangeEvent;
+import domainapp.basics.util.events.ChangeEventSource;
+import domainapp.basics.util.events.ChangeListener;
+import domainapp.basics.util.events.ObjectUpdateData;
+import vn.com.personalfinance.services.borrowandlend.model.ActionType;
+import vn.com.personalfinance.services.borrowandlend.model.BorrowAndLend;
+import vn.com.personalfinance.services.expenseandincome.model.Category;
+import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
+import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
+import vn.com.personalfinance.services.model.Accessors;
+
+/**
+ * @overview
+ * 	A bounded, least-recently-used cache of the objects retrieved by the report
+ * 	queries, keyed by the report class, the queried domain class and the report
+ * 	input values.
+ *
+ * 	<p>Each entry has a {@link Scope} that tells which objects of the queried class
+ * 	it may contain. When an object of {@link DailyExpense}, {@link DailyIncome} or
+ * 	{@link BorrowAndLend} is added, updated or deleted, only the entries whose scopes
+ * 	cover the object (before or after the change) are invalidated.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class ReportCache implements ChangeListener {
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private static ReportCache instance;
+
+	private int capacity;
+	private LinkedHashMap<Key<?>, CacheEntry> entries;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	public ReportCache(int capacity) {
+		this.capacity = capacity;
+		// access-ordered: the eldest entry is the least recently used
+		entries = new LinkedHashMap<Key<?>, CacheEntry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key<?>, CacheEntry> eldest) {
+				if (size() > ReportCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @effects
+	 * 	return the cache shared by the reports, registering it (the first time) to
+	 * 	receive the changes of the objects that the reports query
+	 */
+	public static synchronized ReportCache getInstance() {
+		if (instance == null) {
+			instance = new ReportCache(DEFAULT_CAPACITY);
+
+			DOMBasic dom = QRM.getInstance().getDom();
+			dom.addChangeListener(DailyExpense.class, instance);
+			dom.addChangeListener(DailyIncome.class, instance);
+			dom.addChangeListener(BorrowAndLend.class, instance);
+			dom.addChangeListener(Category.class, instance);
+			dom.addChangeListener(ActionType.class, instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * @effects
+	 * 	if this contains <tt>key</tt>
+	 * 		return the objects cached for it
+	 * 	else
+	 * 		return null
+	 */
+	public synchronized <T> Map<Oid, T> get(Key<T> key) {
+		CacheEntry e = entries.get(key);
+		if (e == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return key.resultOf(e);
+	}
+
+	/**
+	 * @effects
+	 * 	cache <tt>result</tt> (or an empty result if it is <tt>null</tt>) for
+	 * 	<tt>key</tt>, with the scope <tt>scope</tt>, evicting the least recently used
+	 * 	entry if this is full; return the cached result
+	 */
+	public synchronized <T> Map<Oid, T> put(Key<T> key, Map<Oid, T> result, Scope scope) {
+		if (result == null)
+			result = new LinkedHashMap<>();
+
+		entries.put(key, new CacheEntry(result, scope));
+		return result;
+	}
+
+	/**
+	 * @effects
+	 * 	remove all the entries of this
+	 */
+	public synchronized void clear() {
+		invalidations += entries.size();
+		entries.clear();
+	}
+
+	@Override
+	public void stateChanged(ChangeEvent e) {
+		ChangeEventSource<?> source = (ChangeEventSource<?>) e.getSource();
+		ObjectUpdateData data = (source.getEventData() instanceof ObjectUpdateData)
+				? (ObjectUpdateData) source.getEventData() : null;
+
+		for (Object o : source.getObjects()) {
+			invalidate(o, data);
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	remove the entries of this that may be affected by the change of <tt>o</tt>,
+	 * 	whose old values (if <tt>o</tt> was updated) are in <tt>data</tt>
+	 */
+	private synchronized void invalidate(Object o, ObjectUpdateData data) {
+		Class<?> c = o.getClass();
+		Accessors acc = Accessors.of(c);
+		for (Iterator<Map.Entry<Key<?>, CacheEntry>> it = entries.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Key<?>, CacheEntry> me = it.next();
+			Scope scope = me.getValue().scope;
+
+			boolean affected;
+			if (me.getKey().domainClass == c) {
+				String attrib = scope.getAttribute();
+				affected = scope.covers(acc.get(o, attrib))
+						|| (data != null && scope.covers(oldValue(data, attrib)));
+			} else {
+				// e.g. a category whose name the scope matches
+				affected = scope.dependsOn(c);
+			}
+
+			if (affected) {
+				it.remove();
+				invalidations++;
+			}
+		}
+	}
+
+	private static Object oldValue(ObjectUpdateData data, String attrib) {
+		for (DAttr a : data.getUpdatedAttribs()) {
+			if (a.name().equals(attrib))
+				return data.getOldVal(a);
+		}
+		return null;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ReportCache(" + entries.size() + "/" + capacity + ", hits=" + hits + ", misses=" + misses
+				+ ", evictions=" + evictions + ", invalidations=" + invalidations + ")";
+	}
+
+	/**
+	 * @overview
+	 * 	The key of a cached report query: the report class, the queried domain class
+	 * 	<tt>T</tt> and the report input values.
+	 */
+	public static class Key<T> {
+		private Class<?> reportClass;
+		private Class<T> domainClass;
+		private Object[] params;
+
+		public Key(Class<?> reportClass, Class<T> domainClass, Object... params) {
+			this.reportClass = reportClass;
+			this.domainClass = domainClass;
+			this.params = params;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + reportClass.hashCode();
+			result = prime * result + domainClass.hashCode();
+			result = prime * result + Arrays.hashCode(params);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key<?> other = (Key<?>) obj;
+			return reportClass == other.reportClass && domainClass == other.domainClass
+					&& Arrays.equals(params, other.params);
+		}
+
+		/**
+		 * @requires
+		 * 	<tt>e</tt> is the entry of a key equal to this
+		 * @effects
+		 * 	return the result of <tt>e</tt>, as the objects of <tt>T</tt>
+		 */
+		@SuppressWarnings("unchecked")
+		private Map<Oid, T> resultOf(CacheEntry e) {
+			// safe: equal keys have the same domain class, and put only caches a
+			// Map<Oid, T> for a Key<T>
+			return (Map<Oid, T>) e.result;
+		}
+
+		@Override
+		public String toString() {
+			return "Key(" + reportClass.getSimpleName() + "," + domainClass.getSimpleName() + ","
+					+ Arrays.toString(params) + ")";
+		}
+	}
+
+	/**
+	 * @overview
+	 * 	The objects that a cached query may contain, described by the values of one
+	 * 	attribute of the queried domain class.
+	 */
+	public static abstract class Scope {
+		private String attrib;
+
+		protected Scope(String attrib) {
+			this.attrib = attrib;
+		}
+
+		public String getAttribute() {
+			return attrib;
+		}
+
+		/**
+		 * @effects
+		 * 	if an object whose attribute value is <tt>value</tt> may be in the result
+		 * 		return true
+		 * 	else
+		 * 		return false
+		 */
+		public abstract boolean covers(Object value);
+
+		/**
+		 * @effects
+		 * 	if a change to an object of <tt>c</tt> (other than the queried class) may
+		 * 	change the result
+		 * 		return true
+		 * 	else
+		 * 		return false
+		 */
+		public boolean dependsOn(Class<?> c) {
+			return false;
+		}
+	}
+
+	private static class CacheEntry {
+		private Map<Oid, ?> result;
+		private Scope scope;
+
+		CacheEntry(Map<Oid, ?> result, Scope scope) {
+			this.result = result;
+			this.scope = scope;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package vn.com.personalfinance.services.report;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.Oid;
+
+/**
+ * @overview
+ * 	A read-only, forward-only collection of the objects that satisfy the filters of
+ * 	an {@link AggregateQuery}, which are read from the data source one page (of a
+ * 	fixed size) at a time while it is iterated.
+ *
+ * 	<p>Each page is read by one keyset query (ordered by id, after the last id of the
+ * 	previous page) of the rows of its objects (see {@link ObjectRows}): an object that
+ * 	is already in memory is reused, the others are created from their rows without
+ * 	being added to the object pool, so that only the objects of the current page are
+ * 	held by the cursor.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class ReportCursor<T> extends AbstractCollection<T> {
+	public static final int DEFAULT_PAGE_SIZE = 100;
+
+	private Class<T> c;
+	private AggregateQuery query;
+	private ObjectRows<T> objectRows;
+	private int size;
+	private int pageSize;
+
+	/**
+	 * @requires
+	 * 	<tt>query</tt> is a query over <tt>c</tt> /\
+	 * 	<tt>size</tt> is the number of objects that satisfy <tt>query</tt>
+	 * @effects
+	 * 	initialise this as the cursor of the objects of <tt>c</tt> that satisfy
+	 * 	<tt>query</tt>, read <tt>pageSize</tt> objects at a time
+	 */
+	public ReportCursor(Class<T> c, AggregateQuery query, int size, int pageSize) {
+		this.c = c;
+		this.query = query;
+		this.size = size;
+		this.pageSize = pageSize;
+	}
+
+	public ReportCursor(Class<T> c, AggregateQuery query, int size) {
+		this(c, query, size, DEFAULT_PAGE_SIZE);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @effects
+	 * 	return an iterator over the objects of this, which reads a new page from the
+	 * 	data source whenever the current page is exhausted.
+	 *
+	 * 	<p>throws NotPossibleException (from the iterator) if fails to read a page
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new PageIterator();
+	}
+
+	@Override
+	public String toString() {
+		return "ReportCursor(" + c.getSimpleName() + ", " + size + " objects, " + pageSize + " per page)";
+	}
+
+	/**
+	 * @overview
+	 * 	Iterates the pages of a cursor, holding only the current one.
+	 */
+	private class PageIterator implements Iterator<T> {
+		private List<T> page;
+		private int index;
+		private Object lastId;
+		private boolean exhausted;
+
+		PageIterator() {
+			page = new ArrayList<>();
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (index < page.size())
+				return true;
+			if (exhausted)
+				return false;
+
+			try {
+				readPage();
+			} catch (DataSourceException e) {
+				throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+						new Object[] { "ReportCursor.readPage", c.getSimpleName() });
+			}
+			return index < page.size();
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return page.get(index++);
+		}
+
+		/**
+		 * @effects
+		 * 	replace the current page by the next page of objects
+		 */
+		private void readPage() throws DataSourceException {
+			page.clear();
+			index = 0;
+
+			DOMBasic dom = QRM.getInstance().getDom();
+			if (objectRows == null)
+				objectRows = new ObjectRows<>(dom, c);
+
+			List<Map<String, Object>> rows = query.executeRows(objectRows, lastId, pageSize);
+			if (rows.size() < pageSize)
+				exhausted = true;
+
+			// the objects that the objects of the page link to
+			Map<Oid, Object> links = new HashMap<>();
+			for (Map<String, Object> row : rows) {
+				lastId = objectRows.idOf(row);
+				page.add(objectRows.toObject(dom, row, links));
+			}
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package vn.com.personalfinance.services.report;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import vn.com.personalfinance.services.datasource.DataSources;
+
+/**
+ * @overview
+ * 	Runs the independent sub-queries of a report (e.g. those of the expenses and of
+ * 	the incomes) concurrently, and waits for all of them before the report output
+ * 	is used.
+ *
+ * 	<p>At most {@link #getParallelism()} sub-queries run at the same time: the first
+ * 	sub-query runs in the calling thread and the others in a shared pool of
+ * 	<tt>parallelism - 1</tt> daemon threads. A parallelism of <tt>1</tt> runs the
+ * 	sub-queries one after another, as before.
+ *
+ * 	<p>Each thread of the pool runs its data source queries on a connection of its
+ * 	own (see {@link DataSources#bind(DOMBasic)}), which it keeps for as long as it
+ * 	runs, so that the sub-queries do not share the connection of the object store.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class ReportQueryExecutor {
+	private static final Logger logger = Logger.getLogger(ReportQueryExecutor.class.getName());
+
+	public static final int DEFAULT_PARALLELISM = 2;
+
+	private static ReportQueryExecutor instance;
+
+	private int parallelism;
+	private ExecutorService pool;
+
+	private ReportQueryExecutor(int parallelism) {
+		this.parallelism = parallelism;
+		if (parallelism > 1) {
+			pool = Executors.newFixedThreadPool(parallelism - 1, new ThreadFactory() {
+				private AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(() -> runWithConnection(r), "report-query-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	run <tt>r</tt> (the work of a thread of the pool) with a connection bound to the
+	 * 	current thread, closing it when <tt>r</tt> ends; if the connection cannot be
+	 * 	opened, the queries of the thread each open their own
+	 */
+	private static void runWithConnection(Runnable r) {
+		try {
+			DataSources.bind(QRM.getInstance().getDom());
+		} catch (NotPossibleException | SQLException e) {
+			logger.log(Level.WARNING, "Failed to open the connection of " + Thread.currentThread().getName(), e);
+		}
+
+		try {
+			r.run();
+		} finally {
+			try {
+				DataSources.unbind();
+			} catch (SQLException e) {
+				logger.log(Level.WARNING, "Failed to close the connection of " + Thread.currentThread().getName(), e);
+			}
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the executor shared by the reports
+	 */
+	public static synchronized ReportQueryExecutor getInstance() {
+		if (instance == null)
+			instance = new ReportQueryExecutor(DEFAULT_PARALLELISM);
+		return instance;
+	}
+
+	/**
+	 * @requires parallelism >= 1
+	 * @effects
+	 * 	make the reports run at most <tt>parallelism</tt> sub-queries at the same time,
+	 * 	shutting down the threads of the previous executor (if any)
+	 */
+	public static synchronized void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "parallelism", parallelism });
+		}
+
+		if (instance != null && instance.pool != null)
+			instance.pool.shutdown();
+		instance = new ReportQueryExecutor(parallelism);
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @effects
+	 * 	run <tt>queries</tt> (at most {@link #getParallelism()} of them at the same
+	 * 	time) and return when all of them have completed.
+	 *
+	 * 	<p>If some of them fail, throws the exception of the first (in the order of
+	 * 	<tt>queries</tt>) that failed: NotPossibleException if failed to generate data
+	 * 	source query; DataSourceException if fails to read from the data source
+	 */
+	public void runAll(SubQuery... queries) throws NotPossibleException, DataSourceException {
+		if (pool == null || queries.length < 2) {
+			for (SubQuery q : queries) {
+				q.run();
+			}
+			return;
+		}
+
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 1; i < queries.length; i++) {
+			SubQuery q = queries[i];
+			futures.add(pool.submit(() -> {
+				q.run();
+				return null;
+			}));
+		}
+
+		Exception failure = null;
+		try {
+			queries[0].run();
+		} catch (DataSourceException | RuntimeException e) {
+			failure = e;
+		}
+
+		// wait for all the others, even if one has failed
+		for (Future<?> f : futures) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				if (failure == null)
+					failure = unwrap(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (failure == null)
+					failure = new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+							new Object[] { "ReportQueryExecutor.runAll", "interrupted" });
+			}
+		}
+
+		if (failure instanceof DataSourceException)
+			throw (DataSourceException) failure;
+		if (failure != null)
+			throw (RuntimeException) failure;
+	}
+
+	/**
+	 * @effects
+	 * 	return the exception that a sub-query has thrown as <tt>cause</tt>, as one that
+	 * 	{@link #runAll(SubQuery...)} can rethrow
+	 */
+	private static Exception unwrap(Throwable cause) {
+		if (cause instanceof Error)
+			throw (Error) cause;
+		if (cause instanceof DataSourceException || cause instanceof RuntimeException)
+			return (Exception) cause;
+
+		return new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, cause,
+				new Object[] { "ReportQueryExecutor.runAll", cause });
+	}
+
+	/**
+	 * @overview
+	 * 	A sub-query of a report, which updates some of the report's output attributes.
+	 */
+	public interface SubQuery {
+		void run() throws NotPossibleException, DataSourceException;
+	}
+}
@@ -1,6 +1,5 @@
 package vn.com.personalfinance.services.savings;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 
@@ -10,11 +9,19 @@ import domainapp.basics.model.meta.DAttr;
 import domainapp.basics.model.meta.DClass;
 import domainapp.basics.model.meta.DOpt;
 import domainapp.basics.model.meta.DAttr.Type;
+import vn.com.personalfinance.services.account.Money;
 import vn.com.personalfinance.services.savingstransaction.SavingsTransaction;
+import vn.com.personalfinance.services.model.LinkCollection;
 
 /**
  * Represents an accumulation.
  * 
+ * <p>The remained amount is kept up to date by applying the amount of each transaction
+ * that is added, removed or amended, rather than by summing all the transactions; see
+ * {@link RemainedAmountVerifier} for the check against the sum. Until the transactions
+ * stored in the data source are all linked, it starts from the stored remained amount;
+ * once they are, it starts from the amount less their sum.
+ * 
  * @author Nguyen Hai - Group 2
  * @version 1.0
  */
@@ -26,6 +33,13 @@ public class AccumulativeSavings extends Savings {
 			serialisable=true)
 	private Double remainedAmount;
 	
+	// the amount less the sum of the amounts of the transactions (in minor units), which
+	// is negative if the transactions exceed the amount
+	private long remainingMinor;
+	
+	// the sum of the amounts of the linked transactions (in minor units)
+	private long linkedMinor;
+	
 	// constructor methods
 	@DOpt(type = DOpt.Type.ObjectFormConstructor)
 	public AccumulativeSavings(@AttrRef("name") String name,
@@ -42,10 +56,11 @@ public class AccumulativeSavings extends Savings {
 		super(id, name, purpose, amount, startDate);
 		
 		Collection<SavingsTransaction> savingsTransaction = getSavingsTransaction();
-		setSavingsTransaction(savingsTransaction = new ArrayList<>());
+		setSavingsTransaction(savingsTransaction = new LinkCollection<>());
 		setSavingsTransactionCount(0);
 		
 		this.remainedAmount=remainedAmount;
+		remainingMinor = Money.toMinor((remainedAmount != null) ? remainedAmount : getAmount());
 	}
 	
 	//getter
@@ -59,84 +74,157 @@ public class AccumulativeSavings extends Savings {
 		setAmount(amount, false);
 	}
 	
-	public void setAmount(double amount, boolean computeRemainedAmount) {
-		amount = getAmount();
+	public synchronized void setAmount(double amount, boolean computeRemainedAmount) {
+		long oldAmount = Money.toMinor(getAmount());
+		super.setAmount(amount);
+		remainingMinor += Money.toMinor(getAmount()) - oldAmount;
+		updateRemainedAmount();
+
 		if (computeRemainedAmount)
-			computeRemainedAmount();
+			recomputeRemainedAmount();
 	}
 	
-	// calculate accumulate
-	private void computeRemainedAmount() {
-		if (getSavingsTransactionCount() >= 0 && remainedAmount <= getAmount() && remainedAmount >= 0) {
-			double accumAmount = 0d;
-			for (SavingsTransaction savingsTransaction : getSavingsTransaction()) {
-				accumAmount += savingsTransaction.getAmount();
-			}
-			if (accumAmount <= getAmount()) {
-				remainedAmount = getAmount() - accumAmount;
-			} else {
-				remainedAmount = 0d;
-			}
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	update the remained amount of this for transactions of the total amount <tt>delta</tt>
+	 * 	being added to it (or removed from it, if <tt>delta</tt> is negative)
+	 */
+	private void applyDelta(double delta) {
+		long minor = Money.toMinor(delta);
+		linkedMinor += minor;
+		remainingMinor -= minor;
+		updateRemainedAmount();
+	}
+	
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	if all the transactions of this are linked to it
+	 * 		set the remained amount of this to the amount less the sum of their amounts
+	 */
+	private void seedRemainedAmount() {
+		if (getSavingsTransaction().size() == getSavingsTransactionCount()) {
+			remainingMinor = Money.toMinor(getAmount()) - linkedMinor;
+			updateRemainedAmount();
 		}
 	}
+	
+	private void updateRemainedAmount() {
+		remainedAmount = Money.toMajor(Math.max(0, remainingMinor));
+	}
+	
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	if all the transactions of this are linked to it
+	 * 		recompute the remained amount of this from their amounts and return the
+	 * 		remained amount before less that after (the drift)
+	 * 	else
+	 * 		return 0
+	 */
+	public synchronized double recomputeRemainedAmount() {
+		Collection<SavingsTransaction> transactions = getSavingsTransaction();
+		if (transactions.size() != getSavingsTransactionCount())
+			return 0;
+
+		long accum = 0;
+		for (SavingsTransaction s : transactions) {
+			accum += Money.toMinor(s.getAmount());
+		}
+
+		double before = remainedAmount;
+		linkedMinor = accum;
+		remainingMinor = Money.toMinor(getAmount()) - accum;
+		updateRemainedAmount();
+		return Money.subtract(before, remainedAmount);
+	}
+	
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	set the remained amount of this to its amount less <tt>saved</tt>, the sum of the
+	 * 	amounts of all its transactions (e.g. as stored in the data source), and return
+	 * 	the remained amount before less that after (the drift)
+	 */
+	public synchronized double correctRemainedAmount(double saved) {
+		double before = remainedAmount;
+		remainingMinor = Money.toMinor(getAmount()) - Money.toMinor(saved);
+		updateRemainedAmount();
+		return Money.subtract(before, remainedAmount);
+	}
+	
+	@Override
+	public synchronized void amendSavingsTransaction(SavingsTransaction s, double oldAmount) {
+		if (getSavingsTransaction().contains(s))
+			applyDelta(Money.subtract(s.getAmount(), oldAmount));
+	}
 
 	@DOpt(type = DOpt.Type.LinkAdder)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
-	public boolean addSavingsTransaction(SavingsTransaction s) {
-		if (!getSavingsTransaction().contains(s))
-			getSavingsTransaction().add(s);
+	public synchronized boolean addSavingsTransaction(SavingsTransaction s) {
+		if (getSavingsTransaction().add(s)) {
+			linkedMinor += Money.toMinor(s.getAmount());
+			seedRemainedAmount();
+		}
 
 		// no other attributes changed
 		return true;
 	}
 
 	@DOpt(type = DOpt.Type.LinkAdderNew)
-	public boolean addNewSavingsTransaction(SavingsTransaction s) {
-		getSavingsTransaction().add(s);
-		int count = getSavingsTransactionCount();
-		setSavingsTransactionCount(count + 1);
+	public synchronized boolean addNewSavingsTransaction(SavingsTransaction s) {
+		if (getSavingsTransaction().add(s)) {
+			int count = getSavingsTransactionCount();
+			setSavingsTransactionCount(count + 1);
 
-		computeRemainedAmount();
+			applyDelta(s.getAmount());
+		}
 		// no other attributes changed
 		return true;
 	}
 
 	@DOpt(type = DOpt.Type.LinkAdder)
-	public boolean addSavingsTransaction(Collection<SavingsTransaction> savingsTransaction) {
+	public synchronized boolean addSavingsTransaction(Collection<SavingsTransaction> savingsTransaction) {
 		for (SavingsTransaction s : savingsTransaction) {
-			if (!getSavingsTransaction().contains(s)) {
-				getSavingsTransaction().add(s);
+			if (getSavingsTransaction().add(s)) {
+				linkedMinor += Money.toMinor(s.getAmount());
 			}
 		}
+		seedRemainedAmount();
 		// no other attributes changed
 		return true;
 	}
 
 	@DOpt(type = DOpt.Type.LinkAdderNew)
-	public boolean addNewSavingsTransaction(Collection<SavingsTransaction> savingsTransaction) {
-		getSavingsTransaction().addAll(savingsTransaction);
+	public synchronized boolean addNewSavingsTransaction(Collection<SavingsTransaction> savingsTransaction) {
+		// only the transactions that are not linked yet change the remained amount
 		int count = getSavingsTransactionCount();
-		count += savingsTransaction.size();
+		long delta = 0;
+		for (SavingsTransaction s : savingsTransaction) {
+			if (getSavingsTransaction().add(s)) {
+				count++;
+				delta += Money.toMinor(s.getAmount());
+			}
+		}
 		setSavingsTransactionCount(count);
 
-		computeRemainedAmount();
+		applyDelta(Money.toMajor(delta));
 		// no other attributes changed (average mark is not serialisable!!!)
 		return true;
 	}
 
 	@DOpt(type = DOpt.Type.LinkRemover)
 	// only need to do this for reflexive association: @MemberRef(name="accounts")
-	public boolean removeSavingsTransaction(SavingsTransaction s) {
+	public synchronized boolean removeSavingsTransaction(SavingsTransaction s) {
 		boolean removed = getSavingsTransaction().remove(s);
 
 		if (removed) {
 			int count = getSavingsTransactionCount();
 			setSavingsTransactionCount(count - 1);
 
-			double currentAccountBalance = s.getAccount().getBalance();
-			s.getAccount().setBalance(currentAccountBalance += s.getAmount());
-
-			computeRemainedAmount();
+			// the account reverts its own balance (see Account.removeSavingsTransaction)
+			applyDelta(-s.getAmount());
 		}
 		// no other attributes changed
 		return true;
@@ -146,8 +234,7 @@ public class AccumulativeSavings extends Savings {
 	@Override
 	public String nextID(String id) throws ConstraintViolationException {
 		if (id == null) { // generate a new id
-			idCounter++;
-			return "A" + idCounter;
+			return "A" + ids.next();
 		} else {
 			// update id
 			int num;
@@ -158,9 +245,7 @@ public class AccumulativeSavings extends Savings {
 						new Object[] { id });
 			}
 
-			if (num > idCounter) {
-				idCounter = num;
-			}
+			ids.advanceTo(num);
 
 			return id;
 		}
@@ -1,6 +1,5 @@
 package vn.com.personalfinance.services.savings;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 
@@ -13,6 +12,7 @@ import domainapp.basics.model.meta.DAttr.Type;
 import domainapp.basics.util.cache.StateHistory;
 import vn.com.personalfinance.exceptions.DExCode;
 import vn.com.personalfinance.services.savingstransaction.SavingsTransaction;
+import vn.com.personalfinance.services.model.LinkCollection;
 
 /**
  * Represents a saving book.
@@ -61,7 +61,7 @@ public class EconomicalSavings extends Savings {
 		this.interestRate = interestRate;
 		
 		Collection<SavingsTransaction> savingsTransaction = getSavingsTransaction();
-		setSavingsTransaction(savingsTransaction = new ArrayList<>());
+		setSavingsTransaction(savingsTransaction = new LinkCollection<>());
 		setSavingsTransactionCount(0);
 		stateHist = new StateHistory<>();
 		computeFinalBalance();
@@ -198,8 +198,7 @@ public class EconomicalSavings extends Savings {
 	@Override
 	public String nextID(String id) throws ConstraintViolationException {
 		if (id == null) { // generate a new id
-			idCounter++;
-			return "E" + idCounter;
+			return "E" + ids.next();
 		} else {
 			// update id
 			int num;
@@ -210,9 +209,7 @@ public class EconomicalSavings extends Savings {
 						new Object[] { id });
 			}
 
-			if (num > idCounter) {
-				idCounter = num;
-			}
+			ids.advanceTo(num);
 
 			return id;
 		}
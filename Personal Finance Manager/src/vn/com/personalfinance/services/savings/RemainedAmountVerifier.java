@@ -0,0 +1,298 @@
+package vn.com.personalfinance.services.savings;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.Oid;
+import domainapp.basics.model.meta.DAttr;
+import vn.com.personalfinance.services.account.Money;
+import vn.com.personalfinance.services.datasource.DataSources;
+import vn.com.personalfinance.services.savingstransaction.SavingsTransaction;
+
+/**
+ * @overview
+ * 	Periodically recomputes the remained amounts of the {@link AccumulativeSavings}
+ * 	from their transactions, corrects those that have drifted from the sum and reports
+ * 	the drift.
+ *
+ * 	<p>The verification is scheduled by a daemon thread, every {@link #getPeriod()}
+ * 	milliseconds. On that thread, one query compares the stored remained amount of each
+ * 	accumulative savings with the sum of its stored transactions, and the savings that
+ * 	differ are looked up in (or retrieved into) the object pool. The corrections are
+ * 	then all applied in one task on the event dispatch thread, which the forms change
+ * 	the savings on: a savings whose transactions are all linked to it is recomputed from
+ * 	them, the others from the sum of the query. A corrected remained amount is stored
+ * 	through the object pool, which writes it to the data source and notifies the change
+ * 	(e.g. to the open forms).
+ *
+ * 	<p>If the data source is not relational, all the accumulative savings are retrieved
+ * 	and those whose transactions are all linked to them are recomputed.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class RemainedAmountVerifier {
+	public static final long DEFAULT_PERIOD = 10 * 60 * 1000L;
+
+	private static final Logger logger = Logger.getLogger(RemainedAmountVerifier.class.getName());
+
+	private static RemainedAmountVerifier instance;
+
+	private long period;
+	private ScheduledExecutorService timer;
+
+	private long runs;
+	private long drifts;
+
+	private RemainedAmountVerifier(long period) {
+		if (period < 1) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "period", period });
+		}
+		this.period = period;
+	}
+
+	/**
+	 * @effects
+	 * 	start verifying the remained amounts every <tt>period</tt> milliseconds, stopping
+	 * 	the previous verifier (if any), and return the verifier
+	 */
+	public static synchronized RemainedAmountVerifier start(long period) throws NotPossibleException {
+		RemainedAmountVerifier verifier = new RemainedAmountVerifier(period);
+		if (instance != null)
+			instance.stop();
+
+		verifier.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "remained-amount-verifier");
+			t.setDaemon(true);
+			return t;
+		});
+		verifier.timer.scheduleWithFixedDelay(() -> {
+			try {
+				verifier.verify();
+			} catch (RuntimeException e) {
+				// try again in the next period
+				logger.log(Level.WARNING, "Failed to verify the remained amounts", e);
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+
+		instance = verifier;
+		return verifier;
+	}
+
+	/**
+	 * @effects
+	 * 	stop verifying
+	 */
+	public synchronized void stop() {
+		if (timer != null) {
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of verifications run
+	 */
+	public synchronized long getRuns() {
+		return runs;
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of remained amounts found to have drifted
+	 */
+	public synchronized long getDrifts() {
+		return drifts;
+	}
+
+	/**
+	 * @modifies the accumulative savings
+	 * @effects
+	 * 	find the accumulative savings whose remained amounts may have drifted, recompute
+	 * 	them (in one task on the event dispatch thread), store those that have drifted and
+	 * 	return the drifts found (the remained amounts before less those after), by
+	 * 	savings.
+	 *
+	 * 	<p>throws NotPossibleException if the verification fails
+	 */
+	public Map<AccumulativeSavings, Double> verify() throws NotPossibleException {
+		DOMBasic dom = QRM.getInstance().getDom();
+		Map<AccumulativeSavings, Double> candidates;
+		try {
+			candidates = findCandidates(dom);
+		} catch (DataSourceException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+					new Object[] { "RemainedAmountVerifier", "verify" });
+		}
+
+		if (SwingUtilities.isEventDispatchThread())
+			return correct(dom, candidates);
+
+		Map<AccumulativeSavings, Double> result = new LinkedHashMap<>();
+		try {
+			SwingUtilities.invokeAndWait(() -> result.putAll(correct(dom, candidates)));
+		} catch (InterruptedException e) {
+			// stopped
+			Thread.currentThread().interrupt();
+			return Collections.emptyMap();
+		} catch (InvocationTargetException e) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e.getCause(),
+					new Object[] { "RemainedAmountVerifier", "verify" });
+		}
+		return result;
+	}
+
+	/**
+	 * @effects
+	 * 	if the data source of <tt>dom</tt> is relational
+	 * 		return the accumulative savings whose stored remained amounts differ from
+	 * 		their amounts less the sums of their stored transactions, with those sums,
+	 * 		looking them up in the object pool or else retrieving them
+	 * 	else
+	 * 		return all the accumulative savings, without sums
+	 *
+	 * 	<p>throws DataSourceException if fails to read the data source
+	 */
+	private static Map<AccumulativeSavings, Double> findCandidates(DOMBasic dom)
+			throws NotPossibleException, DataSourceException {
+		Map<AccumulativeSavings, Double> candidates = new LinkedHashMap<>();
+		if (!(dom.getOsm() instanceof RelationalOSMBasic)) {
+			Map<Oid, AccumulativeSavings> all = dom.retrieveObjects(AccumulativeSavings.class);
+			if (all != null) {
+				for (AccumulativeSavings s : all.values())
+					candidates.put(s, null);
+			}
+			return candidates;
+		}
+
+		RelationalOSMBasic rosm = (RelationalOSMBasic) dom.getOsm();
+		DSMBasic dsm = dom.getDsm();
+		Class<AccumulativeSavings> c = AccumulativeSavings.class;
+		// the inherited attributes are stored in the table of the super-class
+		String id = rosm.toDBColumnName(Savings.class, Savings.S_id, false);
+		String amount = "s." + rosm.toDBColumnName(Savings.class, Savings.S_amount, false);
+		String remained = "a." + rosm.toDBColumnName(c, AccumulativeSavings.S_remainedAmount, false);
+		String sql = "select s." + id + " as id, " + amount + " as amount, " + remained
+				+ " as remained, sum(t." + rosm.toDBColumnName(SavingsTransaction.class, "amount", false)
+				+ ") as saved from " + dsm.getDomainClassName(c) + " a join "
+				+ dsm.getDomainClassName(Savings.class) + " s on a."
+				+ rosm.toDBColumnName(c, Savings.S_id, false) + " = s." + id + " left join "
+				+ dsm.getDomainClassName(SavingsTransaction.class) + " t on t."
+				+ rosm.toDBColumnName(SavingsTransaction.class, "savings", false) + " = s." + id
+				+ " group by s." + id + ", " + amount + ", " + remained;
+
+		DAttr idAttrib = dsm.getDomainConstraint(c, Savings.S_id);
+		Map<Oid, Double> drifted = new LinkedHashMap<>();
+		for (Map<String, Object> row : DataSources.query(dom, sql)) {
+			double saved = number(row.get("SAVED"));
+			long expected = Math.max(0, Money.toMinor(number(row.get("AMOUNT"))) - Money.toMinor(saved));
+			Object stored = row.get("REMAINED");
+			if (stored == null || Money.toMinor(number(stored)) != expected)
+				drifted.put(dom.genObjectId(c, idAttrib, (Comparable) row.get("ID")), saved);
+		}
+		if (drifted.isEmpty())
+			return candidates;
+
+		// the savings that are not in the object pool are retrieved at once
+		List<Oid> missing = new ArrayList<>();
+		for (Oid oid : drifted.keySet()) {
+			if (dom.lookUpObject(c, oid) == null)
+				missing.add(oid);
+		}
+		if (!missing.isEmpty())
+			dom.retrieveObjects(c, missing, null);
+
+		for (Map.Entry<Oid, Double> e : drifted.entrySet()) {
+			AccumulativeSavings s = dom.lookUpObject(c, e.getKey());
+			if (s != null)
+				candidates.put(s, e.getValue());
+		}
+		return candidates;
+	}
+
+	private static double number(Object val) {
+		return (val != null) ? ((Number) val).doubleValue() : 0;
+	}
+
+	/**
+	 * @modifies the savings of <tt>candidates</tt>
+	 * @effects
+	 * 	recompute the remained amounts of the savings of <tt>candidates</tt>, from their
+	 * 	transactions if they are all linked or else from the sums of <tt>candidates</tt>
+	 * 	(if any), store those that have drifted and return the drifts, by savings
+	 */
+	private Map<AccumulativeSavings, Double> correct(DOMBasic dom, Map<AccumulativeSavings, Double> candidates) {
+		Map<AccumulativeSavings, Double> result = new LinkedHashMap<>();
+
+		DAttr attr = dom.getDsm().getDomainConstraint(AccumulativeSavings.class,
+				AccumulativeSavings.S_remainedAmount);
+		for (Map.Entry<AccumulativeSavings, Double> e : candidates.entrySet()) {
+			AccumulativeSavings s = e.getKey();
+			double before = s.getRemainedAmount();
+			double drift;
+			if (s.getSavingsTransaction().size() == s.getSavingsTransactionCount())
+				drift = s.recomputeRemainedAmount();
+			else if (e.getValue() != null)
+				drift = s.correctRemainedAmount(e.getValue());
+			else
+				continue;
+
+			if (Money.toMinor(drift) != 0) {
+				result.put(s, drift);
+				logger.warning("The remained amount of " + s + " had drifted by " + drift);
+			}
+			if (Money.toMinor(drift) != 0 || e.getValue() != null)
+				store(dom, s, attr, before);
+		}
+
+		synchronized (this) {
+			runs++;
+			drifts += result.size();
+		}
+		return result;
+	}
+
+	/**
+	 * @modifies dom
+	 * @effects
+	 * 	write the corrected remained amount <tt>attr</tt> of <tt>s</tt> (which was
+	 * 	<tt>before</tt>) to the data source and notify the change through <tt>dom</tt>; if
+	 * 	this fails, log it (the correction is kept in the object pool)
+	 */
+	private static void store(DOMBasic dom, AccumulativeSavings s, DAttr attr, double before) {
+		Map<DAttr, Object> newVals = new LinkedHashMap<>();
+		newVals.put(attr, s.getRemainedAmount());
+		Map<DAttr, Object> oldVals = new LinkedHashMap<>();
+		oldVals.put(attr, before);
+		try {
+			// the remained amount is not mutable, so it is not set again but it is written
+			dom.updateObject(s, oldVals, newVals, true);
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "Failed to store the remained amount of " + s, e);
+		}
+	}
+}
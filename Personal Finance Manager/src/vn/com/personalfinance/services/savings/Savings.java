@@ -16,7 +16,10 @@ import domainapp.basics.model.meta.DAssoc.AssocType;
 import domainapp.basics.model.meta.DAssoc.Associate;
 import domainapp.basics.model.meta.DAttr.Type;
 import domainapp.basics.util.Tuple;
+import vn.com.personalfinance.services.account.Money;
 import vn.com.personalfinance.services.savingstransaction.SavingsTransaction;
+import vn.com.personalfinance.services.datasource.IdSequence;
+import vn.com.personalfinance.services.model.LinkCollection;
 
 /**
  * Represents savings. The account ID is auto-incremented.
@@ -37,7 +40,7 @@ public abstract class Savings {
 	@DAttr(name = S_id, id = true, type = Type.String, auto = true, length = 6, mutable = false, optional = false)
 	private String id;
 	// static variable to keep track of account id
-	public static int idCounter = 0;
+	protected static final IdSequence ids = IdSequence.of(Savings.class);
 	
 	@DAttr(name = S_name, type = Type.String, length = 20, optional = false, cid=true)
 	private String name;
@@ -79,7 +82,7 @@ public abstract class Savings {
 		// assign other values
 		this.name = name;
 		this.purpose = purpose;
-		this.amount = amount;
+		this.amount = Money.round(amount);
 		this.startDate = startDate;
 	}
 	
@@ -116,7 +119,7 @@ public abstract class Savings {
 	}
 	
 	public void setAmount(double amount) {
-		this.amount = amount;
+		this.amount = Money.round(amount);
 	}
 		
 	public void setStartDate(Date startDate) {
@@ -132,7 +135,7 @@ public abstract class Savings {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + Integer.parseInt(id.substring(1));
+		result = prime * result + ((id == null) ? 0 : id.hashCode());
 		return result;
 	}
 	
@@ -169,9 +172,7 @@ public abstract class Savings {
 				try {
 					int maxIDNum = Integer.parseInt(maxID.substring(1));
 
-					if (maxIDNum > idCounter) {
-						idCounter = maxIDNum;
-					}
+					ids.advanceTo(maxIDNum);
 
 				} catch (RuntimeException e) {
 					throw new ConstraintViolationException(ConstraintViolationException.Code.INVALID_VALUE, e,
@@ -245,8 +246,17 @@ public abstract class Savings {
 		return false;
 	}
 
+	/**
+	 * @effects
+	 * 	update this for the change of the amount of its transaction <tt>s</tt> from
+	 * 	<tt>oldAmount</tt>; by default, nothing changes
+	 */
+	public void amendSavingsTransaction(SavingsTransaction s, double oldAmount) {
+		// no attributes depend on the amounts of the transactions
+	}
+
 	public void setSavingsTransaction(Collection<SavingsTransaction> savingsTransaction) {
-		this.savingsTransaction = savingsTransaction;
+		this.savingsTransaction = LinkCollection.of(savingsTransaction);
 		savingsTransactionCount = savingsTransaction.size();
 	}
 }
@@ -0,0 +1,127 @@
+package vn.com.personalfinance.services.savings;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import domainapp.basics.exceptions.NotPossibleException;
+import vn.com.personalfinance.services.account.Money;
+
+/**
+ * @overview
+ * 	The projected month-end balances of a portfolio of savings over a number of months,
+ * 	as computed by {@link SavingsProjectionEngine}: one balance curve per savings (if
+ * 	requested) and the total of the portfolio per month.
+ *
+ * 	<p>Month <tt>0</tt> is the month of {@link #getFrom()}. The balances are kept in minor
+ * 	units (see {@link Money}).
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class SavingsProjection {
+	private Date from;
+	private int months;
+	private List<Savings> savings;
+	private long[][] curves;
+	private long[] totals;
+
+	// the indexes of the savings, created on first use
+	private Map<Savings, Integer> indexes;
+
+	SavingsProjection(Date from, int months, List<Savings> savings, long[][] curves, long[] totals) {
+		this.from = from;
+		this.months = months;
+		this.savings = savings;
+		this.curves = curves;
+		this.totals = totals;
+	}
+
+	public Date getFrom() {
+		return from;
+	}
+
+	public int getMonths() {
+		return months;
+	}
+
+	/**
+	 * @effects
+	 * 	return the projected savings, in the order of their curves
+	 */
+	public List<Savings> getSavings() {
+		return Collections.unmodifiableList(savings);
+	}
+
+	/**
+	 * @effects
+	 * 	if the curves were computed
+	 * 		return true
+	 * 	else
+	 * 		return false
+	 */
+	public boolean hasCurves() {
+		return curves != null;
+	}
+
+	/**
+	 * @effects
+	 * 	return the balances (in minor units) of the <tt>i</tt>-th savings, by month; the
+	 * 	array is that of this, not a copy.
+	 *
+	 * 	<p>throws NotPossibleException if the curves were not computed
+	 */
+	public long[] getCurve(int i) throws NotPossibleException {
+		if (curves == null) {
+			throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM,
+					new Object[] { "SavingsProjection", "getCurve" });
+		}
+		return curves[i];
+	}
+
+	/**
+	 * @effects
+	 * 	return the balances (in minor units) of <tt>s</tt>, by month; or <tt>null</tt> if
+	 * 	<tt>s</tt> is not projected by this.
+	 *
+	 * 	<p>throws NotPossibleException if the curves were not computed
+	 */
+	public synchronized long[] getCurve(Savings s) throws NotPossibleException {
+		if (indexes == null) {
+			indexes = new IdentityHashMap<>();
+			for (int i = 0; i < savings.size(); i++)
+				indexes.put(savings.get(i), i);
+		}
+
+		Integer i = indexes.get(s);
+		return (i != null) ? getCurve(i) : null;
+	}
+
+	/**
+	 * @effects
+	 * 	return the balance of <tt>s</tt> at the end of <tt>month</tt>
+	 */
+	public double getBalance(Savings s, int month) throws NotPossibleException {
+		long[] curve = getCurve(s);
+		return (curve != null) ? Money.toMajor(curve[month]) : 0;
+	}
+
+	/**
+	 * @effects
+	 * 	return the total balance of the portfolio at the end of <tt>month</tt>
+	 */
+	public double getTotal(int month) {
+		return Money.toMajor(totals[month]);
+	}
+
+	/**
+	 * @effects
+	 * 	return the total balances (in minor units) of the portfolio, by month
+	 */
+	public long[] getTotals() {
+		return totals.clone();
+	}
+}
@@ -0,0 +1,251 @@
+package vn.com.personalfinance.services.savings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.Oid;
+import vn.com.personalfinance.services.account.Money;
+
+/**
+ * @overview
+ * 	Projects the month-end balances of a portfolio of {@link EconomicalSavings} and
+ * 	{@link AccumulativeSavings} over the next years.
+ *
+ * 	<p>The balance of an economical savings is its amount plus the simple interest
+ * 	earned since its start date (as by {@link EconomicalSavings#computeFinalBalance()}),
+ * 	up to its duration, after which it stays at its final balance; it is 0 before the
+ * 	start date. The balance of an accumulative savings is the sum of its transactions,
+ * 	growing at their average monthly rate since its start date, up to its amount.
+ *
+ * 	<p>The savings are read into primitive arrays once, then their curves are computed
+ * 	in parallel (fork/join over ranges of savings) and summed into the portfolio totals.
+ *
+ * @example
+ * <pre>
+ * 	SavingsProjection p = new SavingsProjectionEngine().projectAll(new Date(), 10, false);
+ * 	double total = p.getTotal(12);	// in a year
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class SavingsProjectionEngine {
+	// the number of savings below which a range is projected in one task
+	public static final int LEAF_SIZE = 1024;
+
+	private ForkJoinPool pool;
+
+	public SavingsProjectionEngine(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public SavingsProjectionEngine() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @effects
+	 * 	return the projection of all the economical and accumulative savings in the data
+	 * 	source (retrieving those that are not in the object pool) over <tt>years</tt> years
+	 * 	from the month of <tt>from</tt>, with the curve of each savings if <tt>curves</tt>.
+	 *
+	 * 	<p>throws NotPossibleException if fails to retrieve the savings
+	 */
+	public SavingsProjection projectAll(Date from, int years, boolean curves) throws NotPossibleException {
+		DOMBasic dom = QRM.getInstance().getDom();
+		List<Savings> savings = new ArrayList<>();
+		for (Class<? extends Savings> c : Arrays.asList(EconomicalSavings.class, AccumulativeSavings.class)) {
+			Map<Oid, ? extends Savings> read;
+			try {
+				read = dom.retrieveObjects(c);
+			} catch (DataSourceException e) {
+				throw new NotPossibleException(NotPossibleException.Code.FAIL_TO_PERFORM, e,
+						new Object[] { "SavingsProjectionEngine", "projectAll" });
+			}
+			if (read != null)
+				savings.addAll(read.values());
+		}
+		return project(savings, from, years, curves);
+	}
+
+	/**
+	 * @effects
+	 * 	return the projection of <tt>savings</tt> over <tt>years</tt> years from the month
+	 * 	of <tt>from</tt>, with the curve of each savings if <tt>curves</tt>; savings that
+	 * 	are neither economical nor accumulative have a balance of 0.
+	 *
+	 * 	<p>throws NotPossibleException if <tt>years &lt; 1</tt>
+	 */
+	public SavingsProjection project(Collection<? extends Savings> savings, Date from, int years,
+			boolean curves) throws NotPossibleException {
+		if (years < 1) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "years", years });
+		}
+
+		int months = years * 12;
+		Portfolio p = new Portfolio(new ArrayList<>(savings), from, months, curves);
+		long[] totals = pool.invoke(new ProjectTask(p, 0, p.size));
+
+		return new SavingsProjection(from, months, p.savings, p.curves, totals);
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of months from the year 0 to the month of <tt>date</tt>
+	 */
+	private static int monthIndex(Calendar cal, Date date) {
+		cal.setTime(date);
+		return cal.get(Calendar.YEAR) * 12 + cal.get(Calendar.MONTH);
+	}
+
+	/**
+	 * @overview
+	 * 	The inputs of a projection, one array element per savings, and its curves.
+	 */
+	private static class Portfolio {
+		private static final byte ECONOMICAL = 1;
+		private static final byte ACCUMULATIVE = 2;
+
+		final List<Savings> savings;
+		final int size;
+		final int months;
+
+		// 0 if the savings are neither economical nor accumulative
+		final byte[] kind;
+		// the month (relative to month 0) that each savings starts
+		final int[] start;
+		// the amount (in minor units)
+		final long[] amount;
+		// economical: the interest of a month (in minor units, not rounded)
+		// accumulative: the deposits of a month (in minor units, not rounded)
+		final double[] monthly;
+		// economical: the duration (in months)
+		final int[] duration;
+		// accumulative: the sum of the transactions (in minor units)
+		final long[] saved;
+
+		final long[][] curves;
+
+		Portfolio(List<Savings> savings, Date from, int months, boolean curves) {
+			this.savings = savings;
+			this.months = months;
+			size = savings.size();
+			kind = new byte[size];
+			start = new int[size];
+			amount = new long[size];
+			monthly = new double[size];
+			duration = new int[size];
+			saved = new long[size];
+			this.curves = curves ? new long[size][] : null;
+
+			Calendar cal = Calendar.getInstance();
+			int month0 = monthIndex(cal, from);
+			for (int i = 0; i < size; i++) {
+				Savings s = savings.get(i);
+				if (s.getStartDate() == null)
+					continue;
+
+				start[i] = monthIndex(cal, s.getStartDate()) - month0;
+				amount[i] = Money.toMinor(s.getAmount());
+				if (s instanceof EconomicalSavings) {
+					EconomicalSavings e = (EconomicalSavings) s;
+					kind[i] = ECONOMICAL;
+					monthly[i] = amount[i] * e.getInterestRate() / 12;
+					duration[i] = e.getMonthlyDuration();
+				} else if (s instanceof AccumulativeSavings) {
+					AccumulativeSavings a = (AccumulativeSavings) s;
+					kind[i] = ACCUMULATIVE;
+					saved[i] = amount[i] - Money.toMinor(a.getRemainedAmount());
+					// the months since the start, including month 0
+					int elapsed = 1 - start[i];
+					monthly[i] = (elapsed > 0) ? (double) saved[i] / elapsed : 0;
+				}
+			}
+		}
+
+		/**
+		 * @effects
+		 * 	compute the balances of the <tt>i</tt>-th savings into <tt>curve</tt>
+		 */
+		void project(int i, long[] curve) {
+			switch (kind[i]) {
+			case ECONOMICAL:
+				for (int m = Math.max(0, start[i]); m < months; m++) {
+					int elapsed = Math.min(m - start[i], duration[i]);
+					curve[m] = amount[i] + Math.round(monthly[i] * elapsed);
+				}
+				break;
+			case ACCUMULATIVE:
+				for (int m = Math.max(0, start[i]); m < months; m++) {
+					curve[m] = Math.min(amount[i], saved[i] + Math.round(monthly[i] * m));
+				}
+				break;
+			default:
+				// not projected
+			}
+		}
+	}
+
+	/**
+	 * @overview
+	 * 	Projects the savings <tt>[lo, hi)</tt> of a portfolio and returns their totals.
+	 */
+	private static class ProjectTask extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+
+		private Portfolio p;
+		private int lo;
+		private int hi;
+
+		ProjectTask(Portfolio p, int lo, int hi) {
+			this.p = p;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (hi - lo <= LEAF_SIZE) {
+				long[] totals = new long[p.months];
+				long[] scratch = (p.curves == null) ? new long[p.months] : null;
+				for (int i = lo; i < hi; i++) {
+					long[] curve;
+					if (p.curves != null) {
+						curve = new long[p.months];
+						p.curves[i] = curve;
+					} else {
+						curve = scratch;
+						Arrays.fill(curve, 0);
+					}
+
+					p.project(i, curve);
+					for (int m = 0; m < curve.length; m++)
+						totals[m] += curve[m];
+				}
+				return totals;
+			}
+
+			int mid = (lo + hi) >>> 1;
+			ProjectTask left = new ProjectTask(p, lo, mid);
+			left.fork();
+			long[] totals = new ProjectTask(p, mid, hi).compute();
+			long[] other = left.join();
+			for (int m = 0; m < totals.length; m++)
+				totals[m] += other[m];
+			return totals;
+		}
+	}
+}
@@ -7,7 +7,9 @@ import domainapp.basics.model.meta.DAttr;
 import domainapp.basics.model.meta.DClass;
 import domainapp.basics.model.meta.DOpt;
 import vn.com.personalfinance.services.account.Account;
+import vn.com.personalfinance.services.account.Money;
 import vn.com.personalfinance.services.savings.Savings;
+import vn.com.personalfinance.services.datasource.IdSequence;
 import domainapp.basics.model.meta.DAssoc.AssocEndType;
 import domainapp.basics.model.meta.DAssoc.AssocType;
 import domainapp.basics.model.meta.DAssoc.Associate;
@@ -18,9 +20,9 @@ import domainapp.basics.util.Tuple;
 public class SavingsTransaction implements Comparable {
 	
 	// attribute
-	@DAttr(name = "id", id = true, auto = true, type = Type.String, length = 5, optional = false, mutable = false)
+	@DAttr(name = "id", id = true, auto = true, type = Type.String, length = 10, optional = false, mutable = false)
 	private String id;
-	private static int idCounter = 0;
+	private static final IdSequence ids = IdSequence.of(SavingsTransaction.class);
 	  
 	@DAttr(name = "account", type = Type.Domain, length = 15, optional = false)
 	@DAssoc(ascName = "account-has-savingsTransaction", role = "savingsTransaction", 
@@ -62,7 +64,7 @@ public class SavingsTransaction implements Comparable {
 	  this.id = nextID(id);
 	  this.account = account;
 	  this.savings = savings;
-	  this.amount = (amount != null) ? amount.doubleValue() : null;
+	  this.amount = Money.round(amount);
 	  this.description = description;
 	}
 	
@@ -76,7 +78,10 @@ public class SavingsTransaction implements Comparable {
 	}
 	
 	public void setAmount(double amount) {
-		this.amount = amount;
+		double oldAmount = this.amount;
+		this.amount = Money.round(amount);
+		if (savings != null && oldAmount != this.amount)
+			savings.amendSavingsTransaction(this, oldAmount);
 	}
 	
 	public void setDescription(String description) {
@@ -121,7 +126,7 @@ public class SavingsTransaction implements Comparable {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + Integer.parseInt(id);
+		result = prime * result + ((id == null) ? 0 : id.hashCode());
 		return result;
 	}
 
@@ -134,7 +139,10 @@ public class SavingsTransaction implements Comparable {
 		if (getClass() != obj.getClass())
 			return false;
 		SavingsTransaction other = (SavingsTransaction) obj;
-		if (id != other.id)
+		if (id == null) {
+			if (other.id != null)
+				return false;
+		} else if (!id.equals(other.id))
 			return false;
 		return true;
 	}
@@ -142,8 +150,7 @@ public class SavingsTransaction implements Comparable {
 	
 	private static String nextID(String id) {
 		if (id == null) { // generate a new id
-			idCounter++;
-			return "ST" + idCounter;
+			return "ST" + ids.next();
 		} else {
 			// update id
 			int num;
@@ -153,9 +160,7 @@ public class SavingsTransaction implements Comparable {
 				throw new ConstraintViolationException(ConstraintViolationException.Code.INVALID_VALUE, e, new Object[] { id });
 			}
 
-			if (num > idCounter) {
-				idCounter = num;
-			}
+			ids.advanceTo(num);
 
 			return id;
 		}
@@ -177,9 +182,7 @@ public class SavingsTransaction implements Comparable {
 				try {
 					int maxIDNum = Integer.parseInt(maxID.substring(2));
 
-					if (maxIDNum > idCounter) {
-						idCounter = maxIDNum;
-					}
+					ids.advanceTo(maxIDNum);
 
 				} catch (RuntimeException e) {
 					throw new ConstraintViolationException(ConstraintViolationException.Code.INVALID_VALUE, e,
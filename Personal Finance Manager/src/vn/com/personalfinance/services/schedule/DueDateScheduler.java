@@ -0,0 +1,574 @@
+package vn.com.personalfinance.services.schedule;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import domainapp.basics.core.dodm.dom.DOMBasic;
+import domainapp.basics.core.dodm.dsm.DSMBasic;
+import domainapp.basics.core.dodm.osm.OSM;
+import domainapp.basics.core.dodm.osm.relational.RelationalOSMBasic;
+import domainapp.basics.core.dodm.qrm.QRM;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.util.events.ChangeEvent;
+import domainapp.basics.util.events.ChangeEventSource;
+import domainapp.basics.util.events.ChangeListener;
+import vn.com.personalfinance.services.borrowandlend.model.BorrowAndLend;
+import vn.com.personalfinance.services.datasource.DataSources;
+import vn.com.personalfinance.services.savings.EconomicalSavings;
+import vn.com.personalfinance.services.savings.Savings;
+
+/**
+ * @overview
+ * 	Alerts the maturity dates of the {@link EconomicalSavings} (the start date plus the
+ * 	duration) and the due dates of the {@link BorrowAndLend} (the start date plus the
+ * 	period, in months), and answers which of them are due in the next days.
+ *
+ * 	<p>The dates are indexed by day in a timing wheel of {@link #SLOTS} days from the
+ * 	current day; dates beyond the wheel are kept in an overflow map and moved into the
+ * 	wheel as the days pass. Each day is a slot, so that adding or removing a date and
+ * 	firing the alerts of a day cost O(1) per date, and the dates due in the next
+ * 	<tt>n</tt> days are read from <tt>n</tt> slots rather than from the data source.
+ *
+ * 	<p>The index is loaded once from the data source, by a query of the ids, names,
+ * 	start dates and periods (not of the objects), and then kept up to date by listening
+ * 	to the objects that are added, updated or deleted (through a forwarding listener
+ * 	that a stopped scheduler detaches itself from, as the object pool cannot remove a
+ * 	listener). Dates before the current day are
+ * 	not indexed. The alerts of a day are fired to the listeners (or, if there are none,
+ * 	logged) when the day is first reached, by a daemon thread that checks the day every
+ * 	{@link #getPeriod()} milliseconds.
+ *
+ * @example
+ * <pre>
+ * 	DueDateScheduler scheduler = DueDateScheduler.start(DueDateScheduler.DEFAULT_PERIOD);
+ * 	List&lt;DueDateScheduler.Due&gt; week = scheduler.dueWithin(7);
+ * </pre>
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class DueDateScheduler {
+	public static final long DEFAULT_PERIOD = 60 * 60 * 1000L;
+
+	private static final Logger logger = Logger.getLogger(DueDateScheduler.class.getName());
+
+	// the days of the wheel (a power of 2, more than a year)
+	public static final int SLOTS = 512;
+	private static final int MASK = SLOTS - 1;
+
+	private static DueDateScheduler instance;
+
+	private long period;
+	private ScheduledExecutorService timer;
+	// the listener of the changes of the objects, registered with the object pool
+	private Forwarder forwarder;
+
+	// slot (day & MASK) -> the dates of the day; the wheel holds the days [today, today + SLOTS)
+	private List<Set<Due>> wheel;
+	// day -> the dates of the days from today + SLOTS
+	private NavigableMap<Long, Set<Due>> overflow;
+	// class -> id -> date
+	private Map<Class<?>, Map<Object, Due>> dues;
+
+	// the first day of the wheel
+	private long today;
+	// whether the alerts of today have been fired
+	private boolean fired;
+
+	private List<Listener> listeners;
+
+	private long alerts;
+
+	private DueDateScheduler(long period, long today) {
+		if (period < 1) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "period", period });
+		}
+		this.period = period;
+		this.today = today;
+		wheel = new ArrayList<>(SLOTS);
+		for (int i = 0; i < SLOTS; i++)
+			wheel.add(new LinkedHashSet<>());
+		overflow = new TreeMap<>();
+		dues = new HashMap<>();
+		listeners = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * @effects
+	 * 	load the dates from the data source and start alerting them, checking the day
+	 * 	every <tt>period</tt> milliseconds; stop the previous scheduler (if any) and return
+	 * 	the scheduler.
+	 *
+	 * 	<p>throws NotPossibleException if <tt>period &lt; 1</tt> or failed to read the
+	 * 	objects; DataSourceException if fails to read from the data source
+	 */
+	public static synchronized DueDateScheduler start(long period) throws NotPossibleException, DataSourceException {
+		DueDateScheduler scheduler = new DueDateScheduler(period, currentDay());
+		DOMBasic dom = QRM.getInstance().getDom();
+
+		scheduler.load(dom, EconomicalSavings.class);
+		scheduler.load(dom, BorrowAndLend.class);
+
+		if (instance != null)
+			instance.stop();
+
+		scheduler.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "due-date-scheduler");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.timer.scheduleWithFixedDelay(() -> {
+			try {
+				scheduler.tick(currentDay());
+			} catch (RuntimeException e) {
+				// try again in the next period
+				logger.log(Level.WARNING, "Failed to alert the due dates", e);
+			}
+		}, 0, period, TimeUnit.MILLISECONDS);
+
+		scheduler.forwarder = new Forwarder(scheduler);
+		dom.addChangeListener(EconomicalSavings.class, scheduler.forwarder);
+		dom.addChangeListener(BorrowAndLend.class, scheduler.forwarder);
+		instance = scheduler;
+		return scheduler;
+	}
+
+	/**
+	 * @effects
+	 * 	return the running scheduler, or <tt>null</tt> if none has been started
+	 */
+	public static synchronized DueDateScheduler getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @effects
+	 * 	stop alerting and detach this from the changes of the objects
+	 */
+	public synchronized void stop() {
+		if (timer != null) {
+			timer.shutdownNow();
+			timer = null;
+		}
+		if (forwarder != null) {
+			forwarder.target = null;
+			forwarder = null;
+		}
+	}
+
+	public long getPeriod() {
+		return period;
+	}
+
+	public void addListener(Listener l) {
+		listeners.add(l);
+	}
+
+	public void removeListener(Listener l) {
+		listeners.remove(l);
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of dates indexed
+	 */
+	public synchronized int getSize() {
+		int size = 0;
+		for (Map<Object, Due> ids : dues.values())
+			size += ids.size();
+		return size;
+	}
+
+	/**
+	 * @effects
+	 * 	return the number of alerts fired
+	 */
+	public synchronized long getAlerts() {
+		return alerts;
+	}
+
+	/**
+	 * @effects
+	 * 	return the dates from the current day to <tt>days</tt> days after it, ordered by
+	 * 	day.
+	 *
+	 * 	<p>throws NotPossibleException if <tt>days &lt; 0</tt>
+	 */
+	public List<Due> dueWithin(int days) throws NotPossibleException {
+		if (days < 0) {
+			throw new NotPossibleException(NotPossibleException.Code.INVALID_ARGUMENT,
+					new Object[] { "days", days });
+		}
+
+		tick(currentDay());
+
+		List<Due> result = new ArrayList<>();
+		synchronized (this) {
+			long last = today + days;
+			for (long day = today; day <= last && day < today + SLOTS; day++)
+				result.addAll(wheel.get((int) (day & MASK)));
+			if (last >= today + SLOTS) {
+				for (Set<Due> dates : overflow.subMap(today + SLOTS, true, last, true).values())
+					result.addAll(dates);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	advance the wheel to <tt>day</tt> (an epoch day), dropping the dates of the days
+	 * 	before it, and fire the alerts of <tt>day</tt> if they have not been fired
+	 */
+	public void tick(long day) {
+		List<Due> due = new ArrayList<>();
+		synchronized (this) {
+			if (day < today || (day == today && fired))
+				return;
+
+			while (today < day) {
+				Set<Due> slot = wheel.get((int) (today & MASK));
+				for (Due d : slot)
+					dues.get(d.cls).remove(d.id);
+				slot.clear();
+				today++;
+				fired = false;
+
+				// move the day that has entered the wheel from the overflow
+				Set<Due> dates = overflow.remove(today + SLOTS - 1);
+				if (dates != null)
+					wheel.get((int) ((today + SLOTS - 1) & MASK)).addAll(dates);
+			}
+
+			due.addAll(wheel.get((int) (today & MASK)));
+			fired = true;
+		}
+		alert(due);
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	index the dates of the objects that <tt>e</tt> reports as added or updated (alerting
+	 * 	those that are due today, if the alerts of today have been fired) and remove those
+	 * 	of the objects that it reports as deleted
+	 */
+	private void changed(ChangeEvent e) {
+		ChangeEventSource<?> source = (ChangeEventSource<?>) e.getSource();
+		for (Object o : source.getObjects()) {
+			if (source.isDelete()) {
+				synchronized (this) {
+					remove(o.getClass(), id(o));
+				}
+			} else if (source.isAddNew() || source.isUpdate()) {
+				// the dates are read from the current state, not from the updated attributes
+				Due d = put(o);
+				if (d != null)
+					alert(Collections.singletonList(d));
+			}
+		}
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	index the date of <tt>o</tt>, replacing its previous date (if any); if the date is
+	 * 	today and the alerts of today have been fired, return it (to be alerted), otherwise
+	 * 	return <tt>null</tt>
+	 */
+	private synchronized Due put(Object o) {
+		return put(o.getClass(), id(o), name(o), dueDate(o));
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	index the date <tt>date</tt> of the object of <tt>c</tt> identified by <tt>id</tt>
+	 * 	and named <tt>name</tt>, replacing its previous date (if any); return the date as
+	 * 	by {@link #put(Object)}
+	 */
+	private synchronized Due put(Class<?> c, Object id, String name, Date date) {
+		remove(c, id);
+
+		if (date == null)
+			return null;
+		long day = toDay(date);
+		if (day < today)
+			return null;
+
+		Due d = new Due(c, id, name, date, day);
+		Map<Object, Due> ids = dues.get(c);
+		if (ids == null) {
+			ids = new HashMap<>();
+			dues.put(c, ids);
+		}
+		ids.put(id, d);
+
+		if (day < today + SLOTS) {
+			wheel.get((int) (day & MASK)).add(d);
+		} else {
+			Set<Due> dates = overflow.get(day);
+			if (dates == null) {
+				dates = new LinkedHashSet<>();
+				overflow.put(day, dates);
+			}
+			dates.add(d);
+		}
+
+		return (day == today && fired) ? d : null;
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	remove the date of the object of <tt>c</tt> identified by <tt>id</tt> (if any)
+	 */
+	private void remove(Class<?> c, Object id) {
+		Map<Object, Due> ids = dues.get(c);
+		Due d = (ids != null) ? ids.remove(id) : null;
+		if (d == null)
+			return;
+
+		if (d.day < today + SLOTS) {
+			wheel.get((int) (d.day & MASK)).remove(d);
+		} else {
+			Set<Due> dates = overflow.get(d.day);
+			dates.remove(d);
+			if (dates.isEmpty())
+				overflow.remove(d.day);
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	index the dates of the objects of <tt>c</tt> in the data source
+	 */
+	private void load(DOMBasic dom, Class<?> c) throws NotPossibleException, DataSourceException {
+		OSM osm = dom.getOsm();
+		if (!(osm instanceof RelationalOSMBasic)) {
+			// no projection query: read the objects
+			Map<?, ?> objects = dom.retrieveObjects(c);
+			if (objects != null) {
+				for (Object o : objects.values())
+					put(o);
+			}
+			return;
+		}
+
+		RelationalOSMBasic rosm = (RelationalOSMBasic) osm;
+		DSMBasic dsm = dom.getDsm();
+		String sql;
+		if (c == EconomicalSavings.class) {
+			// the inherited attributes are stored in the table of the super-class
+			String id = rosm.toDBColumnName(Savings.class, Savings.S_id, false);
+			sql = "select s." + id + " as id, s." + rosm.toDBColumnName(Savings.class, Savings.S_name, false)
+					+ " as nm, s." + rosm.toDBColumnName(Savings.class, Savings.S_startDate, false)
+					+ " as st, e." + rosm.toDBColumnName(c, EconomicalSavings.S_monthlyDuration, false)
+					+ " as mths from " + dsm.getDomainClassName(c) + " e join "
+					+ dsm.getDomainClassName(Savings.class) + " s on e."
+					+ rosm.toDBColumnName(c, Savings.S_id, false) + " = s." + id;
+		} else {
+			sql = "select " + rosm.toDBColumnName(c, BorrowAndLend.T_id, false) + " as id, "
+					+ rosm.toDBColumnName(c, BorrowAndLend.T_name, false) + " as nm, "
+					+ rosm.toDBColumnName(c, BorrowAndLend.T_start_date, false) + " as st, "
+					+ rosm.toDBColumnName(c, BorrowAndLend.T_period, false) + " as mths from "
+					+ dsm.getDomainClassName(c);
+		}
+
+		for (Map<String, Object> row : DataSources.query(dom, sql)) {
+			Object id = column(row, "id");
+			Object months = column(row, "mths");
+			if (id == null || months == null)
+				continue;
+
+			Object name = column(row, "nm");
+			put(c, (c == BorrowAndLend.class) ? (Object) ((Number) id).intValue() : String.valueOf(id),
+					(name != null) ? name.toString() : null,
+					dueDate((Date) column(row, "st"), ((Number) months).intValue()));
+		}
+	}
+
+	private static Object column(Map<String, Object> row, String label) {
+		Object val = row.get(label.toUpperCase());
+		return (val != null) ? val : row.get(label);
+	}
+
+	private void alert(List<Due> due) {
+		if (due.isEmpty())
+			return;
+
+		synchronized (this) {
+			alerts += due.size();
+		}
+
+		for (Due d : due) {
+			if (listeners.isEmpty()) {
+				logger.info(d.toString());
+			} else {
+				for (Listener l : listeners)
+					l.due(d);
+			}
+		}
+	}
+
+	/**
+	 * @effects
+	 * 	return the maturity or due date of <tt>o</tt>, or <tt>null</tt> if it has none
+	 */
+	private static Date dueDate(Object o) {
+		Date start;
+		int months;
+		if (o instanceof EconomicalSavings) {
+			EconomicalSavings s = (EconomicalSavings) o;
+			start = s.getStartDate();
+			months = s.getMonthlyDuration();
+		} else if (o instanceof BorrowAndLend) {
+			BorrowAndLend b = (BorrowAndLend) o;
+			start = b.getStartDate();
+			months = b.getPeriod();
+		} else {
+			return null;
+		}
+
+		return dueDate(start, months);
+	}
+
+	/**
+	 * @effects
+	 * 	return the date <tt>months</tt> months after <tt>start</tt>, or <tt>null</tt> if
+	 * 	<tt>start</tt> is <tt>null</tt> or <tt>months &lt;= 0</tt>
+	 */
+	private static Date dueDate(Date start, int months) {
+		if (start == null || months <= 0)
+			return null;
+
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(start);
+		cal.add(Calendar.MONTH, months);
+		return cal.getTime();
+	}
+
+	private static Object id(Object o) {
+		return (o instanceof BorrowAndLend) ? (Object) ((BorrowAndLend) o).getId()
+				: ((EconomicalSavings) o).getId();
+	}
+
+	private static String name(Object o) {
+		return (o instanceof BorrowAndLend) ? ((BorrowAndLend) o).getName()
+				: ((EconomicalSavings) o).getName();
+	}
+
+	/**
+	 * @effects
+	 * 	return the epoch day of <tt>date</tt> in the default time zone
+	 */
+	private static long toDay(Date date) {
+		// not Date.toInstant(): the dates read from the data source are java.sql.Dates
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		return LocalDate.of(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1,
+				cal.get(Calendar.DAY_OF_MONTH)).toEpochDay();
+	}
+
+	private static long currentDay() {
+		return LocalDate.now().toEpochDay();
+	}
+
+	/**
+	 * @overview
+	 * 	The listener of the changes of the objects of a scheduler, which forwards them to
+	 * 	the scheduler until it is stopped.
+	 */
+	private static class Forwarder implements ChangeListener {
+		private volatile DueDateScheduler target;
+
+		Forwarder(DueDateScheduler target) {
+			this.target = target;
+		}
+
+		@Override
+		public void stateChanged(ChangeEvent e) {
+			DueDateScheduler scheduler = target;
+			if (scheduler != null)
+				scheduler.changed(e);
+		}
+	}
+
+	/**
+	 * @overview
+	 * 	The maturity date of an economical savings or the due date of a borrowing or
+	 * 	lending.
+	 */
+	public static class Due {
+		private Class<?> cls;
+		private Object id;
+		private String name;
+		private Date date;
+		private long day;
+
+		Due(Class<?> cls, Object id, String name, Date date, long day) {
+			this.cls = cls;
+			this.id = id;
+			this.name = name;
+			this.date = date;
+			this.day = day;
+		}
+
+		/**
+		 * @effects
+		 * 	return the class of the object ({@link EconomicalSavings} or {@link BorrowAndLend})
+		 */
+		public Class<?> getCls() {
+			return cls;
+		}
+
+		public Object getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Date getDate() {
+			return date;
+		}
+
+		@Override
+		public String toString() {
+			return cls.getSimpleName() + "(" + id + "," + name + ") is due on " + date;
+		}
+	}
+
+	/**
+	 * @overview
+	 * 	Receives the alerts of a {@link DueDateScheduler}.
+	 */
+	public interface Listener {
+		/**
+		 * @effects
+		 * 	handle the alert that <tt>d</tt> is due today
+		 */
+		void due(Due d);
+	}
+}
@@ -1,14 +1,24 @@
 package vn.com.personalfinance.software;
 
+import java.io.File;
+
 import domainapp.software.SoftwareFactory;
 import domainapp.softwareimpl.DomSoftware;
 import vn.com.personalfinance.services.account.Account;
 import vn.com.personalfinance.services.account.AccountType;
 import vn.com.personalfinance.services.account.TotalBalance;
+import vn.com.personalfinance.services.account.journal.BalanceJournal;
+import vn.com.personalfinance.services.borrowandlend.ledger.DebtLedger;
 import vn.com.personalfinance.services.borrowandlend.model.ActionType;
 import vn.com.personalfinance.services.borrowandlend.model.BorrowAndLend;
 import vn.com.personalfinance.services.borrowandlend.model.Subjects;
 import vn.com.personalfinance.services.borrowandlend.report.BorrowAndLendByActionTypeReport;
+import vn.com.personalfinance.services.borrowandlend.report.SubjectsByDebtReport;
+import vn.com.personalfinance.services.datasource.BoundedObjectPool;
+import vn.com.personalfinance.services.datasource.DateKeyBackfill;
+import vn.com.personalfinance.services.datasource.IdSequence;
+import vn.com.personalfinance.services.datasource.SchemaIndexes;
+import vn.com.personalfinance.services.datasource.StartupSnapshot;
 import vn.com.personalfinance.services.expenseandincome.model.Category;
 import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
 import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
@@ -19,7 +29,9 @@ import vn.com.personalfinance.services.expenseandincome.report.ExpenseAndIncomeB
 import vn.com.personalfinance.services.savings.AccumulativeSavings;
 import vn.com.personalfinance.services.savings.Savings;
 import vn.com.personalfinance.services.savings.EconomicalSavings;
+import vn.com.personalfinance.services.savings.RemainedAmountVerifier;
 import vn.com.personalfinance.services.savingstransaction.SavingsTransaction;
+import vn.com.personalfinance.services.schedule.DueDateScheduler;
 
 /**
  * @overview 
@@ -50,12 +62,16 @@ public class PersonalFinanceManagentSoftware {
 	      ExpenseAndIncomeByDateReport.class,
 	      ExpenseAndIncomeByMonthReport.class,
 	      ExpenseAndIncomeByYearReport.class,
-	      BorrowAndLendByActionTypeReport.class
+	      BorrowAndLendByActionTypeReport.class,
+	      SubjectsByDebtReport.class
 	  };
 	  
 	  /**
 	   * @effects 
 	   *  create and run a UI-based {@link DomSoftware} for a pre-defined model. 
+	   *  
+	   *  <p>Each startup step is run on its own and a step that fails is logged, 
+	   *  so that the software starts without the service of that step.
 	   */
 	  public static void main(String[] args){
 	    // 2. create UI software
@@ -65,12 +81,58 @@ public class PersonalFinanceManagentSoftware {
 	    // create in memory configuration
 	    System.setProperty("domainapp.setup.SerialiseConfiguration", "false");
 	    
+	    // run the startup steps below before the UI is created
+	    PersonalFinanceSetUp.install();
+	    
+	    // bound the object pool, keeping the reference data and the accounts
+	    PersonalFinanceSetUp.runStep("bound the object pool", () -> 
+	        BoundedObjectPool.install(BoundedObjectPool.DEFAULT_CAPACITY, 
+	            TotalBalance.class, Account.class, AccountType.class, 
+	            Savings.class, EconomicalSavings.class, AccumulativeSavings.class, 
+	            Category.class, Subjects.class, ActionType.class));
+	    
+	    // journal the account balance changes
+	    PersonalFinanceSetUp.runStep("install the balance journal", () -> 
+	        BalanceJournal.install(new File("data", "journal"), BalanceJournal.DEFAULT_SNAPSHOT_INTERVAL));
+	    
+	    // read the last session's snapshot of the reference data
+	    StartupSnapshot[] snapshot = new StartupSnapshot[1];
+	    PersonalFinanceSetUp.runStep("read the startup snapshot", () -> 
+	        snapshot[0] = StartupSnapshot.install(new File("data", "startup.snapshot"), model, 
+	            AccountType.class, Category.class, Subjects.class, ActionType.class));
+	    
+	    // restore the reference data from the snapshot, before the indexes are checked
+	    PersonalFinanceSetUp.addStartupStep("restore the startup snapshot", () -> {
+	      if (snapshot[0] != null)
+	        snapshot[0].restore();
+	    });
+	    
+	    // fill in the date keys of the transactions stored before they had one
+	    PersonalFinanceSetUp.addStartupStep("fill in the date keys of the daily expenses", () -> 
+	        DateKeyBackfill.ensureDateKeys(DailyExpense.class, DailyExpense.E_date, DailyExpense.E_dateKey));
+	    PersonalFinanceSetUp.addStartupStep("fill in the date keys of the daily incomes", () -> 
+	        DateKeyBackfill.ensureDateKeys(DailyIncome.class, DailyIncome.I_date, DailyIncome.I_dateKey));
+	    
+	    // widen the ids of the savings transactions stored with a shorter id
+	    PersonalFinanceSetUp.addStartupStep("widen the ids of the savings transactions", () -> 
+	        IdSequence.ensureIdLength(SavingsTransaction.class));
+	    
+	    // create the secondary indexes that are missing
+	    PersonalFinanceSetUp.addStartupStep("create the secondary indexes", () -> 
+	        SchemaIndexes.ensureIndexes(model));
+	    
+	    // seed the debt ledger with the borrowings and lendings that are not loaded
+	    PersonalFinanceSetUp.addStartupStep("seed the debt ledger", DebtLedger::install);
+	    
+	    // check the remained amounts of the savings against their transactions
+	    PersonalFinanceSetUp.addStartupStep("start the remained amount verifier", () -> 
+	        RemainedAmountVerifier.start(RemainedAmountVerifier.DEFAULT_PERIOD));
+	    
+	    // alert the maturity dates of the savings and the due dates of the loans
+	    PersonalFinanceSetUp.addStartupStep("start the due date scheduler", () -> 
+	        DueDateScheduler.start(DueDateScheduler.DEFAULT_PERIOD));
+	    
 	    // 3. run it
-	    try {
-	      sw.run(model);
-	    } catch (Exception e) {
-	      // TODO Auto-generated catch block
-	      e.printStackTrace();
-	    }   
+	    PersonalFinanceSetUp.runStep("run the software", () -> sw.run(model));
 	  }
 }
@@ -0,0 +1,114 @@
+package vn.com.personalfinance.software;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import domainapp.basics.apps.tool.setup.DomainAppToolSetUp;
+import domainapp.basics.exceptions.DataSourceException;
+import domainapp.basics.exceptions.NotPossibleException;
+import domainapp.basics.model.config.Configuration;
+import domainapp.basics.model.util.properties.Property.PropertyName;
+import domainapp.basics.setup.SetUpBasic;
+import vn.com.personalfinance.services.datasource.BoundedDOM;
+import vn.com.personalfinance.services.datasource.BoundedObjectPool;
+import vn.com.personalfinance.services.datasource.DataSources;
+
+/**
+ * @overview
+ * 	The set-up of the software: a {@link DomainAppToolSetUp} that, once the domain
+ * 	model is loaded and before the UI is created, registers the domain classes
+ * 	(creating their tables if they do not exist) and runs the startup steps added by
+ * 	{@link #addStartupStep(String, StartupStep)}, in the order that they were added.
+ *
+ * 	<p>The object pool of the configuration is a {@link BoundedDOM}, which is bounded
+ * 	if a {@link BoundedObjectPool} is installed before the set-up. The data source of
+ * 	the configuration is also the one of the dedicated connections of
+ * 	{@link DataSources}.
+ *
+ * 	<p>Each step is run on its own: a step that fails is logged and the next step is
+ * 	run, so that one failed step does not stop the software from starting.
+ *
+ * 	<p>The set-up is used by the software after {@link #install()}.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class PersonalFinanceSetUp extends DomainAppToolSetUp {
+	private static final Logger logger = Logger.getLogger(PersonalFinanceSetUp.class.getName());
+
+	// the steps to run before the UI, with their names
+	private static final List<String> names = new ArrayList<>();
+	private static final List<StartupStep> steps = new ArrayList<>();
+
+	/**
+	 * @overview
+	 * 	A step of the startup of the software.
+	 */
+	public interface StartupStep {
+		void run() throws Exception;
+	}
+
+	/**
+	 * @effects
+	 * 	make the software use this set-up
+	 */
+	public static void install() {
+		SetUpBasic.setSystemProperty(PropertyName.setup_class, PersonalFinanceSetUp.class.getName());
+	}
+
+	/**
+	 * @modifies this
+	 * @effects
+	 * 	add <tt>step</tt>, named <tt>name</tt>, to the steps to run before the UI
+	 */
+	public static synchronized void addStartupStep(String name, StartupStep step) {
+		names.add(name);
+		steps.add(step);
+	}
+
+	@Override
+	public Configuration createInitApplicationConfiguration() {
+		Configuration config = super.createInitApplicationConfiguration();
+		config.getDodmConfig().setDomType(BoundedDOM.class);
+		DataSources.configure(config.getDodmConfig().getOsmConfig());
+		return config;
+	}
+
+	@Override
+	public void loadClasses(String[] args)
+			throws IllegalArgumentException, NotPossibleException, DataSourceException {
+		super.loadClasses(args);
+
+		// the steps read and change the tables of the domain classes
+		registerClasses(getModelClasses(), true, true, false);
+
+		runStartupSteps();
+	}
+
+	/**
+	 * @effects
+	 * 	run the startup steps in order, logging those that fail
+	 */
+	private static synchronized void runStartupSteps() {
+		for (int i = 0; i < steps.size(); i++)
+			runStep(names.get(i), steps.get(i));
+	}
+
+	/**
+	 * @effects
+	 * 	run <tt>step</tt>, named <tt>name</tt>; if it fails log the failure and return
+	 * 	false, else return true
+	 */
+	public static boolean runStep(String name, StartupStep step) {
+		try {
+			step.run();
+			return true;
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, "Failed to " + name, e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package vn.com.personalfinance.services.account;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import vn.com.personalfinance.services.expenseandincome.model.DailyExpense;
+import vn.com.personalfinance.services.expenseandincome.model.DailyIncome;
+
+/**
+ * @overview
+ * 	Behaviour checks of {@link BalanceEngine} and of the balance-affecting link adders
+ * 	of {@link Account}. Run with <tt>java -ea</tt>; a failed check throws an
+ * 	{@link AssertionError}.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class BalanceEngineCheck {
+	public static void main(String[] args) {
+		applyOnce();
+		applyAllSkipsApplied();
+		revert();
+		addersCountApplied();
+		System.out.println("BalanceEngineCheck: passed");
+	}
+
+	// a transaction is applied once, however often it is reported
+	private static void applyOnce() {
+		BalanceEngine e = new BalanceEngine(null, 10.0);
+		e.apply("E1", new Date(), -2.5);
+		e.apply("E1", new Date(), -2.5);
+		check(e.getBalance() == 7.5, "apply once: " + e.getBalance());
+	}
+
+	// applyAll skips the transactions already applied and duplicates in its input
+	private static void applyAllSkipsApplied() {
+		BalanceEngine e = new BalanceEngine(null, 0.0);
+		e.apply("I1", null, 1.0);
+		double b = e.applyAll(new String[] { "I1", "I2", "I2", "I3" }, new Date[4],
+				new double[] { 1.0, 0.1, 0.1, 0.2 });
+		check(b == 1.3, "applyAll: " + b);
+		check(e.getBalanceMinor() == 130, "applyAll minor: " + e.getBalanceMinor());
+	}
+
+	// a revert undoes an applied transaction only
+	private static void revert() {
+		BalanceEngine e = new BalanceEngine(null, 5.0);
+		e.revert("E9", null, -1.0);
+		check(e.getBalance() == 5.0, "revert not applied: " + e.getBalance());
+		e.apply("E9", null, -1.0);
+		e.revert("E9", null, -1.0);
+		check(e.getBalance() == 5.0, "revert applied: " + e.getBalance());
+		check(!e.isApplied("E9"), "revert forgets");
+	}
+
+	// the collection adders count and apply only the elements not yet applied
+	private static void addersCountApplied() {
+		Account a = new Account("A1", "cash", null, 100.0, null);
+		DailyExpense e1 = new DailyExpense("E101", 10.0, new Date(), null, null, null, a, null);
+		DailyExpense e2 = new DailyExpense("E102", 20.0, new Date(), null, null, null, a, null);
+		a.addNewDailyExpense(e1);
+		a.addNewDailyExpense(Arrays.asList(e1, e2, e2));
+		check(a.getDailyExpenseCount() == 2, "expense count: " + a.getDailyExpenseCount());
+		check(a.getBalance() == 70.0, "expense balance: " + a.getBalance());
+
+		DailyIncome i1 = new DailyIncome("I101", 5.0, new Date(), null, null, null, a, null);
+		check(a.addNewDailyIncome(Arrays.asList(i1)), "income added");
+		check(!a.addNewDailyIncome(Arrays.asList(i1)), "income not added twice");
+		check(a.getDailyIncomeCount() == 1, "income count: " + a.getDailyIncomeCount());
+		check(a.getBalance() == 75.0, "income balance: " + a.getBalance());
+
+		check(a.removeDailyExpense(e2), "expense removed");
+		check(a.getDailyExpenseCount() == 1, "count after remove: " + a.getDailyExpenseCount());
+		check(a.getBalance() == 95.0, "balance after remove: " + a.getBalance());
+	}
+
+	private static void check(boolean cond, String msg) {
+		if (!cond)
+			throw new AssertionError(msg);
+	}
+}
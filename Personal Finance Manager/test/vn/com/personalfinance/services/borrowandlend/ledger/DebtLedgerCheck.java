@@ -0,0 +1,137 @@
+package vn.com.personalfinance.services.borrowandlend.ledger;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import vn.com.personalfinance.services.borrowandlend.model.ActionType;
+import vn.com.personalfinance.services.borrowandlend.model.BorrowAndLend;
+import vn.com.personalfinance.services.borrowandlend.model.Subjects;
+
+/**
+ * @overview
+ * 	Behaviour checks of {@link DebtLedger} and of the link adders and removers of
+ * 	{@link Subjects} that keep it. Run with <tt>java -ea</tt>; a failed check throws an
+ * 	{@link AssertionError}.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class DebtLedgerCheck {
+	private static final ActionType COLLECT = new ActionType(1, "Collecting debts");
+	private static final ActionType BORROW = new ActionType(2, "Borrowing money");
+	private static final ActionType LEND = new ActionType(4, "Lending money");
+
+	// the ids of the subjects and of the borrowings and lendings of the checks
+	private static int subjectId = 900;
+	private static int id = 9000;
+
+	public static void main(String[] args) {
+		signedBalances();
+		relinkReplaces();
+		emptyBalanceRemoved();
+		addNewSkipsLinked();
+		removeUnlinkedKeepsEntry();
+		topDebtors();
+		System.out.println("DebtLedgerCheck: passed");
+	}
+
+	// lending adds to the debt owed to the user, borrowing and collecting subtract from it
+	private static void signedBalances() {
+		Subjects s = subject("Signed");
+		s.addNewborrowAndLend(borrowAndLend(s, LEND, 100.0));
+		s.addNewborrowAndLend(borrowAndLend(s, BORROW, 30.0));
+		s.addNewborrowAndLend(borrowAndLend(s, COLLECT, 20.0));
+
+		DebtBalance b = ledger().getBalance(s);
+		check(b != null && b.getCount() == 3, "signed count: " + b);
+		check(b.getPrincipal() == 50.0, "signed principal: " + b.getPrincipal());
+		check(b.getOwner() == s, "signed owner: " + b.getOwner());
+	}
+
+	// linking the same borrowing or lending again, or updating it, replaces its entry
+	private static void relinkReplaces() {
+		Subjects s = subject("Relinked");
+		BorrowAndLend b = borrowAndLend(s, LEND, 40.0);
+		s.addNewborrowAndLend(b);
+		b.setMoney(60.0);
+		ledger().linkSubject(s, b);
+
+		DebtBalance balance = ledger().getBalance(s);
+		check(balance.getCount() == 1 && balance.getPrincipal() == 60.0, "relinked: " + balance);
+
+		b.setMoney(70.0, true);
+		balance = ledger().getBalance(s);
+		check(balance.getCount() == 1 && balance.getPrincipal() == 70.0, "updated: " + balance);
+	}
+
+	// a balance whose last entry is removed is no longer listed
+	private static void emptyBalanceRemoved() {
+		Subjects s = subject("Emptied");
+		BorrowAndLend b = borrowAndLend(s, LEND, 1000000.0);
+		s.addNewborrowAndLend(b);
+		check(ledger().getTopDebtors(1).get(0).getOwner() == s, "emptied top");
+
+		s.removeBorrowAndLend(b);
+		check(ledger().getBalance(s) == null, "emptied balance: " + ledger().getBalance(s));
+		for (DebtBalance d : ledger().getTopDebtors(Integer.MAX_VALUE))
+			check(d.getOwner() != s, "emptied ranked: " + d);
+	}
+
+	// adding a collection counts and posts only those that are not yet linked
+	private static void addNewSkipsLinked() {
+		Subjects s = subject("Added");
+		BorrowAndLend b1 = borrowAndLend(s, LEND, 10.0);
+		BorrowAndLend b2 = borrowAndLend(s, LEND, 5.0);
+		s.addNewborrowAndLend(b1);
+		s.addNewBorrowAndLend(Arrays.asList(b1, b2, b2));
+
+		check(s.getBorrowAndLendCount() == 2, "added count: " + s.getBorrowAndLendCount());
+		DebtBalance b = ledger().getBalance(s);
+		check(b.getCount() == 2 && b.getPrincipal() == 15.0, "added balance: " + b);
+	}
+
+	// removing a borrowing or lending that a subject does not have leaves its entry
+	private static void removeUnlinkedKeepsEntry() {
+		Subjects owner = subject("Owner");
+		Subjects other = subject("Other");
+		BorrowAndLend b = borrowAndLend(owner, LEND, 25.0);
+		owner.addNewborrowAndLend(b);
+
+		other.removeBorrowAndLend(b);
+		DebtBalance balance = ledger().getBalance(owner);
+		check(balance != null && balance.getPrincipal() == 25.0, "kept: " + balance);
+	}
+
+	// the debtors are ranked by principal, the largest first
+	private static void topDebtors() {
+		Subjects small = subject("Small");
+		Subjects large = subject("Large");
+		small.addNewborrowAndLend(borrowAndLend(small, LEND, 3000000.0));
+		large.addNewborrowAndLend(borrowAndLend(large, LEND, 4000000.0));
+
+		List<DebtBalance> top = ledger().getTopDebtors(2);
+		check(top.size() == 2 && top.get(0).getOwner() == large && top.get(1).getOwner() == small,
+				"top debtors: " + top);
+		for (DebtBalance d : ledger().getTopCreditors(Integer.MAX_VALUE))
+			check(d.getPrincipal() < 0, "creditor: " + d);
+	}
+
+	private static DebtLedger ledger() {
+		return DebtLedger.getInstance();
+	}
+
+	private static Subjects subject(String name) {
+		return new Subjects(++subjectId, name);
+	}
+
+	private static BorrowAndLend borrowAndLend(Subjects s, ActionType type, double money) {
+		return new BorrowAndLend(++id, null, s.getName(), s, type, money, new Date(), 0, 0.0);
+	}
+
+	private static void check(boolean cond, String msg) {
+		if (!cond)
+			throw new AssertionError(msg);
+	}
+}
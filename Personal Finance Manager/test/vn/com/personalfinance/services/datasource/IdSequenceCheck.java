@@ -0,0 +1,103 @@
+package vn.com.personalfinance.services.datasource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @overview
+ * 	Behaviour checks of the id allocation of {@link IdSequence}, against an in-memory
+ * 	Derby data source. Run with <tt>java -ea</tt>; a failed check throws an
+ * 	{@link AssertionError}.
+ *
+ * @author Group 2
+ *
+ * @version 1.0
+ */
+public class IdSequenceCheck {
+	private static final String URL = "jdbc:derby:memory:IdSequenceCheck;create=true";
+
+	public static void main(String[] args) throws Exception {
+		firstBlock();
+		nextBlocks();
+		advancedPastBlock();
+		concurrentCreators();
+		System.out.println("IdSequenceCheck: passed");
+	}
+
+	// the first block of a new sequence starts at 1 (its row is created)
+	private static void firstBlock() throws SQLException {
+		IdSequence seq = new IdSequence("First", 3);
+		try (Connection conn = DriverManager.getConnection(URL)) {
+			seq.reserve(conn);
+		}
+		check(seq.next() == 1 && seq.next() == 2 && seq.next() == 3, "first block");
+		check(seq.current() == 3, "current: " + seq.current());
+	}
+
+	// another creator of the same sequence gets the next block
+	private static void nextBlocks() throws SQLException {
+		IdSequence a = new IdSequence("Shared", 5);
+		IdSequence b = new IdSequence("Shared", 5);
+		try (Connection conn = DriverManager.getConnection(URL)) {
+			a.reserve(conn);
+			b.reserve(conn);
+		}
+		check(a.next() == 1, "a starts at 1");
+		check(b.next() == 6, "b starts past a's block");
+	}
+
+	// an id advanced to past the high-water mark raises it
+	private static void advancedPastBlock() throws SQLException {
+		IdSequence a = new IdSequence("Advanced", 2);
+		a.advanceTo(40);
+		try (Connection conn = DriverManager.getConnection(URL)) {
+			a.reserve(conn);
+			check(a.next() == 41, "advanced");
+
+			IdSequence b = new IdSequence("Advanced", 2);
+			b.reserve(conn);
+			check(b.next() == 43, "after advanced: " + b.current());
+		}
+	}
+
+	// creators that reserve the first block at the same time get disjoint blocks
+	private static void concurrentCreators() throws Exception {
+		int creators = 8;
+		int blockSize = 10;
+		List<Integer> starts = Collections.synchronizedList(new ArrayList<>());
+		List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < creators; i++) {
+			Thread t = new Thread(() -> {
+				IdSequence seq = new IdSequence("Concurrent", blockSize);
+				try (Connection conn = DriverManager.getConnection(URL)) {
+					seq.reserve(conn);
+					starts.add(seq.next());
+				} catch (Throwable e) {
+					failures.add(e);
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		for (Thread t : threads)
+			t.join();
+
+		check(failures.isEmpty(), "concurrent failures: " + failures);
+		Set<Integer> distinct = new HashSet<>(starts);
+		check(distinct.size() == creators, "concurrent blocks: " + starts);
+		for (int s : distinct)
+			check((s - 1) % blockSize == 0 && s <= creators * blockSize, "concurrent block start: " + s);
+	}
+
+	private static void check(boolean cond, String msg) {
+		if (!cond)
+			throw new AssertionError(msg);
+	}
+}